@@ -0,0 +1,86 @@
+package cl.ecomarket.ms_productos.carga;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencias (histograma HDR, en microsegundos) y errores de un endpoint durante la medición.
+ * Seguro para ser usado por todos los clientes a la vez.
+ * <p>
+ * La latencia se mide desde el instante en que la request debía salir según el calendario del cliente,
+ * no desde que salió: si el servidor se detiene, las requests que el cliente no alcanzó a enviar
+ * cuentan todo el tiempo que esperaron (sin omisión coordinada).
+ */
+final class EstadisticasEndpoint {
+
+	private static final long LATENCIA_MAXIMA_US = TimeUnit.MINUTES.toMicros(1);
+
+	private final String nombre;
+	private final Recorder latencias = new Recorder(LATENCIA_MAXIMA_US, 3);
+	private final LongAdder errores = new LongAdder();
+	private Histogram resultado;
+
+	EstadisticasEndpoint(String nombre) {
+		this.nombre = nombre;
+	}
+
+	String getNombre() {
+		return nombre;
+	}
+
+	/**
+	 * @param programada Instante (System.nanoTime) en que la request debía enviarse.
+	 * @param fin Instante en que llegó la respuesta.
+	 */
+	void registrar(long programada, long fin, boolean exitosa) {
+		latencias.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(fin - programada), LATENCIA_MAXIMA_US));
+		if (!exitosa) {
+			errores.increment();
+		}
+	}
+
+	/**
+	 * Descarta lo registrado hasta ahora (fin del calentamiento).
+	 */
+	void reiniciar() {
+		latencias.getIntervalHistogram();
+		errores.reset();
+	}
+
+	/**
+	 * Cierra la medición; las consultas siguientes usan el histograma acumulado hasta este punto.
+	 */
+	void cerrar() {
+		resultado = latencias.getIntervalHistogram();
+	}
+
+	static Histogram nuevoHistograma() {
+		return new Histogram(LATENCIA_MAXIMA_US, 3);
+	}
+
+	/**
+	 * Suma las latencias medidas a un histograma de todos los endpoints.
+	 */
+	void sumarA(Histogram total) {
+		total.add(resultado);
+	}
+
+	long solicitudes() {
+		return resultado.getTotalCount();
+	}
+
+	long errores() {
+		return errores.sum();
+	}
+
+	double percentilMs(double percentil) {
+		return resultado.getValueAtPercentile(percentil) / 1000.0;
+	}
+
+	double maximoMs() {
+		return resultado.getMaxValue() / 1000.0;
+	}
+}
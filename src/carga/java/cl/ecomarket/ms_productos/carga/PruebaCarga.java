@@ -0,0 +1,435 @@
+package cl.ecomarket.ms_productos.carga;
+
+import cl.ecomarket.ms_productos.MsProductosApplication;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueba de carga de extremo a extremo sobre el stack HTTP real: levanta la aplicación completa en un
+ * puerto aleatorio (H2 en memoria, usuarios del DataInitializer), carga un catálogo sintético por
+ * /api/v1/productos/importar y ejecuta una mezcla configurable de requests desde varios clientes concurrentes.
+ * <p>
+ * Cada cliente trabaja en lazo abierto: envía carga.tasa-por-cliente requests por segundo según un calendario
+ * fijo, sin importar cuánto tarden las respuestas, y la latencia se mide desde el instante programado. En lazo
+ * cerrado un servidor detenido también detiene a los clientes, las requests que no se enviaron no se miden y
+ * los percentiles salen optimistas (omisión coordinada). Al terminar se reporta el throughput y los percentiles
+ * p50/p99/p99.9 por endpoint, se escriben en JSON y el proceso termina con código 1 si se superan los
+ * umbrales, para usarla como gate de un release.
+ * <p>
+ * Con carga.escalones (ej: 50,100,200,400,800) la prueba se repite con cada cantidad de clientes (y por lo
+ * tanto con una tasa total proporcional) hasta que un escalón supera los umbrales, y reporta la concurrencia
+ * máxima sostenible. Así se comparan el modo de hilos de plataforma y el de hilos virtuales
+ * (--spring.threads.virtual.enabled=true).
+ * <p>
+ * Configuración por propiedades del sistema (ver el perfil "carga" del pom.xml): carga.clientes,
+ * carga.tasa-por-cliente, carga.escalones, carga.duracion-s, carga.calentamiento-s, carga.productos,
+ * carga.mezcla, carga.p99-maximo-ms (250 por defecto; 0 desactiva el umbral), carga.errores-maximos y
+ * carga.resultado. Los argumentos del programa se pasan tal cual a la aplicación
+ * (ej: --ecomarket.stock.write-behind.habilitado=true).
+ */
+public final class PruebaCarga {
+
+	private static final String[] CATEGORIAS = {"Frutas", "Verduras", "Lácteos", "Panadería", "Bebidas",
+			"Limpieza", "Higiene", "Despensa", "Congelados", "Mascotas"};
+	private static final String[] NOMBRES = {"Manzana", "Pera", "Tomate", "Leche", "Pan", "Jugo",
+			"Detergente", "Jabón", "Arroz", "Helado", "Alimento", "Yogur"};
+	private static final String[] ADJETIVOS = {"orgánico", "verde", "integral", "natural", "reciclable",
+			"local", "sin azúcar", "familiar"};
+	private static final String[] TERMINOS = {"manzana", "verde", "leche integral", "jabón", "natural", "arroz local"};
+	// La mitad de los ajustes de stock van a estos códigos, para reproducir la contención de los productos más vendidos
+	private static final int CODIGOS_CALIENTES = 20;
+
+	private enum Grupo { LECTURA, BUSQUEDA, STOCK, USUARIOS }
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final HttpClient http = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(5))
+			.build();
+	private final Map<String, EstadisticasEndpoint> estadisticas = new ConcurrentHashMap<>();
+	private final String base;
+	private String tokenGerente;
+	private String tokenAdmin;
+	private final List<Long> idsProducto = new ArrayList<>();
+	private final List<String> codigos = new ArrayList<>();
+	private final List<Long> idsUsuario = new ArrayList<>();
+	private long idEmpleado;
+
+	private PruebaCarga(String base) {
+		this.base = base;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int clientes = Integer.getInteger("carga.clientes", 32);
+		double tasaPorCliente = Double.parseDouble(System.getProperty("carga.tasa-por-cliente", "5"));
+		List<Integer> escalones = parsearEscalones(System.getProperty("carga.escalones", ""), clientes);
+		if (tasaPorCliente <= 0) {
+			throw new IllegalArgumentException("carga.tasa-por-cliente debe ser mayor a 0.");
+		}
+		int duracion = Integer.getInteger("carga.duracion-s", 30);
+		int calentamiento = Integer.getInteger("carga.calentamiento-s", 10);
+		int productos = Integer.getInteger("carga.productos", 5_000);
+		Map<Grupo, Integer> mezcla = parsearMezcla(System.getProperty("carga.mezcla", "lectura:60,busqueda:20,stock:15,usuarios:5"));
+		double p99Maximo = Double.parseDouble(System.getProperty("carga.p99-maximo-ms", "250"));
+		double erroresMaximos = Double.parseDouble(System.getProperty("carga.errores-maximos", "0.001"));
+		Path resultado = Path.of(System.getProperty("carga.resultado", "target/carga-resultados.json"));
+
+		List<Map<String, Object>> resultados = new ArrayList<>();
+		List<String> fallasPrimerEscalon = List.of();
+		int sostenible = 0;
+		ConfigurableApplicationContext contexto = iniciar(args);
+		try {
+			int puerto = ((WebServerApplicationContext) contexto).getWebServer().getPort();
+			PruebaCarga prueba = new PruebaCarga("http://localhost:" + puerto);
+			prueba.preparar(productos);
+			for (int clientesEscalon : escalones) {
+				System.out.printf("%nPrueba de carga: %d clientes a %.1f req/s (%.0f req/s en total), %d s de calentamiento, %d s de medición, mezcla %s%n",
+						clientesEscalon, tasaPorCliente, clientesEscalon * tasaPorCliente, calentamiento, duracion, mezcla);
+				prueba.ejecutar(clientesEscalon, tasaPorCliente, mezcla, calentamiento, duracion);
+				List<String> fallas = new ArrayList<>();
+				resultados.add(prueba.reportar(clientesEscalon, clientesEscalon * tasaPorCliente, duracion, p99Maximo, erroresMaximos, fallas));
+				fallas.forEach(falla -> System.out.println("FALLA: " + falla));
+				if (resultados.size() == 1) {
+					fallasPrimerEscalon = fallas;
+				}
+				if (!fallas.isEmpty()) {
+					break;
+				}
+				sostenible = clientesEscalon;
+			}
+		} finally {
+			contexto.close();
+		}
+
+		if (escalones.size() > 1) {
+			System.out.printf("%nConcurrencia máxima sostenible: %d clientes%n", sostenible);
+		}
+		Map<String, Object> reporte = new LinkedHashMap<>();
+		reporte.put("configuracion", Map.of("escalones", escalones, "tasaPorCliente", tasaPorCliente, "duracionSegundos", duracion,
+				"productos", productos, "mezcla", mezcla, "argumentos", List.of(args)));
+		reporte.put("concurrenciaMaximaSostenible", sostenible);
+		reporte.put("escalones", resultados);
+		if (resultado.getParent() != null) {
+			Files.createDirectories(resultado.getParent());
+		}
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(resultado.toFile(), reporte);
+		System.out.println("Resultados escritos en " + resultado.toAbsolutePath());
+		// El gate es el primer escalón (o el único); los siguientes solo buscan el límite
+		if (!fallasPrimerEscalon.isEmpty()) {
+			System.exit(1);
+		}
+	}
+
+	private static ConfigurableApplicationContext iniciar(String[] args) {
+		// devtools está en el classpath de pruebas: su reinicio en otro hilo ocultaría los errores de arranque
+		System.setProperty("spring.devtools.restart.enabled", "false");
+		List<String> argumentos = new ArrayList<>(List.of(
+				"--server.port=0",
+				"--spring.main.banner-mode=off",
+				"--logging.level.root=WARN",
+				"--spring.datasource.url=jdbc:h2:mem:carga;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+				"--spring.jpa.properties.hibernate.generate_statistics=false",
+				// El token se obtiene una sola vez y debe durar toda la prueba
+				"--ecomarket.security.token.ttl=PT12H",
+				// Por la misma razón se excluye su apagado de la base en memoria, que falla al cerrar el contexto
+				"--spring.autoconfigure.exclude=org.springframework.boot.devtools.autoconfigure.DevToolsDataSourceAutoConfiguration"));
+		for (String arg : args) {
+			if (!arg.isBlank()) {
+				argumentos.add(arg);
+			}
+		}
+		return new SpringApplicationBuilder(MsProductosApplication.class)
+				.logStartupInfo(false)
+				.run(argumentos.toArray(String[]::new));
+	}
+
+	private static List<Integer> parsearEscalones(String escalones, int clientes) {
+		if (escalones.isBlank()) {
+			return List.of(clientes);
+		}
+		List<Integer> resultado = new ArrayList<>();
+		for (String escalon : escalones.split(",")) {
+			resultado.add(Integer.parseInt(escalon.trim()));
+		}
+		return resultado;
+	}
+
+	private static Map<Grupo, Integer> parsearMezcla(String mezcla) {
+		Map<Grupo, Integer> pesos = new LinkedHashMap<>();
+		for (String parte : mezcla.split(",")) {
+			String[] grupoPeso = parte.trim().split(":");
+			if (grupoPeso.length != 2) {
+				throw new IllegalArgumentException("Mezcla inválida: '" + parte + "'. Formato: lectura:60,busqueda:20,stock:15,usuarios:5");
+			}
+			int peso = Integer.parseInt(grupoPeso[1].trim());
+			if (peso > 0) {
+				pesos.put(Grupo.valueOf(grupoPeso[0].trim().toUpperCase()), peso);
+			}
+		}
+		if (pesos.isEmpty()) {
+			throw new IllegalArgumentException("La mezcla debe tener al menos un grupo con peso mayor a 0.");
+		}
+		return pesos;
+	}
+
+	/**
+	 * Obtiene los tokens, importa el catálogo y recolecta los ids y códigos que usan los clientes.
+	 */
+	private void preparar(int productos) throws IOException, InterruptedException {
+		tokenGerente = login("gerente01", "gerente123");
+		tokenAdmin = login("admin", "admin123");
+
+		StringBuilder ndjson = new StringBuilder();
+		for (int i = 0; i < productos; i++) {
+			Map<String, Object> producto = new LinkedHashMap<>();
+			producto.put("codigo", String.format("CARGA-%06d", i));
+			producto.put("nombre", NOMBRES[i % NOMBRES.length] + " " + ADJETIVOS[i % ADJETIVOS.length] + " " + i);
+			producto.put("descripcion", "Producto " + ADJETIVOS[(i / 3) % ADJETIVOS.length] + " de la línea "
+					+ CATEGORIAS[i % CATEGORIAS.length].toLowerCase() + ".");
+			producto.put("categoria", CATEGORIAS[i % CATEGORIAS.length]);
+			producto.put("precio", 500 + (i % 200) * 10.0);
+			producto.put("stock", 1_000_000);
+			ndjson.append(objectMapper.writeValueAsString(producto)).append('\n');
+		}
+		HttpResponse<String> importacion = http.send(solicitud("/api/v1/productos/importar?formato=ndjson", tokenGerente)
+				.POST(HttpRequest.BodyPublishers.ofString(ndjson.toString())).build(), HttpResponse.BodyHandlers.ofString());
+		exigirExito("importar el catálogo", importacion);
+
+		Long after = 0L;
+		while (after != null) {
+			HttpResponse<String> pagina = http.send(solicitud("/api/v1/productos?fields=id,codigo&limit=500&after=" + after, tokenGerente)
+					.GET().build(), HttpResponse.BodyHandlers.ofString());
+			exigirExito("listar el catálogo", pagina);
+			for (Map<String, Object> producto : objectMapper.readValue(pagina.body(), new TypeReference<List<Map<String, Object>>>() {})) {
+				idsProducto.add(((Number) producto.get("id")).longValue());
+				codigos.add((String) producto.get("codigo"));
+			}
+			after = pagina.headers().firstValue("X-Next-Cursor").map(Long::valueOf).orElse(null);
+		}
+
+		HttpResponse<String> usuarios = http.send(solicitud("/api/v1/usuarios", tokenAdmin).GET().build(), HttpResponse.BodyHandlers.ofString());
+		exigirExito("listar los usuarios", usuarios);
+		for (Map<String, Object> usuario : objectMapper.readValue(usuarios.body(), new TypeReference<List<Map<String, Object>>>() {})) {
+			long id = ((Number) usuario.get("id")).longValue();
+			idsUsuario.add(id);
+			if ("empleado01".equals(usuario.get("username"))) {
+				idEmpleado = id;
+			}
+		}
+		System.out.printf("Catálogo importado: %d productos, %d usuarios.%n", idsProducto.size(), idsUsuario.size());
+	}
+
+	private String login(String username, String password) throws IOException, InterruptedException {
+		HttpResponse<String> respuesta = http.send(HttpRequest.newBuilder(URI.create(base + "/api/v1/auth/login"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of("username", username, "password", password))))
+				.build(), HttpResponse.BodyHandlers.ofString());
+		exigirExito("iniciar sesión como " + username, respuesta);
+		return (String) objectMapper.readValue(respuesta.body(), Map.class).get("token");
+	}
+
+	private static void exigirExito(String accion, HttpResponse<String> respuesta) {
+		if (respuesta.statusCode() / 100 != 2) {
+			throw new IllegalStateException("No se pudo " + accion + ": HTTP " + respuesta.statusCode() + " " + respuesta.body());
+		}
+	}
+
+	private void ejecutar(int clientes, double tasaPorCliente, Map<Grupo, Integer> mezcla, int calentamiento, int duracion)
+			throws InterruptedException {
+		Grupo[] grupos = mezcla.keySet().toArray(Grupo[]::new);
+		int[] acumulados = new int[grupos.length];
+		int total = 0;
+		for (int i = 0; i < grupos.length; i++) {
+			total += mezcla.get(grupos[i]);
+			acumulados[i] = total;
+		}
+		int pesoTotal = total;
+		long intervalo = (long) (TimeUnit.SECONDS.toNanos(1) / tasaPorCliente);
+
+		estadisticas.clear();
+		long inicio = System.nanoTime();
+		long fin = inicio + TimeUnit.SECONDS.toNanos(calentamiento + duracion);
+		// Clientes en hilos virtuales: el generador de carga no debe ser el límite con miles de clientes
+		ExecutorService ejecutor = Executors.newVirtualThreadPerTaskExecutor();
+		for (int c = 0; c < clientes; c++) {
+			ejecutor.execute(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				// Desfase inicial al azar, para que los clientes no envíen todos en el mismo instante
+				long programada = inicio + random.nextLong(intervalo);
+				try {
+					while (programada < fin) {
+						long espera = programada - System.nanoTime();
+						if (espera > 0) {
+							Thread.sleep(Duration.ofNanos(espera));
+						}
+						int sorteo = random.nextInt(pesoTotal);
+						int i = 0;
+						while (sorteo >= acumulados[i]) {
+							i++;
+						}
+						ejecutar(grupos[i], random, programada);
+						// Si la respuesta tardó más que el intervalo, la siguiente sale de inmediato y su latencia
+						// incluye el atraso acumulado
+						programada += intervalo;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		ejecutor.shutdown();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(calentamiento));
+		estadisticas.values().forEach(EstadisticasEndpoint::reiniciar);
+		ejecutor.awaitTermination(duracion + 60L, TimeUnit.SECONDS);
+		estadisticas.values().forEach(EstadisticasEndpoint::cerrar);
+	}
+
+	private void ejecutar(Grupo grupo, ThreadLocalRandom random, long programada) throws InterruptedException {
+		switch (grupo) {
+			case LECTURA -> {
+				switch (random.nextInt(3)) {
+					case 0 -> enviar("GET /api/v1/productos/{id}", programada, tokenGerente,
+							"/api/v1/productos/" + idsProducto.get(random.nextInt(idsProducto.size())), "GET");
+					case 1 -> enviar("GET /api/v1/productos/codigo/{codigo}", programada, tokenGerente,
+							"/api/v1/productos/codigo/" + codigos.get(random.nextInt(codigos.size())), "GET");
+					default -> enviar("GET /api/v1/productos?after&limit", programada, tokenGerente,
+							"/api/v1/productos?limit=50&after=" + idsProducto.get(random.nextInt(idsProducto.size())), "GET");
+				}
+			}
+			case BUSQUEDA -> {
+				if (random.nextBoolean()) {
+					enviar("GET /api/v1/productos/buscar?q", programada, tokenGerente,
+							"/api/v1/productos/buscar?tamano=20&q=" + codificar(TERMINOS[random.nextInt(TERMINOS.length)]), "GET");
+				} else {
+					enviar("GET /api/v1/productos?categoria", programada, tokenGerente,
+							"/api/v1/productos?limit=50&categoria=" + codificar(CATEGORIAS[random.nextInt(CATEGORIAS.length)]), "GET");
+				}
+			}
+			case STOCK -> {
+				int indice = random.nextBoolean()
+						? random.nextInt(Math.min(CODIGOS_CALIENTES, codigos.size()))
+						: random.nextInt(codigos.size());
+				// Descuentos y reposiciones en igual proporción: el stock inicial nunca se agota
+				enviar("PATCH /api/v1/productos/{codigo}/stock", programada, tokenGerente,
+						"/api/v1/productos/" + codigos.get(indice) + "/stock?cantidad=" + (random.nextBoolean() ? -1 : 1), "PATCH");
+			}
+			case USUARIOS -> {
+				switch (random.nextInt(3)) {
+					case 0 -> enviar("GET /api/v1/usuarios", programada, tokenAdmin, "/api/v1/usuarios", "GET");
+					case 1 -> enviar("GET /api/v1/usuarios/{id}", programada, tokenAdmin,
+							"/api/v1/usuarios/" + idsUsuario.get(random.nextInt(idsUsuario.size())), "GET");
+					default -> enviar("PATCH /api/v1/usuarios/{id}/activar", programada, tokenAdmin,
+							"/api/v1/usuarios/" + idEmpleado + "/activar", "PATCH");
+				}
+			}
+		}
+	}
+
+	private void enviar(String endpoint, long programada, String token, String ruta, String metodo) throws InterruptedException {
+		HttpRequest request = solicitud(ruta, token)
+				.method(metodo, HttpRequest.BodyPublishers.noBody())
+				.build();
+		boolean exitosa;
+		try {
+			exitosa = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() / 100 == 2;
+		} catch (IOException e) {
+			exitosa = false;
+		}
+		estadisticas.computeIfAbsent(endpoint, EstadisticasEndpoint::new).registrar(programada, System.nanoTime(), exitosa);
+	}
+
+	private HttpRequest.Builder solicitud(String ruta, String token) {
+		return HttpRequest.newBuilder(URI.create(base + ruta))
+				.header("Authorization", "Bearer " + token)
+				.timeout(Duration.ofSeconds(30));
+	}
+
+	private static String codificar(String valor) {
+		return URLEncoder.encode(valor, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Imprime la tabla por endpoint del escalón y compara con los umbrales.
+	 * @param fallas Recibe la descripción de cada umbral superado (queda vacía si el escalón pasa).
+	 * @return El resultado del escalón, para el JSON.
+	 */
+	private Map<String, Object> reportar(int clientes, double tasaObjetivo, int duracion, double p99Maximo, double erroresMaximos, List<String> fallas) {
+		List<EstadisticasEndpoint> endpoints = new ArrayList<>(estadisticas.values());
+		endpoints.sort(Comparator.comparing(EstadisticasEndpoint::getNombre));
+
+		List<Map<String, Object>> filas = new ArrayList<>();
+		Histogram total = EstadisticasEndpoint.nuevoHistograma();
+		long errores = 0;
+		System.out.printf("%n%-48s %11s %8s %9s %8s %8s %9s %8s%n",
+				"Endpoint", "Solicitudes", "Errores", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "máx ms");
+		for (EstadisticasEndpoint e : endpoints) {
+			e.sumarA(total);
+			errores += e.errores();
+			double porSegundo = e.solicitudes() / (double) duracion;
+			System.out.printf("%-48s %11d %8d %9.1f %8.2f %8.2f %9.2f %8.2f%n", e.getNombre(), e.solicitudes(), e.errores(),
+					porSegundo, e.percentilMs(50), e.percentilMs(99), e.percentilMs(99.9), e.maximoMs());
+
+			Map<String, Object> fila = new LinkedHashMap<>();
+			fila.put("endpoint", e.getNombre());
+			fila.put("solicitudes", e.solicitudes());
+			fila.put("errores", e.errores());
+			fila.put("solicitudesPorSegundo", porSegundo);
+			fila.put("p50Ms", e.percentilMs(50));
+			fila.put("p99Ms", e.percentilMs(99));
+			fila.put("p999Ms", e.percentilMs(99.9));
+			fila.put("maximoMs", e.maximoMs());
+			filas.add(fila);
+
+			if (p99Maximo > 0 && e.percentilMs(99) > p99Maximo) {
+				fallas.add(String.format("p99 de %s = %.2f ms (máximo %.2f ms)", e.getNombre(), e.percentilMs(99), p99Maximo));
+			}
+		}
+		long solicitudes = total.getTotalCount();
+		double porSegundo = solicitudes / (double) duracion;
+		System.out.printf("%-48s %11d %8d %9.1f %8.2f %8.2f %9.2f %8.2f%n", "TOTAL", solicitudes, errores, porSegundo,
+				total.getValueAtPercentile(50) / 1000.0, total.getValueAtPercentile(99) / 1000.0,
+				total.getValueAtPercentile(99.9) / 1000.0, total.getMaxValue() / 1000.0);
+		double tasaErrores = solicitudes == 0 ? 1 : errores / (double) solicitudes;
+		if (tasaErrores > erroresMaximos) {
+			fallas.add(String.format("tasa de errores = %.4f (máximo %.4f)", tasaErrores, erroresMaximos));
+		}
+
+		Map<String, Object> escalon = new LinkedHashMap<>();
+		escalon.put("clientes", clientes);
+		escalon.put("solicitudesPorSegundoObjetivo", tasaObjetivo);
+		escalon.put("solicitudes", solicitudes);
+		escalon.put("errores", errores);
+		escalon.put("solicitudesPorSegundo", porSegundo);
+		escalon.put("p50Ms", total.getValueAtPercentile(50) / 1000.0);
+		escalon.put("p99Ms", total.getValueAtPercentile(99) / 1000.0);
+		escalon.put("p999Ms", total.getValueAtPercentile(99.9) / 1000.0);
+		escalon.put("endpoints", filas);
+		escalon.put("fallas", fallas);
+		return escalon;
+	}
+}
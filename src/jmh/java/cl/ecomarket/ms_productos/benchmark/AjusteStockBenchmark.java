@@ -0,0 +1,75 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.service.ProductoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput de ProductoService.ajustarStock con 8 hilos, con y sin escritura diferida (write-behind),
+ * cuando todos ajustan el mismo código (máxima contención sobre la fila) y cuando se reparten entre 100.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AjusteStockBenchmark {
+
+	@Param({"false", "true"})
+	private boolean writeBehind;
+
+	@Param({"1", "100"})
+	private int codigos;
+
+	private ConfigurableApplicationContext contexto;
+	private ProductoService productoService;
+	private Path diario;
+
+	@Setup
+	public void preparar() throws Exception {
+		diario = Files.createTempDirectory("diario-stock-bench");
+		contexto = ContextoBenchmark.iniciar(
+				"ecomarket.stock.write-behind.habilitado=" + writeBehind,
+				"ecomarket.stock.write-behind.directorio=" + diario);
+		productoService = contexto.getBean(ProductoService.class);
+		for (int i = 0; i < codigos; i++) {
+			Producto producto = ContextoBenchmark.producto(i);
+			productoService.createProducto(producto);
+		}
+	}
+
+	@TearDown
+	public void cerrar() {
+		contexto.close();
+		FileSystemUtils.deleteRecursively(diario.toFile());
+	}
+
+	@Benchmark
+	public Producto ajustarStock() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		// Descuentos y reposiciones en igual proporción: el stock inicial nunca se agota
+		int cantidad = random.nextBoolean() ? -1 : 1;
+		return productoService.ajustarStock(ContextoBenchmark.codigo(random.nextInt(codigos)), cantidad);
+	}
+}
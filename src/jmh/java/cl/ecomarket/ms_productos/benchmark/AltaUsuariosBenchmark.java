@@ -0,0 +1,94 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.dto.AltaUsuario;
+import cl.ecomarket.ms_productos.dto.ResultadoAltaMasiva;
+import cl.ecomarket.ms_productos.model.Usuario;
+import cl.ecomarket.ms_productos.service.AltaMasivaUsuariosService;
+import cl.ecomarket.ms_productos.service.UsuarioService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Usuarios creados por segundo: uno por uno como lo hace hoy un cliente de la API (POST /usuarios, con dos
+ * consultas de existencia, BCrypt y un INSERT, y luego POST /usuarios/{id}/roles/{rol}) frente a un lote de /api/v1/usuarios/lote con el mismo
+ * contenido. El resultado en ops/s es directamente usuarios/s. Con BCrypt en paralelo la diferencia
+ * crece con los núcleos de la máquina (ver "Available processors" en la salida de JMH).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@OperationsPerInvocation(AltaUsuariosBenchmark.LOTE)
+public class AltaUsuariosBenchmark {
+
+	static final int LOTE = 100;
+
+	private ConfigurableApplicationContext contexto;
+	private UsuarioService usuarioService;
+	private AltaMasivaUsuariosService altaMasivaUsuariosService;
+	private int siguiente;
+
+	@Setup
+	public void preparar() {
+		contexto = ContextoBenchmark.iniciar();
+		usuarioService = contexto.getBean(UsuarioService.class);
+		altaMasivaUsuariosService = contexto.getBean(AltaMasivaUsuariosService.class);
+	}
+
+	@TearDown
+	public void cerrar() {
+		contexto.close();
+	}
+
+	@Benchmark
+	public int individual() {
+		int creados = 0;
+		for (AltaUsuario alta : lote()) {
+			Usuario usuario = new Usuario();
+			usuario.setUsername(alta.username());
+			usuario.setNombreCompleto(alta.nombreCompleto());
+			usuario.setEmail(alta.email());
+			usuario.setPassword(alta.password());
+			Long id = usuarioService.createUsuario(usuario).getId();
+			usuarioService.asignarRolAUsuario(id, "EMPLEADO_VENTAS");
+			creados++;
+		}
+		return creados;
+	}
+
+	@Benchmark
+	public int masivo() {
+		ResultadoAltaMasiva resultado = altaMasivaUsuariosService.crearUsuarios(lote());
+		if (resultado.creados() != LOTE) {
+			throw new IllegalStateException("Filas rechazadas: " + resultado.resultados());
+		}
+		return resultado.creados();
+	}
+
+	private List<AltaUsuario> lote() {
+		List<AltaUsuario> lote = new ArrayList<>(LOTE);
+		for (int i = 0; i < LOTE; i++) {
+			String username = String.format("alta-%07d", siguiente++);
+			lote.add(new AltaUsuario(username, "Empleado " + username, username + "@ecomarket.cl",
+					"clave-" + username, List.of("EMPLEADO_VENTAS")));
+		}
+		return lote;
+	}
+}
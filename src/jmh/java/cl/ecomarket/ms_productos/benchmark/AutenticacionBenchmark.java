@@ -0,0 +1,60 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.service.CustomUserDetailsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de autenticar con HTTP Basic sin la cache de credenciales: la consulta del usuario
+ * con sus roles y permisos, y la verificación BCrypt de la contraseña.
+ * Usa el usuario admin que crea el DataInitializer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AutenticacionBenchmark {
+
+	private ConfigurableApplicationContext contexto;
+	private CustomUserDetailsService userDetailsService;
+	private PasswordEncoder passwordEncoder;
+
+	@Setup
+	public void preparar() {
+		contexto = ContextoBenchmark.iniciar();
+		userDetailsService = contexto.getBean(CustomUserDetailsService.class);
+		passwordEncoder = contexto.getBean(PasswordEncoder.class);
+	}
+
+	@TearDown
+	public void cerrar() {
+		contexto.close();
+	}
+
+	@Benchmark
+	public UserDetails cargarUsuario() {
+		return userDetailsService.loadUserByUsername("admin");
+	}
+
+	@Benchmark
+	public boolean cargarUsuarioYVerificarPassword() {
+		UserDetails usuario = userDetailsService.loadUserByUsername("admin");
+		return passwordEncoder.matches("admin123", usuario.getPassword());
+	}
+}
@@ -0,0 +1,91 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.dto.ResultadoBusqueda;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import cl.ecomarket.ms_productos.service.ProductoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda por nombre (LIKE en la base de datos, el filtro nombre= y la búsqueda por relevancia, ambos
+ * sobre el índice invertido en memoria) y listado por categoría (índice categoria_normalizada) sobre
+ * catálogos de 20.000 y 1.000.000 de productos. Con el millón, el LIKE recorre la tabla completa en cada
+ * consulta mientras el índice invertido y el de categoría mantienen el costo por página.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// El catálogo de un millón de productos, con el índice invertido, no cabe en el heap por defecto de una máquina chica
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class BusquedaProductosBenchmark {
+
+	private static final int LIMITE = 50;
+
+	@Param({"20000", "1000000"})
+	private int productos;
+
+	// Solo la usan las búsquedas por nombre; el listado por categoría no se repite por cada consulta
+	@State(Scope.Benchmark)
+	public static class Consulta {
+		@Param({"verde", "manzana reciclable"})
+		private String texto;
+	}
+
+	private ConfigurableApplicationContext contexto;
+	private ProductoService productoService;
+	private ProductoRepository productoRepository;
+
+	@Setup
+	public void preparar() {
+		contexto = ContextoBenchmark.iniciar();
+		ContextoBenchmark.poblar(contexto, productos);
+		productoService = contexto.getBean(ProductoService.class);
+		productoRepository = contexto.getBean(ProductoRepository.class);
+	}
+
+	@TearDown
+	public void cerrar() {
+		contexto.close();
+	}
+
+	// La consulta que usa searchProductosByNombre mientras el índice no está listo
+	@Benchmark
+	public List<Producto> nombreLike(Consulta consulta) {
+		return productoRepository.findByNombreContainingIgnoreCaseAndIdGreaterThanOrderByIdAsc(
+				consulta.texto, 0L, Limit.of(LIMITE + 1));
+	}
+
+	@Benchmark
+	public PaginaProductos nombreIndice(Consulta consulta) {
+		return productoService.searchProductosByNombre(consulta.texto, null, LIMITE);
+	}
+
+	@Benchmark
+	public ResultadoBusqueda indiceEnMemoria(Consulta consulta) {
+		return productoService.buscarProductos(consulta.texto, 0, LIMITE);
+	}
+
+	@Benchmark
+	public PaginaProductos categoria() {
+		return productoService.getProductosByCategoria("LÁCTEOS", null, LIMITE);
+	}
+}
@@ -0,0 +1,84 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.service.ProductoService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de GET /api/productos/codigo/{codigo} en el servicio con la cache de productos habilitada y
+ * deshabilitada (ecomarket.productos.cache.habilitado), sobre 20.000 productos y sin el snapshot del catálogo.
+ * El modo SampleTime informa los percentiles: comparar p0.99 entre cache=true y cache=false.
+ * <p>
+ * codigoFrecuente consulta 1.000 códigos (caben en la cache: todo acierto tras el calentamiento);
+ * codigoAleatorio recorre todo el catálogo, el doble de max-entradas, y mide también las cargas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CacheProductosBenchmark {
+
+	private static final int PRODUCTOS = 20_000;
+	private static final int FRECUENTES = 1_000;
+
+	@Param({"false", "true"})
+	private boolean cache;
+
+	private ConfigurableApplicationContext contexto;
+	private ProductoService productoService;
+
+	@Setup
+	public void preparar() {
+		contexto = ContextoBenchmark.iniciar(
+				"ecomarket.productos.cache.habilitado=" + cache,
+				"ecomarket.productos.cache.max-entradas=" + PRODUCTOS / 2,
+				"ecomarket.productos.snapshot.habilitado=false");
+		ContextoBenchmark.poblar(contexto, PRODUCTOS);
+		productoService = contexto.getBean(ProductoService.class);
+	}
+
+	@TearDown
+	public void cerrar() {
+		if (cache) {
+			MeterRegistry registry = contexto.getBean(MeterRegistry.class);
+			double aciertos = registry.get("cache.gets").tag("cache", "productos.codigo").tag("result", "hit")
+					.functionCounter().count();
+			double fallas = registry.get("cache.gets").tag("cache", "productos.codigo").tag("result", "miss")
+					.functionCounter().count();
+			System.out.printf("%nCache por código: %.1f%% de aciertos (%.0f consultas)%n",
+					100 * aciertos / (aciertos + fallas), aciertos + fallas);
+		}
+		contexto.close();
+	}
+
+	@Benchmark
+	public Optional<Producto> codigoFrecuente() {
+		return productoService.getProductoByCodigo(ContextoBenchmark.codigo(ThreadLocalRandom.current().nextInt(FRECUENTES)));
+	}
+
+	@Benchmark
+	public Optional<Producto> codigoAleatorio() {
+		return productoService.getProductoByCodigo(ContextoBenchmark.codigo(ThreadLocalRandom.current().nextInt(PRODUCTOS)));
+	}
+}
@@ -0,0 +1,89 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.service.ProductoService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecturas del catálogo por la ruta de JPA (H2 en memoria, sin la cache de productos) y desde el
+ * snapshot en memoria, sobre 20.000 productos: una página del listado, un producto por código, una
+ * página de una categoría y una página de un rango de precio (10% del catálogo).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogoEnMemoriaBenchmark {
+
+	private static final int PRODUCTOS = 20_000;
+	private static final int LIMITE = 50;
+
+	@Param({"false", "true"})
+	private boolean snapshot;
+
+	private ConfigurableApplicationContext contexto;
+	private ProductoService productoService;
+	private long primerId;
+
+	@Setup
+	public void preparar() {
+		contexto = ContextoBenchmark.iniciar(
+				"ecomarket.productos.snapshot.habilitado=" + snapshot,
+				"ecomarket.productos.cache.habilitado=false");
+		ContextoBenchmark.poblar(contexto, PRODUCTOS);
+		productoService = contexto.getBean(ProductoService.class);
+		primerId = productoService.listarProductos(null, 1).productos().get(0).getId();
+		if (snapshot) {
+			double bytes = contexto.getBean(MeterRegistry.class).get("ecomarket.catalogo.snapshot.bytes").gauge().value();
+			System.out.printf("%nSnapshot: %d productos, %.1f MB estimados (%.0f bytes por producto)%n",
+					PRODUCTOS, bytes / (1024 * 1024), bytes / PRODUCTOS);
+		}
+	}
+
+	@TearDown
+	public void cerrar() {
+		contexto.close();
+	}
+
+	@Benchmark
+	public PaginaProductos listar() {
+		long after = primerId + ThreadLocalRandom.current().nextInt(PRODUCTOS - LIMITE);
+		return productoService.listarProductos(after, LIMITE);
+	}
+
+	@Benchmark
+	public Optional<Producto> porCodigo() {
+		return productoService.getProductoByCodigo(ContextoBenchmark.codigo(ThreadLocalRandom.current().nextInt(PRODUCTOS)));
+	}
+
+	@Benchmark
+	public PaginaProductos categoria() {
+		return productoService.getProductosByCategoria("LÁCTEOS", null, LIMITE);
+	}
+
+	@Benchmark
+	public PaginaProductos rangoPrecio() {
+		// Los precios sintéticos van de 500 a 2490 en pasos de 10: este rango es un 10% del catálogo
+		return productoService.getProductosByRangoPrecio(1000.0, 1190.0, null, LIMITE);
+	}
+}
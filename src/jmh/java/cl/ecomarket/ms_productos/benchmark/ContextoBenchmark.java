@@ -0,0 +1,88 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.MsProductosApplication;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import cl.ecomarket.ms_productos.service.AgregadosCategorias;
+import cl.ecomarket.ms_productos.service.CatalogoEnMemoria;
+import cl.ecomarket.ms_productos.service.IndiceBusquedaProductos;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arranque del contexto de Spring para los benchmarks: usa el application.properties de
+ * pruebas (H2 en memoria en modo MySQL), sin servidor web y con un catálogo sintético.
+ */
+final class ContextoBenchmark {
+
+	static final String[] CATEGORIAS = {"Frutas", "Verduras", "Lácteos", "Panadería", "Bebidas",
+			"Limpieza", "Higiene", "Despensa", "Congelados", "Mascotas"};
+	private static final String[] NOMBRES = {"Manzana", "Pera", "Tomate", "Leche", "Pan", "Jugo",
+			"Detergente", "Jabón", "Arroz", "Helado", "Alimento", "Yogur"};
+	private static final String[] ADJETIVOS = {"orgánico", "verde", "integral", "natural", "reciclable",
+			"local", "sin azúcar", "familiar"};
+
+	private ContextoBenchmark() {
+	}
+
+	/**
+	 * @param propiedades Propiedades "clave=valor" que reemplazan a las de application.properties.
+	 */
+	static ConfigurableApplicationContext iniciar(String... propiedades) {
+		List<String> argumentos = new ArrayList<>(List.of(
+				"--spring.main.banner-mode=off",
+				"--logging.level.root=WARN",
+				// Cada fork de JMH es un proceso nuevo con su propia base en memoria; el contexto la cierra en el TearDown
+				"--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_ON_EXIT=FALSE",
+				"--spring.jpa.properties.hibernate.generate_statistics=false",
+				// devtools está en el classpath de pruebas; su apagado de la base en memoria falla al cerrar el contexto
+				"--spring.autoconfigure.exclude=org.springframework.boot.devtools.autoconfigure.DevToolsDataSourceAutoConfiguration"));
+		for (String propiedad : propiedades) {
+			argumentos.add("--" + propiedad);
+		}
+		return new SpringApplicationBuilder(MsProductosApplication.class)
+				.web(WebApplicationType.NONE)
+				.logStartupInfo(false)
+				.run(argumentos.toArray(String[]::new));
+	}
+
+	/**
+	 * Inserta el catálogo sintético y reconstruye el índice de búsqueda, los agregados por categoría y
+	 * el snapshot del catálogo (si está habilitado), que al iniciar se construyeron sobre la tabla vacía.
+	 */
+	static void poblar(ConfigurableApplicationContext contexto, int cantidad) {
+		ProductoRepository productoRepository = contexto.getBean(ProductoRepository.class);
+		List<Producto> lote = new ArrayList<>(1000);
+		for (int i = 0; i < cantidad; i++) {
+			lote.add(producto(i));
+			if (lote.size() == 1000) {
+				productoRepository.saveAll(lote);
+				lote.clear();
+			}
+		}
+		productoRepository.saveAll(lote);
+		contexto.getBean(IndiceBusquedaProductos.class).construir();
+		contexto.getBean(AgregadosCategorias.class).construir();
+		contexto.getBean(CatalogoEnMemoria.class).construir();
+	}
+
+	static Producto producto(int i) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo(i));
+		producto.setNombre(NOMBRES[i % NOMBRES.length] + " " + ADJETIVOS[i % ADJETIVOS.length] + " " + i);
+		producto.setDescripcion("Producto " + ADJETIVOS[(i / 3) % ADJETIVOS.length]
+				+ " de la línea " + CATEGORIAS[i % CATEGORIAS.length].toLowerCase() + ", presentación " + (i % 5 + 1) + " unidades.");
+		producto.setCategoria(CATEGORIAS[i % CATEGORIAS.length]);
+		producto.setPrecio(500 + (i % 200) * 10.0);
+		producto.setStock(1_000_000);
+		return producto;
+	}
+
+	static String codigo(int i) {
+		return String.format("BENCH-%06d", i);
+	}
+}
@@ -0,0 +1,114 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.repository.UsuarioRepository;
+import cl.ecomarket.ms_productos.service.UsuarioService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /api/v1/usuarios con 100.000 usuarios: el listado anterior (todas las entidades con sus roles y
+ * permisos, serializadas con la sesión abierta como en open-in-view) frente a una página de 50 resúmenes
+ * de la consulta con proyección, que incluye el conteo para X-Total-Count.
+ * Se mide hasta obtener los bytes del JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListadoUsuariosBenchmark {
+
+	private static final int USUARIOS = 100_000;
+	private static final String[] ROLES = {"EMPLEADO_VENTAS", "LOGISTICA", "GERENTE_TIENDA"};
+	private static final String[] NOMBRES = {"Ana", "Bruno", "Carla", "Diego", "Elena", "Felipe", "Gloria", "Hugo"};
+	private static final String[] APELLIDOS = {"Rojas", "Muñoz", "Soto", "Contreras", "Silva", "Pérez", "Díaz"};
+
+	private ConfigurableApplicationContext contexto;
+	private UsuarioService usuarioService;
+	private UsuarioRepository usuarioRepository;
+	private TransactionTemplate lectura;
+	private ObjectMapper objectMapper;
+
+	@Setup
+	public void preparar() {
+		// H2 devuelve el resultado anterior de una consulta repetida si las tablas no cambiaron; se desactiva
+		// para medir la consulta y el conteo en cada request, como en MySQL
+		contexto = ContextoBenchmark.iniciar("spring.datasource.hikari.connection-init-sql=SET OPTIMIZE_REUSE_RESULTS FALSE");
+		usuarioService = contexto.getBean(UsuarioService.class);
+		usuarioRepository = contexto.getBean(UsuarioRepository.class);
+		objectMapper = contexto.getBean(ObjectMapper.class);
+		lectura = new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class));
+		lectura.setReadOnly(true);
+		poblar(contexto.getBean(JdbcTemplate.class));
+	}
+
+	@TearDown
+	public void cerrar() {
+		contexto.close();
+	}
+
+	@Benchmark
+	public byte[] entidadesCompletas() {
+		return lectura.execute(estado -> json(usuarioRepository.findAll()));
+	}
+
+	@Benchmark
+	public byte[] paginaResumenes() {
+		return json(usuarioService.listarUsuarios(null, null, null, 0, 50).usuarios());
+	}
+
+	@Benchmark
+	public byte[] paginaResumenesPorRolYNombre() {
+		return json(usuarioService.listarUsuarios(true, "LOGISTICA", "nombreCompleto,desc", 0, 50).usuarios());
+	}
+
+	private byte[] json(Object cuerpo) {
+		try {
+			return objectMapper.writeValueAsBytes(cuerpo);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Inserta con JDBC en batch: con createUsuario cada usuario costaría un hash BCrypt
+	private static void poblar(JdbcTemplate jdbc) {
+		String hash = jdbc.queryForObject("select password from usuarios where username = 'admin'", String.class);
+		Long[] roles = new Long[ROLES.length];
+		for (int i = 0; i < ROLES.length; i++) {
+			roles[i] = jdbc.queryForObject("select id from roles where nombre = ?", Long.class, ROLES[i]);
+		}
+		List<Object[]> usuarios = new ArrayList<>(USUARIOS);
+		for (int i = 0; i < USUARIOS; i++) {
+			String username = String.format("empleado-%06d", i);
+			usuarios.add(new Object[]{username, NOMBRES[i % NOMBRES.length] + " " + APELLIDOS[(i / 7) % APELLIDOS.length] + " " + i,
+					username + "@ecomarket.cl", hash, i % 10 != 0});
+		}
+		jdbc.batchUpdate("insert into usuarios (username, nombre_completo, email, password, activo) values (?, ?, ?, ?, ?)", usuarios);
+		// Uno de cada tres tiene además un segundo rol
+		jdbc.update("insert into usuarios_roles (usuario_id, rol_id) select id, case mod(id, 3) when 0 then ? when 1 then ? else ? end "
+				+ "from usuarios where username like 'empleado-%'", roles[0], roles[1], roles[2]);
+		jdbc.update("insert into usuarios_roles (usuario_id, rol_id) select id, ? from usuarios "
+				+ "where username like 'empleado-%' and mod(id, 3) = 0", roles[1]);
+		jdbc.execute("analyze");
+	}
+}
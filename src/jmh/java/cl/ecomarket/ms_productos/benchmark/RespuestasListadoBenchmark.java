@@ -0,0 +1,87 @@
+package cl.ecomarket.ms_productos.benchmark;
+
+import cl.ecomarket.ms_productos.controller.ProductoController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /api/v1/productos sobre un catálogo de 50.000 productos servido desde el snapshot en memoria, con y
+ * sin la cache de respuestas serializadas: sin ella, Jackson serializa la página en cada request.
+ * Se llama al controlador directamente (sin Tomcat ni filtros) y se mide hasta obtener los bytes del cuerpo.
+ * La asignación por request se lee en gc.alloc.rate.norm (profiler gc del perfil jmh).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RespuestasListadoBenchmark {
+
+	private static final int PRODUCTOS = 50_000;
+
+	@Param({"false", "true"})
+	private boolean cache;
+
+	@Param({"50", "500"})
+	private int limite;
+
+	private ConfigurableApplicationContext contexto;
+	private ProductoController productoController;
+	private MockHttpServletRequest request;
+	private MockHttpServletResponse response;
+
+	@Setup
+	public void preparar() {
+		contexto = ContextoBenchmark.iniciar(
+				"ecomarket.productos.snapshot.habilitado=true",
+				"ecomarket.productos.respuestas.habilitado=" + cache);
+		ContextoBenchmark.poblar(contexto, PRODUCTOS);
+		productoController = contexto.getBean(ProductoController.class);
+		request = new MockHttpServletRequest("GET", "/api/v1/productos");
+		request.setQueryString("limit=" + limite);
+		response = new MockHttpServletResponse();
+		// El Link de la página siguiente se arma desde la request actual
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+	}
+
+	@TearDown
+	public void cerrar() {
+		RequestContextHolder.resetRequestAttributes();
+		contexto.close();
+	}
+
+	@Benchmark
+	public Object listar() {
+		request.removeHeader(HttpHeaders.ACCEPT_ENCODING);
+		return productoController.getAllProductos(null, null, null, null, null, limite, null,
+				new ServletWebRequest(request, response)).getBody();
+	}
+
+	@Benchmark
+	public Object listarGzip() {
+		request.removeHeader(HttpHeaders.ACCEPT_ENCODING);
+		request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+		return productoController.getAllProductos(null, null, null, null, null, limite, null,
+				new ServletWebRequest(request, response)).getBody();
+	}
+}
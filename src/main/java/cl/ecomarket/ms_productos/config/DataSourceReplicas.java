@@ -0,0 +1,233 @@
+package cl.ecomarket.ms_productos.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fuente de datos de solo lectura que reparte las conexiones entre las réplicas de la base de datos.
+ * <p>
+ * {@link LazyConnectionDataSourceProxy} la usa para las transacciones readOnly (y para las consultas de
+ * los repositorios fuera de una transacción); el resto sigue en el primario. La réplica se elige en
+ * round-robin o por menos conexiones activas, saltando las que fallaron hasta que el chequeo periódico
+ * las vuelva a encontrar sanas. Si no queda ninguna, la lectura va al primario.
+ * <p>
+ * Después de confirmar una escritura, las lecturas del mismo usuario van al primario durante la
+ * ventana de lectura propia, para que no lea desde una réplica que aún no recibe su cambio.
+ * Cada conexión entregada se cuenta en ecomarket.datasource.lecturas con su destino y motivo.
+ */
+public class DataSourceReplicas extends AbstractDataSource implements TransactionExecutionListener, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceReplicas.class);
+    private static final String METRICA_LECTURAS = "ecomarket.datasource.lecturas";
+
+    public enum Seleccion { ROUND_ROBIN, MENOS_CARGADA }
+
+    private static final class Replica {
+        final String nombre;
+        final HikariDataSource dataSource;
+        final Counter lecturas;
+        volatile boolean sana = true;
+
+        Replica(String nombre, HikariDataSource dataSource, MeterRegistry registry) {
+            this.nombre = nombre;
+            this.dataSource = dataSource;
+            this.lecturas = Counter.builder(METRICA_LECTURAS)
+                    .description("Conexiones de lectura entregadas, por destino y motivo")
+                    .tag("destino", nombre)
+                    .tag("motivo", "replica")
+                    .register(registry);
+        }
+
+        int activas() {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            return pool != null ? pool.getActiveConnections() : 0;
+        }
+
+        void marcar(boolean sana, @Nullable Exception causa) {
+            if (this.sana == sana) {
+                return;
+            }
+            this.sana = sana;
+            if (sana) {
+                log.info("La réplica {} volvió a responder; se retoman las lecturas.", nombre);
+            } else {
+                // Las conexiones que quedan en el pool apuntan a la réplica caída; se reemplazan al volver
+                HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+                if (pool != null) {
+                    pool.softEvictConnections();
+                }
+                log.warn("La réplica {} no responde; sus lecturas van a otra réplica o al primario: {}",
+                        nombre, causa != null ? causa.getMessage() : "conexión no válida");
+            }
+        }
+    }
+
+    private final DataSource primario;
+    private final List<Replica> replicas;
+    private final Seleccion seleccion;
+    private final long lecturaPropiaNanos;
+    private final Counter lecturasPropias;
+    private final Counter lecturasSinReplica;
+    private final AtomicInteger turno = new AtomicInteger();
+    // Usuario -> System.nanoTime() de su última escritura confirmada
+    private final Map<String, Long> escrituras = new ConcurrentHashMap<>();
+
+    /**
+     * @param primario La fuente de datos de escritura, usada cuando no hay réplica disponible.
+     * @param replicas Los pools de las réplicas; se cierran junto con esta fuente de datos.
+     * @param seleccion Cómo se elige la réplica de cada lectura.
+     * @param lecturaPropia Cuánto tiempo leen del primario los usuarios que acaban de escribir (cero la desactiva).
+     */
+    public DataSourceReplicas(DataSource primario, List<HikariDataSource> replicas, Seleccion seleccion,
+                              Duration lecturaPropia, MeterRegistry registry) {
+        this.primario = primario;
+        this.replicas = new ArrayList<>(replicas.size());
+        for (HikariDataSource replica : replicas) {
+            this.replicas.add(new Replica(replica.getPoolName(), replica, registry));
+        }
+        this.seleccion = seleccion;
+        this.lecturaPropiaNanos = lecturaPropia.toNanos();
+        this.lecturasPropias = Counter.builder(METRICA_LECTURAS)
+                .tag("destino", "primario")
+                .tag("motivo", "lectura-propia")
+                .register(registry);
+        this.lecturasSinReplica = Counter.builder(METRICA_LECTURAS)
+                .tag("destino", "primario")
+                .tag("motivo", "sin-replica")
+                .register(registry);
+        Gauge.builder("ecomarket.datasource.replicas.sanas", this.replicas,
+                        r -> r.stream().filter(replica -> replica.sana).count())
+                .description("Réplicas que están recibiendo lecturas")
+                .register(registry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (escribioRecientemente(usuarioActual())) {
+            lecturasPropias.increment();
+            return primario.getConnection();
+        }
+        for (Replica replica : candidatas()) {
+            try {
+                Connection conexion = replica.dataSource.getConnection();
+                replica.lecturas.increment();
+                return conexion;
+            } catch (SQLException e) {
+                replica.marcar(false, e);
+            }
+        }
+        lecturasSinReplica.increment();
+        return primario.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLException("Las réplicas solo usan las credenciales configuradas en ecomarket.replicas.*");
+    }
+
+    /**
+     * Registra la escritura del usuario actual al confirmarse una transacción que no es de solo lectura.
+     */
+    @Override
+    public void afterCommit(TransactionExecution transaction, @Nullable Throwable commitFailure) {
+        if (commitFailure != null || transaction.isReadOnly() || lecturaPropiaNanos <= 0) {
+            return;
+        }
+        String usuario = usuarioActual();
+        if (usuario != null) {
+            escrituras.put(usuario, System.nanoTime());
+        }
+    }
+
+    /**
+     * Vuelve a probar cada réplica y limpia las escrituras cuya ventana de lectura propia ya terminó.
+     * Las réplicas parten como sanas; el primer chequeo corre un intervalo después del arranque.
+     */
+    @Scheduled(fixedDelayString = "${ecomarket.replicas.intervalo-chequeo-ms:5000}",
+            initialDelayString = "${ecomarket.replicas.intervalo-chequeo-ms:5000}")
+    public void verificar() {
+        for (Replica replica : replicas) {
+            try (Connection conexion = replica.dataSource.getConnection()) {
+                replica.marcar(conexion.isValid(1), null);
+            } catch (SQLException e) {
+                replica.marcar(false, e);
+            }
+        }
+        long ahora = System.nanoTime();
+        escrituras.values().removeIf(instante -> ahora - instante >= lecturaPropiaNanos);
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    private boolean escribioRecientemente(@Nullable String usuario) {
+        if (usuario == null || lecturaPropiaNanos <= 0) {
+            return false;
+        }
+        Long instante = escrituras.get(usuario);
+        return instante != null && System.nanoTime() - instante < lecturaPropiaNanos;
+    }
+
+    // Las réplicas sanas en el orden en que se deben intentar
+    private List<Replica> candidatas() {
+        List<Replica> sanas = new ArrayList<>(replicas.size());
+        if (replicas.isEmpty()) {
+            return sanas;
+        }
+        if (seleccion == Seleccion.MENOS_CARGADA) {
+            for (Replica replica : replicas) {
+                if (replica.sana) {
+                    sanas.add(replica);
+                }
+            }
+            sanas.sort(Comparator.comparingInt(Replica::activas));
+            return sanas;
+        }
+        int inicio = Math.floorMod(turno.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((inicio + i) % replicas.size());
+            if (replica.sana) {
+                sanas.add(replica);
+            }
+        }
+        return sanas;
+    }
+
+    @Nullable
+    private static String usuarioActual() {
+        Authentication autenticacion = SecurityContextHolder.getContext().getAuthentication();
+        if (autenticacion == null || !autenticacion.isAuthenticated()
+                || autenticacion instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return autenticacion.getName();
+    }
+}
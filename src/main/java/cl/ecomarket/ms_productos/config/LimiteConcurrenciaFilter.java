@@ -0,0 +1,86 @@
+package cl.ecomarket.ms_productos.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Límite de requests en proceso para el modo de hilos virtuales.
+ * <p>
+ * Con hilos de plataforma, el pool de Tomcat (server.tomcat.threads.max) acota cuántas requests
+ * compiten por las conexiones de HikariCP. Con hilos virtuales cada request tiene su propio hilo y
+ * ese tope desaparece: una ráfaga dejaría miles de hilos esperando una conexión hasta agotar
+ * spring.datasource.hikari.connection-timeout. Este filtro deja pasar a lo más max-requests a la vez;
+ * las demás esperan un permiso hasta espera-maxima y, si no lo obtienen, reciben 503 con Retry-After.
+ * Los endpoints de actuator no se limitan, para que los health checks respondan bajo carga.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LimiteConcurrenciaFilter extends OncePerRequestFilter {
+
+    private final Semaphore permisos;
+    private final int maxRequests;
+    private final long esperaMaximaNanos;
+    private final Counter rechazos;
+
+    public LimiteConcurrenciaFilter(@Value("${ecomarket.concurrencia.max-requests:200}") int maxRequests,
+                                    @Value("${ecomarket.concurrencia.espera-maxima:PT1S}") Duration esperaMaxima,
+                                    MeterRegistry registry) {
+        this.permisos = new Semaphore(maxRequests, true);
+        this.maxRequests = maxRequests;
+        this.esperaMaximaNanos = esperaMaxima.toNanos();
+        this.rechazos = Counter.builder("ecomarket.concurrencia.rechazos")
+                .description("Requests rechazadas con 503 por superar el límite de concurrencia")
+                .register(registry);
+        Gauge.builder("ecomarket.concurrencia.en-proceso", permisos, p -> this.maxRequests - p.availablePermits())
+                .description("Requests que tienen un permiso del límite de concurrencia")
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean permitido;
+        try {
+            permitido = permisos.tryAcquire(esperaMaximaNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permitido = false;
+        }
+        if (!permitido) {
+            rechazos.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Servicio saturado, reintente en un momento.");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permisos.release();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package cl.ecomarket.ms_productos.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mide cada método público de las clases @Service (ecomarket.servicio{clase, metodo, excepcion}).
+ * Las consultas de los repositorios ya las mide Spring Boot como spring.data.repository.invocations;
+ * los histogramas de ambos se habilitan en application.properties.
+ */
+@Aspect
+@Component
+public class MetricasServicios {
+
+    private final MeterRegistry meterRegistry;
+
+    public MetricasServicios(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("@within(org.springframework.stereotype.Service) && execution(public * cl.ecomarket.ms_productos..*(..))")
+    public Object medir(ProceedingJoinPoint punto) throws Throwable {
+        Timer.Sample muestra = Timer.start(meterRegistry);
+        String excepcion = "none";
+        try {
+            return punto.proceed();
+        } catch (Throwable e) {
+            excepcion = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            muestra.stop(Timer.builder("ecomarket.servicio")
+                    .description("Duración de los métodos de servicio")
+                    .tag("clase", punto.getSignature().getDeclaringType().getSimpleName())
+                    .tag("metodo", punto.getSignature().getName())
+                    .tag("excepcion", excepcion)
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package cl.ecomarket.ms_productos.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Diagnóstico de pinning en el modo de hilos virtuales: escucha el evento JFR jdk.VirtualThreadPinned
+ * (un hilo virtual que bloqueó dentro de un synchronized o de código nativo y retuvo su hilo portador).
+ * <p>
+ * Cada evento se registra en el timer ecomarket.hilos-virtuales.fijados; la primera vez que aparece
+ * un stack se escribe en el log con sus frames superiores, para identificar la librería responsable.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class MonitorHilosVirtuales {
+
+    private static final Logger log = LoggerFactory.getLogger(MonitorHilosVirtuales.class);
+    private static final int FRAMES = 12;
+    private static final int MAX_STACKS = 1000;
+
+    private final Duration umbral;
+    private final Timer fijados;
+    private final Set<String> stacksVistos = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+
+    public MonitorHilosVirtuales(@Value("${ecomarket.hilos-virtuales.umbral-pinning:PT0.02S}") Duration umbral,
+                                 MeterRegistry registry) {
+        this.umbral = umbral;
+        this.fijados = Timer.builder("ecomarket.hilos-virtuales.fijados")
+                .description("Tiempo que un hilo virtual bloqueado retuvo su hilo portador (pinning)")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(umbral).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::alFijarse);
+        stream.startAsync();
+        log.info("Hilos virtuales habilitados; se registran los bloqueos con pinning de más de {} ms.", umbral.toMillis());
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void alFijarse(RecordedEvent evento) {
+        fijados.record(evento.getDuration());
+        if (evento.getStackTrace() == null) {
+            return;
+        }
+        List<RecordedFrame> frames = evento.getStackTrace().getFrames();
+        String stack = frames.stream()
+                .limit(FRAMES)
+                .map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName() + ":" + f.getLineNumber())
+                .collect(Collectors.joining("\n    at "));
+        if (stacksVistos.size() < MAX_STACKS && stacksVistos.add(stack)) {
+            log.warn("Hilo virtual fijado a su portador durante {} ms:\n    at {}", evento.getDuration().toMillis(), stack);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cl.ecomarket.ms_productos.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Separación de lecturas y escrituras: reemplaza el DataSource de Spring Boot por un
+ * {@link LazyConnectionDataSourceProxy} que toma la conexión recién cuando se ejecuta la primera
+ * sentencia. Para entonces la transacción ya marcó la conexión como readOnly o no, y el proxy la
+ * pide al primario o a {@link DataSourceReplicas}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ecomarket.replicas.habilitado", havingValue = "true")
+public class ReplicasLecturaConfig {
+
+    // El mismo pool que Spring Boot crearía a partir de spring.datasource.*
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSourcePrimario(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public DataSourceReplicas dataSourceReplicas(@Qualifier("dataSourcePrimario") DataSource primario,
+                                                 DataSourceProperties properties,
+                                                 MeterRegistry registry,
+                                                 @Value("${ecomarket.replicas.urls}") List<String> urls,
+                                                 @Value("${ecomarket.replicas.username:${spring.datasource.username:}}") String username,
+                                                 @Value("${ecomarket.replicas.password:${spring.datasource.password:}}") String password,
+                                                 @Value("${ecomarket.replicas.maximum-pool-size:20}") int maximoPool,
+                                                 @Value("${ecomarket.replicas.connection-timeout:PT1S}") Duration timeoutConexion,
+                                                 @Value("${ecomarket.replicas.seleccion:ROUND_ROBIN}") DataSourceReplicas.Seleccion seleccion,
+                                                 @Value("${ecomarket.replicas.lectura-propia:PT2S}") Duration lecturaPropia) {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("ecomarket.replicas.habilitado=true requiere al menos una URL en ecomarket.replicas.urls");
+        }
+        List<HikariDataSource> pools = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + (i + 1));
+            pool.setJdbcUrl(urls.get(i).trim());
+            pool.setDriverClassName(properties.determineDriverClassName());
+            pool.setUsername(username);
+            pool.setPassword(password);
+            pool.setMaximumPoolSize(maximoPool);
+            // Una réplica caída no debe retener la lectura más que esto antes de pasar a la siguiente
+            pool.setConnectionTimeout(timeoutConexion.toMillis());
+            // El pool inicia aunque la réplica no responda; el chequeo periódico la incorpora después
+            pool.setInitializationFailTimeout(-1);
+            pool.setReadOnly(true);
+            pool.setMetricRegistry(registry);
+            pools.add(pool);
+        }
+        return new DataSourceReplicas(primario, pools, seleccion, lecturaPropia, registry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("dataSourcePrimario") DataSource primario, DataSourceReplicas replicas) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(primario);
+        proxy.setReadOnlyDataSource(replicas);
+        return proxy;
+    }
+}
@@ -1,14 +1,24 @@
 package cl.ecomarket.ms_productos.config;
 
+import cl.ecomarket.ms_productos.security.CacheAutenticacion;
+import cl.ecomarket.ms_productos.security.CachingAuthenticationProvider;
+import cl.ecomarket.ms_productos.security.PasswordEncoderAcotado;
+import cl.ecomarket.ms_productos.security.PasswordEncoderMedido;
+import cl.ecomarket.ms_productos.security.TokenAuthenticationFilter;
+import cl.ecomarket.ms_productos.security.TokenService;
 import cl.ecomarket.ms_productos.service.CustomUserDetailsService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
-import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -16,6 +26,7 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
@@ -25,38 +36,54 @@ public class SecurityConfig {
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
 
+    @Autowired
+    private CacheAutenticacion cacheAutenticacion;
+
+    @Autowired
+    private TokenService tokenService;
+
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry, Environment environment,
+                                           @Value("${ecomarket.security.bcrypt.max-concurrentes:0}") int maxConcurrentes) {
+        // Mide BCrypt por separado, para distinguirlo de la latencia de la base de datos
+        PasswordEncoder passwordEncoder = new PasswordEncoderMedido(new BCryptPasswordEncoder(), meterRegistry);
+        if (!Threading.VIRTUAL.isActive(environment)) {
+            return passwordEncoder; // El pool de Tomcat ya acota los hashes simultáneos
+        }
+        // Con hilos virtuales se deja al menos un hilo portador libre de BCrypt
+        int limite = maxConcurrentes > 0 ? maxConcurrentes : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        return new PasswordEncoderAcotado(passwordEncoder, limite);
     }
 
+    // El mismo AuthenticationManager atiende HTTP Basic y /api/v1/auth/login. El provider no se expone como
+    // bean: Spring Security lo tomaría para el AuthenticationManager global y advertiría que ignora el UserDetailsService.
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public AuthenticationManager authenticationManager(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(customUserDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
-        return authProvider;
-    }
-
-    @Bean
-    public AuthenticationManager authenticationManager(AuthenticationConfiguration authConfig) throws Exception {
-        return authConfig.getAuthenticationManager();
+        authProvider.setPasswordEncoder(passwordEncoder);
+        // Las credenciales ya verificadas se resuelven desde la cache sin volver a ejecutar BCrypt
+        return new ProviderManager(new CachingAuthenticationProvider(authProvider, cacheAutenticacion));
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, AuthenticationManager authenticationManager) throws Exception {
         http
+            .authenticationManager(authenticationManager)
             .csrf(csrf -> csrf.disable()) // Deshabilitar CSRF para APIs RESTful sin estado
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS)) // Para APIs sin estado (JWT)
             .authorizeHttpRequests(authz -> authz
                 .requestMatchers("/actuator/health", "/actuator/info").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMINISTRADOR_SISTEMA")
                 .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
+                .requestMatchers(HttpMethod.POST, "/api/v1/auth/login").permitAll()
 
                 // Reglas para PRODUCTOS
                 // Cualquiera autenticado puede leer productos
                 .requestMatchers(HttpMethod.GET, "/api/v1/productos", "/api/v1/productos/**").authenticated()
                 // Solo ciertos roles pueden crear, actualizar o eliminar productos
                 .requestMatchers(HttpMethod.POST, "/api/v1/productos").hasAnyRole("ADMINISTRADOR_SISTEMA", "GERENTE_TIENDA")
+                .requestMatchers(HttpMethod.POST, "/api/v1/productos/importar").hasAnyRole("ADMINISTRADOR_SISTEMA", "GERENTE_TIENDA")
                 .requestMatchers(HttpMethod.PUT, "/api/v1/productos/**").hasAnyRole("ADMINISTRADOR_SISTEMA", "GERENTE_TIENDA")
                 .requestMatchers(HttpMethod.PATCH, "/api/v1/productos/**").hasAnyRole("ADMINISTRADOR_SISTEMA", "GERENTE_TIENDA") // Ejemplo: para actualizar stock
                 .requestMatchers(HttpMethod.DELETE, "/api/v1/productos/**").hasRole("ADMINISTRADOR_SISTEMA")
@@ -70,6 +97,8 @@ public class SecurityConfig {
                 // Cualquier otra solicitud debe estar autenticada
                 .anyRequest().authenticated()
             )
+            // Tokens bearer emitidos por /api/v1/auth/login: se validan por firma, sin BD ni BCrypt
+            .addFilterBefore(new TokenAuthenticationFilter(tokenService), BasicAuthenticationFilter.class)
             // Configura la autenticación básica HTTP. pruebas iniciales.
             .httpBasic(Customizer.withDefaults());
 
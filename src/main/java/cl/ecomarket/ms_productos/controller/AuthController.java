@@ -0,0 +1,44 @@
+package cl.ecomarket.ms_productos.controller;
+
+import cl.ecomarket.ms_productos.security.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/auth")
+public class AuthController {
+
+    @Autowired
+    private AuthenticationManager authenticationManager;
+
+    @Autowired
+    private TokenService tokenService;
+
+    // Verifica las credenciales una sola vez y entrega un token bearer de corta duración
+    @PostMapping("/login")
+    public ResponseEntity<?> login(@RequestBody Map<String, String> payload) {
+        String username = payload.get("username");
+        String password = payload.get("password");
+        if (username == null || username.isBlank() || password == null || password.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "username y password son requeridos."));
+        }
+        try {
+            Authentication autenticacion = authenticationManager.authenticate(
+                    UsernamePasswordAuthenticationToken.unauthenticated(username, password));
+            return ResponseEntity.ok(Map.of(
+                    "token", tokenService.emitir(autenticacion),
+                    "tipo", "Bearer",
+                    "expiraEnSegundos", tokenService.getTtl().toSeconds()));
+        } catch (AuthenticationException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Credenciales inválidas."));
+        }
+    }
+}
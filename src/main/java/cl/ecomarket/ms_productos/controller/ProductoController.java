@@ -1,15 +1,46 @@
 package cl.ecomarket.ms_productos.controller;
 
+import cl.ecomarket.ms_productos.dto.AjusteStock;
+import cl.ecomarket.ms_productos.dto.FacetaCategoria;
+import cl.ecomarket.ms_productos.dto.PaginaCampos;
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.dto.ResultadoBusqueda;
 import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.service.AjusteStockLoteException;
+import cl.ecomarket.ms_productos.service.CacheRespuestas;
+import cl.ecomarket.ms_productos.service.ExportacionService;
+import cl.ecomarket.ms_productos.service.FeedCambiosProductos;
+import cl.ecomarket.ms_productos.service.FeedSaturadoException;
+import cl.ecomarket.ms_productos.service.ImportacionService;
 import cl.ecomarket.ms_productos.service.ProductoService;
+import cl.ecomarket.ms_productos.service.VersionCatalogo;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid; 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/v1/productos") // Ruta base para los endpoints de productos
@@ -18,33 +49,221 @@ public class ProductoController {
     @Autowired
     private ProductoService productoService;
 
+    @Autowired
+    private ExportacionService exportacionService;
+
+    @Autowired
+    private ImportacionService importacionService;
+
+    @Autowired
+    private VersionCatalogo versionCatalogo;
+
+    @Autowired
+    private CacheRespuestas cacheRespuestas;
+
+    @Autowired
+    private FeedCambiosProductos feedCambios;
+
+    // Listado paginado por cursor: el cuerpo sigue siendo la lista de productos y el
+    // cursor de la página siguiente va en el header X-Next-Cursor (y en Link rel="next").
+    // Sin limit se usa limite-por-defecto: el listado siempre se pagina. El catálogo completo, para procesos
+    // batch, se lee en streaming con /exportar.
+    // Con fields=codigo,precio,stock solo se leen y serializan esas columnas.
+    // Los filtros no se combinan: nombre tiene prioridad sobre categoria, y categoria sobre precioMin/precioMax.
+    // El cuerpo se entrega ya serializado desde CacheRespuestas (en gzip si el cliente lo acepta) mientras
+    // el catálogo no cambie.
     @GetMapping
-    public ResponseEntity<List<Producto>> getAllProductos(
+    public ResponseEntity<?> getAllProductos(
             @RequestParam(required = false) String nombre,
-            @RequestParam(required = false) String categoria) {
-        List<Producto> productos;
-        if (nombre != null && !nombre.isEmpty()) {
-            productos = productoService.searchProductosByNombre(nombre);
-        } else if (categoria != null && !categoria.isEmpty()) {
-            productos = productoService.getProductosByCategoria(categoria);
-        } else {
-            productos = productoService.getAllProductos();
+            @RequestParam(required = false) String categoria,
+            @RequestParam(required = false) Double precioMin,
+            @RequestParam(required = false) Double precioMax,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String fields,
+            WebRequest request) {
+        VersionCatalogo.Estado estado = versionCatalogo.getEstado();
+        if (noModificado(request, estado)) {
+            return null; // 304 sin consultar la base de datos
+        }
+        int tamano;
+        try {
+            tamano = productoService.limiteDePagina(limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        boolean porNombre = nombre != null && !nombre.isEmpty();
+        boolean porCategoria = !porNombre && categoria != null && !categoria.isEmpty();
+        boolean porPrecio = !porNombre && !porCategoria && (precioMin != null || precioMax != null);
+        HttpServletRequest servletRequest = ((ServletWebRequest) request).getRequest();
+        String consulta = servletRequest.getQueryString() != null
+                ? servletRequest.getRequestURI() + '?' + servletRequest.getQueryString()
+                : servletRequest.getRequestURI();
+        CacheRespuestas.Respuesta cuerpo;
+        try {
+            cuerpo = cacheRespuestas.obtener(consulta, estado.contador(), () -> {
+                Set<String> campos = productoService.parsearCampos(fields);
+                if (campos != null) {
+                    PaginaCampos pagina = productoService.listarCampos(campos,
+                            porNombre ? nombre : null, porCategoria ? categoria : null,
+                            porPrecio ? precioMin : null, porPrecio ? precioMax : null, after, tamano);
+                    return new CacheRespuestas.Pagina(pagina.productos(), pagina.siguienteCursor());
+                }
+                PaginaProductos pagina;
+                if (porNombre) {
+                    pagina = productoService.searchProductosByNombre(nombre, after, tamano);
+                } else if (porCategoria) {
+                    pagina = productoService.getProductosByCategoria(categoria, after, tamano);
+                } else if (porPrecio) {
+                    pagina = productoService.getProductosByRangoPrecio(precioMin, precioMax, after, tamano);
+                } else {
+                    pagina = productoService.listarProductos(after, tamano);
+                }
+                return new CacheRespuestas.Pagina(pagina.productos(), pagina.siguienteCursor());
+            });
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (cuerpo.siguienteCursor() != null) {
+            String siguiente = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", cuerpo.siguienteCursor())
+                    .replaceQueryParam("limit", tamano)
+                    .toUriString();
+            respuesta.header("X-Next-Cursor", String.valueOf(cuerpo.siguienteCursor()))
+                    .header(HttpHeaders.LINK, "<" + siguiente + ">; rel=\"next\"");
+        }
+        if (cuerpo.gzip() == null) {
+            return respuesta.body(cuerpo.json());
+        }
+        // Hay versión comprimida: la respuesta depende de Accept-Encoding
+        respuesta.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (aceptaGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return respuesta.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(cuerpo.gzip());
+        }
+        return respuesta.body(cuerpo.json());
+    }
+
+    // Búsqueda por relevancia en código, nombre y descripción (índice en memoria).
+    // El total de coincidencias va en el header X-Total-Count.
+    @GetMapping("/buscar")
+    public ResponseEntity<?> buscarProductos(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int pagina,
+            @RequestParam(required = false) Integer tamano,
+            @RequestParam(required = false) String fields,
+            WebRequest request) {
+        if (noModificado(request)) {
+            return null;
+        }
+        try {
+            Set<String> campos = productoService.parsearCampos(fields);
+            ResultadoBusqueda resultado = productoService.buscarProductos(q, pagina, tamano != null ? tamano : productoService.getLimitePorDefecto());
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(resultado.total()))
+                    .body(campos == null ? resultado.productos()
+                            : resultado.productos().stream().map(p -> productoService.proyectar(p, campos)).toList());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Facetas: cantidad de productos y stock total por categoría
+    @GetMapping("/categorias")
+    public ResponseEntity<List<FacetaCategoria>> getFacetasCategoria(WebRequest request) {
+        if (noModificado(request)) {
+            return null;
+        }
+        return ResponseEntity.ok(productoService.getFacetasCategoria());
+    }
+
+    // Feed de cambios (Server-Sent Events): reemplaza el polling del listado con una conexión abierta.
+    // Cada evento es un cambio confirmado (CREADO, ACTUALIZADO, ELIMINADO, STOCK_AJUSTADO); al reconectar,
+    // EventSource envía Last-Event-ID y el stream sigue desde ahí. Filtros: categoria y codigos=A,B,C.
+    // El stream se cierra al vencer spring.mvc.async.request-timeout; el cliente simplemente reconecta.
+    @GetMapping(value = "/cambios", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> getCambios(
+            @RequestHeader(value = "Last-Event-ID", required = false) String ultimoEvento,
+            @RequestParam(required = false) String categoria,
+            @RequestParam(required = false) String codigos) {
+        Set<String> filtroCodigos = null;
+        if (codigos != null && !codigos.isBlank()) {
+            filtroCodigos = new HashSet<>();
+            for (String codigo : codigos.split(",")) {
+                if (!codigo.isBlank()) {
+                    filtroCodigos.add(codigo.trim());
+                }
+            }
+        }
+        try {
+            return ResponseEntity.ok(feedCambios.suscribir(ultimoEvento, categoria, filtroCodigos));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(mensaje(e.getMessage()));
+        } catch (FeedSaturadoException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5")
+                    .contentType(MediaType.TEXT_PLAIN).body(mensaje(e.getMessage()));
+        }
+    }
+
+    // El tipo de retorno debe ser un emitter, así que el error también se escribe como uno ya completo
+    private static ResponseBodyEmitter mensaje(String texto) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        try {
+            emitter.send(texto, MediaType.TEXT_PLAIN);
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    // Exportación completa del catálogo para procesos batch (NDJSON o CSV), escrita en streaming
+    @GetMapping("/exportar")
+    public ResponseEntity<StreamingResponseBody> exportarProductos(@RequestParam(defaultValue = "ndjson") String formato) {
+        long inicio = System.nanoTime();
+        ExportacionService.Formato f;
+        try {
+            f = ExportacionService.Formato.desde(formato);
+        } catch (IllegalArgumentException e) {
+            // El tipo de retorno debe ser StreamingResponseBody, así que el error también se escribe como stream
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(salida -> salida.write(e.getMessage().getBytes(StandardCharsets.UTF_8)));
+        }
+        StreamingResponseBody cuerpo = salida -> exportacionService.exportar(f, salida, inicio);
+        return ResponseEntity.ok()
+                .contentType(f.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("productos." + f.getExtension()).build().toString())
+                .body(cuerpo);
+    }
+
+    // Importación masiva (NDJSON o CSV) leída en streaming desde el cuerpo de la request.
+    // Responde con el resumen y el detalle de las filas rechazadas; las filas válidas se guardan igual.
+    @PostMapping("/importar")
+    public ResponseEntity<?> importarProductos(@RequestParam(defaultValue = "ndjson") String formato, InputStream cuerpo) {
+        try {
+            return ResponseEntity.ok(importacionService.importar(ExportacionService.Formato.desde(formato), cuerpo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body("No se pudo leer el archivo: " + e.getMessage());
         }
-        return ResponseEntity.ok(productos);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Producto> getProductoById(@PathVariable Long id) {
-        return productoService.getProductoById(id)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<?> getProductoById(@PathVariable Long id,
+                                             @RequestParam(required = false) String fields,
+                                             WebRequest request) {
+        return productoCondicional(request, fields, () -> productoService.getProductoById(id));
     }
 
     @GetMapping("/codigo/{codigo}")
-    public ResponseEntity<Producto> getProductoByCodigo(@PathVariable String codigo) {
-        return productoService.getProductoByCodigo(codigo)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<?> getProductoByCodigo(@PathVariable String codigo,
+                                                 @RequestParam(required = false) String fields,
+                                                 WebRequest request) {
+        return productoCondicional(request, fields, () -> productoService.getProductoByCodigo(codigo));
     }
 
     @PostMapping
@@ -66,6 +285,9 @@ public class ProductoController {
             return ResponseEntity.notFound().build();
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body("El producto fue modificado por otra operación. Vuelva a leerlo e intente nuevamente.");
         }
     }
 
@@ -92,6 +314,88 @@ public class ProductoController {
             return ResponseEntity.notFound().build();
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (PessimisticLockingFailureException e) {
+            // Escritura diferida: un PUT, lote o importación sobre el mismo producto no terminó a tiempo
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    // Ajuste de stock por lote (ej: las líneas de un pedido), todo o nada en una sola transacción
+    @PatchMapping("/stock")
+    public ResponseEntity<?> ajustarStockLote(@RequestBody List<AjusteStock> ajustes) {
+        try {
+            return ResponseEntity.ok(productoService.ajustarStockLote(ajustes));
+        } catch (AjusteStockLoteException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage(), "resultados", e.getResultados()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // GET condicional de un listado: el ETag depende solo del contador de cambios del catálogo y de la
+    // consulta, así que se puede responder 304 antes de ejecutarla. También agrega ETag y Last-Modified
+    // (este último solo cuando ya pasó el segundo del último cambio, ver VersionCatalogo).
+    private boolean noModificado(WebRequest request) {
+        return noModificado(request, versionCatalogo.getEstado());
+    }
+
+    private boolean noModificado(WebRequest request, VersionCatalogo.Estado estado) {
+        String consulta = ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString();
+        return request.checkNotModified(versionCatalogo.etagListado(estado, consulta), versionCatalogo.lastModified(estado));
+    }
+
+    // GET condicional de un producto. Si el catálogo no cambió desde que se emitió el ETag del cliente
+    // (o, sin If-None-Match, desde su If-Modified-Since), se responde 304 sin cargar el producto. Si cambió,
+    // se carga y se compara su versión, stock y campos: si la representación es la misma, el 304 evita
+    // al menos la serialización y entrega el ETag nuevo.
+    // Con fields, el producto (normalmente desde la cache) se reduce a esos campos antes de serializarlo.
+    private ResponseEntity<?> productoCondicional(WebRequest request, String fields, Supplier<Optional<Producto>> cargar) {
+        Set<String> campos;
+        try {
+            campos = productoService.parsearCampos(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        VersionCatalogo.Estado estado = versionCatalogo.getEstado();
+        long lastModified = versionCatalogo.lastModified(estado);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        List<String> etags = ifNoneMatch != null ? List.of(ifNoneMatch.split(",")) : List.of();
+        for (String etag : etags) {
+            if (versionCatalogo.esDelEstado(etag, estado, campos) && request.checkNotModified(etag.trim(), lastModified)) {
+                return null;
+            }
+        }
+        if (etags.isEmpty() && request.checkNotModified(lastModified)) {
+            return null;
+        }
+
+        Optional<Producto> producto = cargar.get();
+        if (producto.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = versionCatalogo.etagProducto(estado, producto.get(), campos);
+        if (etags.stream().anyMatch(e -> versionCatalogo.esDeLaFila(e, producto.get(), campos))) {
+            return conLastModified(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag), lastModified).build();
+        }
+        return conLastModified(ResponseEntity.ok().eTag(etag), lastModified)
+                .body(campos == null ? producto.get() : productoService.proyectar(producto.get(), campos));
+    }
+
+    private static <B extends ResponseEntity.HeadersBuilder<B>> B conLastModified(B respuesta, long lastModified) {
+        return lastModified < 0 ? respuesta : respuesta.lastModified(lastModified);
+    }
+
+    // Ej: "gzip, deflate, br" acepta gzip; "gzip;q=0" lo rechaza explícitamente
+    private static boolean aceptaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String opcion : acceptEncoding.split(",")) {
+            String[] partes = opcion.split(";");
+            if (partes[0].trim().equalsIgnoreCase("gzip")) {
+                return partes.length == 1 || !partes[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
         }
+        return false;
     }
-}
\ No newline at end of file
+}
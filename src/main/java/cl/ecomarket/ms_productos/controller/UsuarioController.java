@@ -1,10 +1,14 @@
 package cl.ecomarket.ms_productos.controller;
 
+import cl.ecomarket.ms_productos.dto.AltaUsuario;
+import cl.ecomarket.ms_productos.dto.PaginaUsuarios;
 import cl.ecomarket.ms_productos.model.Usuario;
+import cl.ecomarket.ms_productos.service.AltaMasivaUsuariosService;
 import cl.ecomarket.ms_productos.service.UsuarioService;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -19,9 +23,42 @@ public class UsuarioController {
     @Autowired
     private UsuarioService usuarioService;
 
+    @Autowired
+    private AltaMasivaUsuariosService altaMasivaUsuariosService;
+
+    @Value("${ecomarket.usuarios.pagina.limite-por-defecto:50}")
+    private int limitePorDefecto;
+
+    // Listado paginado con el resumen de cada usuario (sin contraseña ni permisos).
+    // Ej: ?activo=true&rol=GERENTE_TIENDA&orden=nombreCompleto,desc&pagina=0&tamano=50
+    // El total de usuarios que cumplen los filtros va en el header X-Total-Count.
     @GetMapping
-    public ResponseEntity<List<Usuario>> getAllUsuarios() {
-        return ResponseEntity.ok(usuarioService.getAllUsuarios());
+    public ResponseEntity<?> getAllUsuarios(
+            @RequestParam(required = false) Boolean activo,
+            @RequestParam(required = false) String rol,
+            @RequestParam(required = false) String orden,
+            @RequestParam(defaultValue = "0") int pagina,
+            @RequestParam(required = false) Integer tamano) {
+        try {
+            PaginaUsuarios resultado = usuarioService.listarUsuarios(activo, rol, orden, pagina,
+                    tamano != null ? tamano : limitePorDefecto);
+            return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(resultado.total()))
+                    .body(resultado.usuarios());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Alta masiva: un arreglo JSON de usuarios (username, nombreCompleto, email, password, roles).
+    // Responde con el resultado de cada fila; las filas válidas se crean aunque otras se rechacen.
+    @PostMapping("/lote")
+    public ResponseEntity<?> crearUsuarios(@RequestBody List<AltaUsuario> altas) {
+        try {
+            return ResponseEntity.ok(altaMasivaUsuariosService.crearUsuarios(altas));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @GetMapping("/{id}")
@@ -0,0 +1,9 @@
+package cl.ecomarket.ms_productos.dto;
+
+/**
+ * Una línea de un ajuste de stock por lote.
+ * @param codigo El código del producto.
+ * @param cantidad La cantidad a sumar (negativa para descontar).
+ */
+public record AjusteStock(String codigo, int cantidad) {
+}
@@ -0,0 +1,14 @@
+package cl.ecomarket.ms_productos.dto;
+
+import java.util.List;
+
+/**
+ * Un usuario a crear en /api/v1/usuarios/lote.
+ * @param username El nombre de usuario.
+ * @param nombreCompleto El nombre completo.
+ * @param email El email.
+ * @param password La contraseña en texto plano; se guarda su hash BCrypt.
+ * @param roles Los nombres de los roles a asignar (sin distinguir mayúsculas), o null.
+ */
+public record AltaUsuario(String username, String nombreCompleto, String email, String password, List<String> roles) {
+}
@@ -0,0 +1,27 @@
+package cl.ecomarket.ms_productos.dto;
+
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+
+/**
+ * Un cambio confirmado en el catálogo, tal como se envía en /api/v1/productos/cambios.
+ * <p>
+ * La secuencia sigue el orden en que el feed recibe los cambios, que no siempre es el orden de commit:
+ * dos escrituras concurrentes sobre el mismo producto pueden llegar invertidas. Los cambios de un producto
+ * se ordenan por (version, ajuste): el mayor es el más reciente, y un cambio sin ajuste va antes que los
+ * ajustes diferidos de su misma versión. ELIMINADO es siempre el último cambio del id.
+ * @param secuencia La posición del cambio en el feed; se reanuda con Last-Event-ID.
+ * @param tipo El tipo de cambio.
+ * @param id El id del producto.
+ * @param codigo El código del producto.
+ * @param version La versión de la fila después del cambio (antes, si se eliminó). En los ajustes diferidos,
+ *                la de la fila sobre la que se acumula el ajuste.
+ * @param ajuste El número del ajuste de stock diferido, creciente por código; null si el cambio se confirmó
+ *               en la base de datos.
+ * @param nombre El nombre después del cambio, o null si el producto se eliminó.
+ * @param categoria La categoría después del cambio (antes, si se eliminó).
+ * @param precio El precio después del cambio, o null si el producto se eliminó.
+ * @param stock El stock después del cambio (incluye los ajustes diferidos), o null si el producto se eliminó.
+ */
+public record CambioProducto(long secuencia, ProductoModificadoEvent.Tipo tipo, Long id, String codigo,
+                             Long version, Long ajuste, String nombre, String categoria, Double precio, Integer stock) {
+}
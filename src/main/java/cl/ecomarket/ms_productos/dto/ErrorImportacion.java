@@ -0,0 +1,10 @@
+package cl.ecomarket.ms_productos.dto;
+
+/**
+ * Una fila rechazada durante una importación masiva.
+ * @param fila El número de fila en el archivo (la cabecera CSV no cuenta).
+ * @param codigo El código del producto, si se pudo leer.
+ * @param error El motivo del rechazo.
+ */
+public record ErrorImportacion(long fila, String codigo, String error) {
+}
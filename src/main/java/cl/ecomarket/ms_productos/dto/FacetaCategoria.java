@@ -0,0 +1,10 @@
+package cl.ecomarket.ms_productos.dto;
+
+/**
+ * Conteo de productos y stock total de una categoría.
+ * @param categoria El nombre de la categoría (tal como se escribió en alguno de sus productos).
+ * @param productos La cantidad de productos de la categoría.
+ * @param stock La suma del stock de esos productos.
+ */
+public record FacetaCategoria(String categoria, long productos, long stock) {
+}
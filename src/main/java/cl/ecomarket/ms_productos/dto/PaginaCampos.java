@@ -0,0 +1,12 @@
+package cl.ecomarket.ms_productos.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Una página de productos por cursor con solo algunos campos (parámetro {@code fields}).
+ * @param productos Por producto, los campos pedidos en orden fijo; ordenados por id ascendente.
+ * @param siguienteCursor El id a enviar como {@code after} para la siguiente página, o null si no hay más.
+ */
+public record PaginaCampos(List<Map<String, Object>> productos, Long siguienteCursor) {
+}
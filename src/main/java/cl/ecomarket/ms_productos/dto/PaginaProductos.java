@@ -0,0 +1,13 @@
+package cl.ecomarket.ms_productos.dto;
+
+import cl.ecomarket.ms_productos.model.Producto;
+
+import java.util.List;
+
+/**
+ * Una página de productos obtenida por cursor (keyset sobre el id).
+ * @param productos Los productos de la página, ordenados por id ascendente.
+ * @param siguienteCursor El id a enviar como {@code after} para la siguiente página, o null si no hay más.
+ */
+public record PaginaProductos(List<Producto> productos, Long siguienteCursor) {
+}
@@ -0,0 +1,11 @@
+package cl.ecomarket.ms_productos.dto;
+
+import java.util.List;
+
+/**
+ * Una página del listado de usuarios.
+ * @param usuarios Los usuarios de la página pedida.
+ * @param total La cantidad total de usuarios que cumplen los filtros.
+ */
+public record PaginaUsuarios(List<ResumenUsuario> usuarios, long total) {
+}
@@ -0,0 +1,11 @@
+package cl.ecomarket.ms_productos.dto;
+
+/**
+ * Resultado de una línea de un ajuste de stock por lote.
+ * @param codigo El código del producto.
+ * @param cantidad La cantidad solicitada.
+ * @param stockResultante El stock después de aplicar esta línea, o null si la línea falló.
+ * @param error El motivo del rechazo, o null si la línea es válida.
+ */
+public record ResultadoAjusteStock(String codigo, int cantidad, Integer stockResultante, String error) {
+}
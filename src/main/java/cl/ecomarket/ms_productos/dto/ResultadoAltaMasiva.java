@@ -0,0 +1,13 @@
+package cl.ecomarket.ms_productos.dto;
+
+import java.util.List;
+
+/**
+ * Resumen de un alta masiva de usuarios.
+ * @param filas La cantidad de filas del lote.
+ * @param creados Los usuarios creados.
+ * @param conError Las filas rechazadas.
+ * @param resultados El resultado de cada fila, en el orden del lote.
+ */
+public record ResultadoAltaMasiva(int filas, int creados, int conError, List<ResultadoAltaUsuario> resultados) {
+}
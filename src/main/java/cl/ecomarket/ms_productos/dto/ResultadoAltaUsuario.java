@@ -0,0 +1,11 @@
+package cl.ecomarket.ms_productos.dto;
+
+/**
+ * El resultado de una fila de un alta masiva de usuarios.
+ * @param fila La posición de la fila en el lote, desde 1.
+ * @param username El nombre de usuario de la fila.
+ * @param id El id del usuario creado, o null si la fila se rechazó.
+ * @param error El motivo del rechazo, o null si el usuario se creó.
+ */
+public record ResultadoAltaUsuario(int fila, String username, Long id, String error) {
+}
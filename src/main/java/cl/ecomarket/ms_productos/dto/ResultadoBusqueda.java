@@ -0,0 +1,13 @@
+package cl.ecomarket.ms_productos.dto;
+
+import cl.ecomarket.ms_productos.model.Producto;
+
+import java.util.List;
+
+/**
+ * Una página de resultados de búsqueda de productos.
+ * @param productos Los productos de la página pedida, ordenados por relevancia.
+ * @param total La cantidad total de productos que coinciden con la búsqueda.
+ */
+public record ResultadoBusqueda(List<Producto> productos, long total) {
+}
@@ -0,0 +1,14 @@
+package cl.ecomarket.ms_productos.dto;
+
+import java.util.List;
+
+/**
+ * Resumen de una importación masiva de productos.
+ * @param filas La cantidad de filas leídas.
+ * @param creados Los productos nuevos insertados.
+ * @param actualizados Los productos existentes (mismo código) actualizados.
+ * @param conError Las filas rechazadas.
+ * @param errores El detalle de las filas rechazadas; se reportan como máximo las primeras 1000.
+ */
+public record ResultadoImportacion(long filas, long creados, long actualizados, long conError, List<ErrorImportacion> errores) {
+}
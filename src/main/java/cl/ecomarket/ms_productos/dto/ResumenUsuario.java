@@ -0,0 +1,16 @@
+package cl.ecomarket.ms_productos.dto;
+
+import java.util.List;
+
+/**
+ * Un usuario tal como se muestra en el listado de /api/v1/usuarios: sin la contraseña ni los permisos.
+ * @param id El id del usuario.
+ * @param username El nombre de usuario.
+ * @param nombreCompleto El nombre completo.
+ * @param email El email.
+ * @param activo Si el usuario puede autenticarse.
+ * @param roles Los nombres de sus roles, en orden alfabético.
+ */
+public record ResumenUsuario(Long id, String username, String nombreCompleto, String email, boolean activo,
+                             List<String> roles) {
+}
@@ -0,0 +1,10 @@
+package cl.ecomarket.ms_productos.event;
+
+/**
+ * Se publica cuando cambia algo que afecta la autenticación de un usuario
+ * (contraseña, estado activo, roles, email o eliminación).
+ * @param username El username del usuario afectado.
+ * @param email El email con el que el usuario podía autenticarse.
+ */
+public record CredencialesUsuarioModificadasEvent(String username, String email) {
+}
@@ -0,0 +1,24 @@
+package cl.ecomarket.ms_productos.event;
+
+import cl.ecomarket.ms_productos.model.Producto;
+
+/**
+ * Se publica por cada escritura en ProductoService. Los listeners lo reciben después
+ * del commit, con copias de los productos (no entidades administradas).
+ * @param tipo El tipo de cambio.
+ * @param producto El estado después del cambio, o null si el producto se eliminó.
+ * @param anterior El estado antes del cambio, o null si el producto es nuevo.
+ * @param ajusteDiferido El número del ajuste en el contador del código si el stock se ajustó en modo
+ *                       de escritura diferida (ver {@link cl.ecomarket.ms_productos.service.AcumuladorStock.Saldo}),
+ *                       o null si el cambio se confirmó en la base de datos.
+ */
+public record ProductoModificadoEvent(Tipo tipo, Producto producto, Producto anterior, Long ajusteDiferido) {
+
+    public ProductoModificadoEvent(Tipo tipo, Producto producto, Producto anterior) {
+        this(tipo, producto, anterior, null);
+    }
+
+    public enum Tipo {
+        CREADO, ACTUALIZADO, ELIMINADO, STOCK_AJUSTADO
+    }
+}
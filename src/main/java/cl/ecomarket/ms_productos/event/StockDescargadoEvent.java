@@ -0,0 +1,11 @@
+package cl.ecomarket.ms_productos.event;
+
+import java.util.Set;
+
+/**
+ * Se publica cuando la escritura diferida de stock aplicó sus deltas en la tabla producto,
+ * después del commit. Las copias de productos leídas antes ya no tienen el stock de la base de datos.
+ * @param codigos Los códigos cuyo stock cambió.
+ */
+public record StockDescargadoEvent(Set<String> codigos) {
+}
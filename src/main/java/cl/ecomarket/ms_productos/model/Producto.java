@@ -1,5 +1,6 @@
 package cl.ecomarket.ms_productos.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
@@ -9,14 +10,28 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Locale;
+
 @Entity
-@Table(name = "producto") 
+@Table(name = "producto", indexes = {
+        // Listado por categoría paginado por cursor: WHERE categoria_normalizada = ? AND id > ? ORDER BY id
+        @Index(name = "idx_producto_categoria_normalizada", columnList = "categoria_normalizada, id"),
+        // Listado por rango de precio: WHERE precio BETWEEN ? AND ? AND id > ? ORDER BY id
+        @Index(name = "idx_producto_precio", columnList = "precio")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Producto {
+    // Cantidad de ids que Hibernate reserva por cada acceso a la tabla id_generador
+    public static final int BLOQUE_ID = 100;
+
+    // Ids asignados por bloques desde una tabla: con IDENTITY, Hibernate debe ejecutar cada INSERT
+    // apenas se persiste la entidad para conocer su id, y no puede agruparlos en batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "producto_id")
+    @TableGenerator(name = "producto_id", table = "id_generador", pkColumnName = "entidad",
+            valueColumnName = "siguiente", pkColumnValue = "producto", allocationSize = BLOQUE_ID)
     private Long id; 
 
     @NotBlank(message = "El código del producto no puede estar vacío.")
@@ -36,6 +51,12 @@ public class Producto {
     @Column(length = 100)
     private String categoria;
 
+    // Categoría en minúsculas y sin espacios extremos. Las consultas por categoría comparan
+    // esta columna indexada, en lugar de UPPER(categoria) que no puede usar un índice.
+    @JsonIgnore
+    @Column(name = "categoria_normalizada", length = 100)
+    private String categoriaNormalizada;
+
     @NotNull(message = "El precio no puede ser nulo.")
     @Min(value = 0, message = "El precio no puede ser negativo.")
     @Column(nullable = false)
@@ -45,4 +66,41 @@ public class Producto {
     @Min(value = 0, message = "El stock no puede ser negativo.")
     @Column(nullable = false)
     private Integer stock; 
+
+    // Control de concurrencia optimista para la actualización completa (PUT)
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    public void setCategoria(String categoria) {
+        this.categoria = categoria;
+        this.categoriaNormalizada = normalizarCategoria(categoria);
+    }
+
+    // También cubre las instancias cuyo campo categoria se asignó sin pasar por el setter (ej: Jackson por campo)
+    @PrePersist
+    @PreUpdate
+    private void normalizar() {
+        categoriaNormalizada = normalizarCategoria(categoria);
+    }
+
+    /**
+     * @return La forma en que se guarda y se consulta una categoría, o null si no hay categoría.
+     */
+    public static String normalizarCategoria(String categoria) {
+        if (categoria == null) {
+            return null;
+        }
+        String normalizada = categoria.trim().toLowerCase(Locale.ROOT);
+        return normalizada.isEmpty() ? null : normalizada;
+    }
+
+    /**
+     * Crea una copia sin relación con el contexto de persistencia.
+     * Se usa para publicar eventos y alimentar estructuras en memoria.
+     * @return Una nueva instancia con los mismos valores.
+     */
+    public Producto copiar() {
+        return new Producto(id, codigo, nombre, descripcion, categoria, categoriaNormalizada, precio, stock, version);
+    }
 }
\ No newline at end of file
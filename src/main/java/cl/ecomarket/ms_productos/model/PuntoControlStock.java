@@ -0,0 +1,24 @@
+package cl.ecomarket.ms_productos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Último segmento del diario de stock cuyos ajustes ya están aplicados en la tabla producto.
+ * Se actualiza en la misma transacción que los UPDATE de stock, así la recuperación
+ * tras una caída nunca aplica dos veces un segmento.
+ */
+@Entity
+@Table(name = "stock_punto_control")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PuntoControlStock {
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private Long ultimoSegmento;
+}
@@ -5,6 +5,7 @@ import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 
 import java.util.HashSet;
 import java.util.Objects;
@@ -27,8 +28,9 @@ public class Rol {
     // @Column
     // private String descripcion;
 
-    // Relación Muchos-a-Muchos con Permiso
-    @ManyToMany(fetch = FetchType.EAGER, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    // Relación Muchos-a-Muchos con Permiso (LAZY, ver Usuario.roles)
+    @ManyToMany(fetch = FetchType.LAZY, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    @BatchSize(size = 50)
     @JoinTable(
         name = "roles_permisos",
         joinColumns = @JoinColumn(name = "rol_id"),
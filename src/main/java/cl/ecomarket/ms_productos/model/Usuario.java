@@ -1,5 +1,7 @@
 package cl.ecomarket.ms_productos.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -7,12 +9,17 @@ import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "usuarios") 
+@Table(name = "usuarios", indexes = {
+        // Listado de usuarios ordenado por nombre: ORDER BY nombre_completo, id LIMIT ?
+        @Index(name = "idx_usuario_nombre_completo", columnList = "nombre_completo, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -36,15 +43,26 @@ public class Usuario {
     @Column(nullable = false, unique = true, length = 100)
     private String email;
 
+    // Se recibe al crear el usuario, pero el hash nunca se devuelve en las respuestas
     @NotBlank
     @Column(nullable = false) 
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String password;
 
     @Column(nullable = false)
     private boolean activo = true;
 
-    // Relación Muchos-a-Muchos con Rol
-    @ManyToMany(fetch = FetchType.EAGER, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    // Época de revocación de los tokens bearer: sube cada vez que cambian las credenciales, y los tokens
+    // emitidos con una época anterior se rechazan en todos los nodos, también después de un reinicio
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long epocaTokens;
+
+    // Relación Muchos-a-Muchos con Rol. Es LAZY: la autenticación la trae con join fetch
+    // y los listados la inicializan por lotes.
+    @ManyToMany(fetch = FetchType.LAZY, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    @BatchSize(size = 50)
     @JoinTable(
         name = "usuarios_roles",
         joinColumns = @JoinColumn(name = "usuario_id"),
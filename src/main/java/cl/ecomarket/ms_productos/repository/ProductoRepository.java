@@ -1,14 +1,30 @@
 package cl.ecomarket.ms_productos.repository;
 
+import cl.ecomarket.ms_productos.dto.FacetaCategoria;
 import cl.ecomarket.ms_productos.model.Producto;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+// Como en SimpleJpaRepository, las consultas son de solo lectura aunque se llamen fuera de una transacción
+// (con réplicas habilitadas se leen desde una réplica); las que escriben o bloquean declaran la suya
 @Repository
-public interface ProductoRepository extends JpaRepository<Producto, Long> {
+@Transactional(readOnly = true)
+public interface ProductoRepository extends JpaRepository<Producto, Long>, ProductoRepositoryCustom {
 
     // Métodos de consulta personalizados (Spring Data JPA se implementan automáticamente)
 
@@ -19,12 +35,24 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
      */
     Optional<Producto> findByCodigo(String codigo);
 
+    @Query("select p.codigo from Producto p where p.id = :id")
+    Optional<String> findCodigoById(@Param("id") Long id);
+
     /**
      * Encuentra productos por categoría.
      * @param categoria La categoría a buscar.
      * @return Una lista de productos que pertenecen a la categoría especificada.
      */
-    List<Producto> findByCategoriaIgnoreCase(String categoria);
+    default List<Producto> findByCategoriaIgnoreCase(String categoria) {
+        return findByCategoriaNormalizada(Producto.normalizarCategoria(categoria));
+    }
+
+    /**
+     * Encuentra productos por categoría normalizada (usa el índice de categoria_normalizada).
+     * @param categoriaNormalizada La categoría ya normalizada con {@link Producto#normalizarCategoria}.
+     * @return Una lista de productos que pertenecen a la categoría.
+     */
+    List<Producto> findByCategoriaNormalizada(String categoriaNormalizada);
 
     /**
      * Encuentra productos cuyo nombre contenga la cadena especificada (ignorando mayúsculas/minúsculas).
@@ -39,4 +67,95 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
      * @return true si existe un producto con ese código, false de lo contrario.
      */
     boolean existsByCodigo(String codigo);
+
+    /**
+     * Obtiene los productos con los códigos dados en una sola consulta.
+     * @param codigos Los códigos de los productos.
+     * @return Los productos encontrados, en cualquier orden.
+     */
+    List<Producto> findByCodigoIn(Collection<String> codigos);
+
+    /**
+     * Ajusta el stock en un solo UPDATE condicional, sin leer la fila antes.
+     * La condición evita que el stock quede negativo aunque haya ajustes concurrentes.
+     * @param codigo El código del producto.
+     * @param delta La cantidad a sumar (negativa para descontar).
+     * @return 1 si se aplicó el ajuste, 0 si el producto no existe o no hay stock suficiente.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Producto p set p.stock = p.stock + :delta, p.version = p.version + 1 " +
+           "where p.codigo = :codigo and p.stock + :delta >= 0")
+    int ajustarStock(@Param("codigo") String codigo, @Param("delta") int delta);
+
+    /**
+     * Obtiene y bloquea (SELECT ... FOR UPDATE) los productos con los códigos dados.
+     * Las filas se bloquean en orden de código, así dos lotes concurrentes no pueden
+     * bloquearse mutuamente.
+     * @param codigos Los códigos de los productos.
+     * @return Los productos encontrados, ordenados por código.
+     */
+    @Transactional
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Producto p where p.codigo in :codigos order by p.codigo")
+    List<Producto> findByCodigoInParaActualizar(@Param("codigos") Collection<String> codigos);
+
+    /**
+     * Página de productos por cursor: los siguientes al id dado, ordenados por id.
+     * A diferencia de OFFSET, el costo no crece con la profundidad de la página.
+     * @param id El último id de la página anterior (0 para la primera).
+     * @param limit La cantidad máxima de productos.
+     * @return Los productos con id mayor al dado.
+     */
+    List<Producto> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    /**
+     * Página por cursor de la búsqueda por nombre.
+     * @param nombre El término de búsqueda para el nombre del producto.
+     * @param id El último id de la página anterior (0 para la primera).
+     * @param limit La cantidad máxima de productos.
+     * @return Los productos que coinciden, con id mayor al dado.
+     */
+    List<Producto> findByNombreContainingIgnoreCaseAndIdGreaterThanOrderByIdAsc(String nombre, Long id, Limit limit);
+
+    /**
+     * Página por cursor de los productos de una categoría. Se resuelve completamente con el
+     * índice (categoria_normalizada, id).
+     * @param categoriaNormalizada La categoría ya normalizada con {@link Producto#normalizarCategoria}.
+     * @param id El último id de la página anterior (0 para la primera).
+     * @param limit La cantidad máxima de productos.
+     * @return Los productos de la categoría, con id mayor al dado.
+     */
+    List<Producto> findByCategoriaNormalizadaAndIdGreaterThanOrderByIdAsc(String categoriaNormalizada, Long id, Limit limit);
+
+    /**
+     * Página por cursor de los productos con precio dentro de un rango (usa el índice sobre precio).
+     * @param min Precio mínimo (incluido).
+     * @param max Precio máximo (incluido).
+     * @param id El último id de la página anterior (0 para la primera).
+     * @param limit La cantidad máxima de productos.
+     * @return Los productos en el rango, con id mayor al dado.
+     */
+    List<Producto> findByPrecioBetweenAndIdGreaterThanOrderByIdAsc(Double min, Double max, Long id, Limit limit);
+
+    /**
+     * Cantidad de productos y stock total por categoría, con un GROUP BY sobre toda la tabla.
+     * Solo se usa para construir los agregados en memoria al iniciar.
+     * @return Una fila por categoría normalizada.
+     */
+    @Query("select new cl.ecomarket.ms_productos.dto.FacetaCategoria(min(p.categoria), count(p), coalesce(sum(p.stock), 0)) " +
+           "from Producto p where p.categoriaNormalizada is not null group by p.categoriaNormalizada")
+    List<FacetaCategoria> contarPorCategoria();
+
+    /**
+     * Recorre todo el catálogo ordenado por id sin materializarlo en memoria.
+     * Debe consumirse dentro de una transacción y cerrarse al terminar.
+     * @return Un stream de productos respaldado por un cursor JDBC.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select p from Producto p order by p.id")
+    Stream<Producto> streamAll();
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package cl.ecomarket.ms_productos.repository;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import jakarta.persistence.Tuple;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Consultas de productos que Spring Data no puede derivar del nombre del método.
+ */
+public interface ProductoRepositoryCustom {
+
+    /**
+     * Página por cursor que selecciona solo las columnas indicadas (proyección dinámica).
+     * El id y el código siempre se seleccionan, aunque no se pidan.
+     * @param campos Los atributos de Producto a seleccionar; cada uno queda como alias en la tupla.
+     * @param nombre Filtro por nombre (contiene, sin distinguir mayúsculas), o null.
+     * @param categoriaNormalizada Filtro por categoría ya normalizada, o null.
+     * @param precioMin Precio mínimo (incluido), o null.
+     * @param precioMax Precio máximo (incluido), o null.
+     * @param id El último id de la página anterior (0 para la primera).
+     * @param limit La cantidad máxima de filas.
+     * @return Las tuplas ordenadas por id ascendente.
+     */
+    List<Tuple> findCamposByIdGreaterThan(Collection<String> campos, String nombre, String categoriaNormalizada,
+                                         Double precioMin, Double precioMax, long id, int limit);
+
+    /**
+     * Búsqueda de texto sin el índice en memoria: cada término debe estar contenido en el código, el nombre
+     * o la descripción (sin distinguir mayúsculas), como en IndiceBusquedaProductos. Se ordena por relevancia
+     * con los mismos pesos por campo (código, nombre, descripción) y luego por id.
+     * @param terminos Los términos ya normalizados de la consulta; no puede estar vacío.
+     * @param offset La cantidad de productos a omitir.
+     * @param limit La cantidad máxima de productos.
+     * @return Los productos de la página.
+     */
+    List<Producto> buscarPorTerminos(List<String> terminos, int offset, int limit);
+
+    /**
+     * @return La cantidad de productos que coinciden con {@link #buscarPorTerminos}.
+     */
+    long contarPorTerminos(List<String> terminos);
+}
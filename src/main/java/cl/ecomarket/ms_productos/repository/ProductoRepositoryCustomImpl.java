@@ -0,0 +1,125 @@
+package cl.ecomarket.ms_productos.repository;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.hibernate.jpa.HibernateHints;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+class ProductoRepositoryCustomImpl implements ProductoRepositoryCustom {
+
+    // Peso de una coincidencia por campo, los mismos del índice en memoria
+    private static final int PESO_CODIGO = 5;
+    private static final int PESO_NOMBRE = 3;
+    private static final int PESO_DESCRIPCION = 1;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Tuple> findCamposByIdGreaterThan(Collection<String> campos, String nombre, String categoriaNormalizada,
+                                                Double precioMin, Double precioMax, long id, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Producto> producto = query.from(Producto.class);
+
+        Set<String> columnas = new LinkedHashSet<>();
+        columnas.add("id"); // Cursor de la página siguiente
+        columnas.add("codigo"); // Stock pendiente de la escritura diferida
+        columnas.addAll(campos);
+        List<Selection<?>> seleccion = new ArrayList<>(columnas.size());
+        for (String columna : columnas) {
+            seleccion.add(producto.get(columna).alias(columna));
+        }
+        query.multiselect(seleccion);
+
+        List<Predicate> condiciones = new ArrayList<>();
+        condiciones.add(cb.greaterThan(producto.get("id"), id));
+        if (nombre != null) {
+            condiciones.add(contiene(cb, producto.get("nombre"), nombre));
+        }
+        if (categoriaNormalizada != null) {
+            condiciones.add(cb.equal(producto.get("categoriaNormalizada"), categoriaNormalizada));
+        }
+        if (precioMin != null) {
+            condiciones.add(cb.greaterThanOrEqualTo(producto.get("precio"), precioMin));
+        }
+        if (precioMax != null) {
+            condiciones.add(cb.lessThanOrEqualTo(producto.get("precio"), precioMax));
+        }
+        query.where(condiciones.toArray(Predicate[]::new));
+        query.orderBy(cb.asc(producto.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultList();
+    }
+
+    @Override
+    public List<Producto> buscarPorTerminos(List<String> terminos, int offset, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Producto> query = cb.createQuery(Producto.class);
+        Root<Producto> producto = query.from(Producto.class);
+        query.where(coincidencias(cb, producto, terminos));
+
+        // Por término, el peso del mejor campo que lo contiene (como el índice, sin el doble por token exacto)
+        Expression<Integer> relevancia = null;
+        for (String termino : terminos) {
+            Expression<Integer> peso = cb.<Integer>selectCase()
+                    .when(contiene(cb, producto.get("codigo"), termino), PESO_CODIGO)
+                    .when(contiene(cb, producto.get("nombre"), termino), PESO_NOMBRE)
+                    .otherwise(PESO_DESCRIPCION);
+            relevancia = relevancia == null ? peso : cb.sum(relevancia, peso);
+        }
+        query.orderBy(cb.desc(relevancia), cb.asc(producto.get("id")));
+
+        return entityManager.createQuery(query)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultList();
+    }
+
+    @Override
+    public long contarPorTerminos(List<String> terminos) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Producto> producto = query.from(Producto.class);
+        query.select(cb.count(producto)).where(coincidencias(cb, producto, terminos));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    // Todos los términos, cada uno en el código, el nombre o la descripción
+    private static Predicate[] coincidencias(CriteriaBuilder cb, Root<Producto> producto, List<String> terminos) {
+        Predicate[] condiciones = new Predicate[terminos.size()];
+        for (int i = 0; i < terminos.size(); i++) {
+            String termino = terminos.get(i);
+            condiciones[i] = cb.or(
+                    contiene(cb, producto.get("codigo"), termino),
+                    contiene(cb, producto.get("nombre"), termino),
+                    contiene(cb, producto.get("descripcion"), termino));
+        }
+        return condiciones;
+    }
+
+    // Igual que findByNombreContainingIgnoreCase: los comodines del texto buscado son literales
+    private static Predicate contiene(CriteriaBuilder cb, Expression<String> campo, String texto) {
+        String patron = "%" + texto.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return cb.like(cb.lower(campo), patron, '\\');
+    }
+}
@@ -5,9 +5,12 @@ import cl.ecomarket.ms_productos.model.Rol;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface RolRepository extends JpaRepository<Rol, Long> {
     Optional<Rol> findByNombre(String nombre);
+    List<Rol> findByNombreIn(Collection<String> nombres);
 }
\ No newline at end of file
@@ -2,15 +2,59 @@ package cl.ecomarket.ms_productos.repository;
 
 
 import cl.ecomarket.ms_productos.model.Usuario;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
+public interface UsuarioRepository extends JpaRepository<Usuario, Long>, UsuarioRepositoryCustom {
     Optional<Usuario> findByUsername(String username);
     Optional<Usuario> findByEmail(String email);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+
+    /**
+     * Busca por id trayendo roles y permisos en la misma consulta, para que el usuario se pueda serializar
+     * después de cerrar la transacción (open-in-view está desactivado).
+     */
+    @EntityGraph(attributePaths = {"roles", "roles.permisos"})
+    Optional<Usuario> findConRolesById(Long id);
+
+    /**
+     * Compara sobre la columna indexada, con la misma regla que {@link #existsByUsername}: la de su collation
+     * (en MySQL, sin distinguir mayúsculas).
+     * @return Los usernames registrados que coinciden con alguno de la colección, tal como están guardados.
+     */
+    @Query("select u.username from Usuario u where u.username in :usernames")
+    List<String> findUsernamesExistentes(@Param("usernames") Collection<String> usernames);
+
+    /**
+     * Compara sobre la columna indexada, con la misma regla que {@link #existsByEmail}.
+     * @return Los emails registrados que coinciden con alguno de la colección, tal como están guardados.
+     */
+    @Query("select u.email from Usuario u where u.email in :emails")
+    List<String> findEmailsExistentes(@Param("emails") Collection<String> emails);
+
+    /**
+     * Busca por username o email trayendo roles y permisos en una sola consulta.
+     * Puede devolver dos usuarios si el username de uno coincide con el email de otro.
+     * @param login El username o email usado para autenticarse.
+     * @return Los usuarios que coinciden, con sus roles y permisos inicializados.
+     */
+    @Query("select distinct u from Usuario u left join fetch u.roles r left join fetch r.permisos " +
+           "where u.username = :login or u.email = :login")
+    List<Usuario> findParaAutenticacion(@Param("login") String login);
+
+    /**
+     * @param email El sujeto de un token bearer (el email del usuario autenticado).
+     * @return La época de revocación de los tokens del usuario, o vacío si no existe o está desactivado.
+     */
+    @Query("select u.epocaTokens from Usuario u where u.email = :email and u.activo = true")
+    Optional<Long> findEpocaTokens(@Param("email") String email);
 }
\ No newline at end of file
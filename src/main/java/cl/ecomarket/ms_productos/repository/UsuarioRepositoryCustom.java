@@ -0,0 +1,35 @@
+package cl.ecomarket.ms_productos.repository;
+
+import cl.ecomarket.ms_productos.dto.ResumenUsuario;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Consultas de usuarios que Spring Data no puede derivar del nombre del método.
+ */
+public interface UsuarioRepositoryCustom {
+
+    /**
+     * Los atributos por los que se puede ordenar el listado de usuarios.
+     */
+    Set<String> ORDENABLES = Set.of("id", "username", "nombreCompleto", "email", "activo");
+
+    /**
+     * Página del listado de usuarios: selecciona solo las columnas del resumen y agrega los nombres de
+     * los roles en la misma consulta, sin cargar las entidades ni sus permisos.
+     * @param activo Filtro por estado, o null.
+     * @param rol Solo los usuarios que tienen este rol, o null.
+     * @param orden Los atributos por los que ordenar, de {@link #ORDENABLES}.
+     * @param offset La cantidad de filas a saltar.
+     * @param limit La cantidad máxima de filas.
+     * @throws IllegalArgumentException si se pide ordenar por otro atributo.
+     */
+    List<ResumenUsuario> findResumenes(Boolean activo, String rol, Sort orden, int offset, int limit);
+
+    /**
+     * @return La cantidad de usuarios que cumplen los mismos filtros que {@link #findResumenes}.
+     */
+    long countResumenes(Boolean activo, String rol);
+}
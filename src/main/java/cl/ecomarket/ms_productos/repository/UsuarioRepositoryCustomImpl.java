@@ -0,0 +1,86 @@
+package cl.ecomarket.ms_productos.repository;
+
+import cl.ecomarket.ms_productos.dto.ResumenUsuario;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class UsuarioRepositoryCustomImpl implements UsuarioRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<ResumenUsuario> findResumenes(Boolean activo, String rol, Sort orden, int offset, int limit) {
+        StringBuilder hql = new StringBuilder(
+                "select u.id, u.username, u.nombreCompleto, u.email, u.activo, " +
+                // Subconsulta por fila y no join + group by: con el ORDER BY sobre un índice y el LIMIT,
+                // la base solo agrega los roles de las filas de la página
+                "(select listagg(r.nombre, ',') within group (order by r.nombre) from u.roles r) " +
+                "from Usuario u");
+        hql.append(filtros(activo, rol));
+        List<String> criterios = new ArrayList<>();
+        boolean conId = false;
+        for (Sort.Order criterio : orden) {
+            // El orden lo elige el cliente: solo estos nombres pueden llegar al ORDER BY
+            if (!ORDENABLES.contains(criterio.getProperty())) {
+                throw new IllegalArgumentException("No se puede ordenar por: " + criterio.getProperty());
+            }
+            criterios.add("u." + criterio.getProperty() + (criterio.isDescending() ? " desc" : " asc"));
+            conId |= criterio.getProperty().equals("id");
+        }
+        if (!conId) {
+            criterios.add("u.id asc"); // Desempate: el orden de las páginas es estable
+        }
+        hql.append(" order by ").append(String.join(", ", criterios));
+
+        TypedQuery<Tuple> query = entityManager.createQuery(hql.toString(), Tuple.class);
+        parametros(query, activo, rol);
+        List<Tuple> filas = query
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultList();
+        List<ResumenUsuario> resumenes = new ArrayList<>(filas.size());
+        for (Tuple fila : filas) {
+            String roles = fila.get(5, String.class);
+            resumenes.add(new ResumenUsuario(fila.get(0, Long.class), fila.get(1, String.class),
+                    fila.get(2, String.class), fila.get(3, String.class), fila.get(4, Boolean.class),
+                    roles == null ? List.of() : List.of(roles.split(","))));
+        }
+        return resumenes;
+    }
+
+    @Override
+    public long countResumenes(Boolean activo, String rol) {
+        TypedQuery<Long> query = entityManager.createQuery("select count(u) from Usuario u" + filtros(activo, rol), Long.class);
+        parametros(query, activo, rol);
+        return query.getSingleResult();
+    }
+
+    private static String filtros(Boolean activo, String rol) {
+        List<String> condiciones = new ArrayList<>();
+        if (activo != null) {
+            condiciones.add("u.activo = :activo");
+        }
+        if (rol != null) {
+            condiciones.add("exists (select 1 from u.roles r where r.nombre = :rol)");
+        }
+        return condiciones.isEmpty() ? "" : " where " + String.join(" and ", condiciones);
+    }
+
+    private static void parametros(TypedQuery<?> query, Boolean activo, String rol) {
+        if (activo != null) {
+            query.setParameter("activo", activo);
+        }
+        if (rol != null) {
+            query.setParameter("rol", rol);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package cl.ecomarket.ms_productos.security;
+
+import cl.ecomarket.ms_productos.event.CredencialesUsuarioModificadasEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache acotada (tamaño y TTL) de autenticaciones exitosas. Guarda un HMAC de la
+ * contraseña presentada, nunca la contraseña, para que las requests repetidas con
+ * HTTP Basic no vuelvan a ejecutar BCrypt ni a consultar la base de datos.
+ */
+@Component
+public class CacheAutenticacion implements MeterBinder {
+
+    private static final String ALGORITMO = "HmacSHA256";
+
+    private final Map<String, Entrada> entradas = new ConcurrentHashMap<>();
+    private final AtomicLong generacion = new AtomicLong();
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    private final long ttlNanos;
+    private final int maxEntradas;
+    private final SecretKeySpec clave; // Clave aleatoria por proceso, no se persiste
+
+    public CacheAutenticacion(@Value("${ecomarket.security.auth-cache.ttl:PT5M}") Duration ttl,
+                              @Value("${ecomarket.security.auth-cache.max-entradas:10000}") int maxEntradas) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntradas = maxEntradas;
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        this.clave = new SecretKeySpec(bytes, ALGORITMO);
+    }
+
+    /**
+     * Busca una autenticación previa para el par (login, contraseña).
+     * @return Una autenticación nueva equivalente a la cacheada, o null si no hay acierto.
+     */
+    public Authentication buscar(String login, String password) {
+        String llave = normalizar(login);
+        Entrada entrada = entradas.get(llave);
+        if (entrada == null) {
+            fallos.increment();
+            return null;
+        }
+        if (entrada.expiraEn - System.nanoTime() <= 0) {
+            entradas.remove(llave, entrada);
+            fallos.increment();
+            return null;
+        }
+        if (!MessageDigest.isEqual(entrada.digest, digest(password))) {
+            fallos.increment();
+            return null;
+        }
+        aciertos.increment();
+        return UsernamePasswordAuthenticationToken.authenticated(entrada.principal, null, entrada.authorities);
+    }
+
+    /**
+     * Generación actual de la cache. Se debe leer antes de autenticar contra el delegado
+     * y pasarla a {@link #guardar}, así una invalidación concurrente no queda pisada.
+     */
+    public long generacion() {
+        return generacion.get();
+    }
+
+    public void guardar(String login, String password, Authentication resultado, long generacionLeida) {
+        if (generacionLeida != generacion.get()) {
+            return;
+        }
+        if (entradas.size() >= maxEntradas) {
+            liberarEspacio();
+        }
+        entradas.put(normalizar(login), new Entrada(digest(password), resultado.getPrincipal(),
+                resultado.getAuthorities(), System.nanoTime() + ttlNanos));
+    }
+
+    public void invalidar(String... logins) {
+        generacion.incrementAndGet();
+        for (String login : logins) {
+            if (login != null) {
+                entradas.remove(normalizar(login));
+            }
+        }
+    }
+
+    public void invalidarTodo() {
+        generacion.incrementAndGet();
+        entradas.clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarCredenciales(CredencialesUsuarioModificadasEvent evento) {
+        invalidar(evento.username(), evento.email());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ecomarket.auth.cache", aciertos, LongAdder::sum)
+                .tag("resultado", "acierto")
+                .description("Autenticaciones resueltas desde la cache")
+                .register(registry);
+        FunctionCounter.builder("ecomarket.auth.cache", fallos, LongAdder::sum)
+                .tag("resultado", "fallo")
+                .description("Autenticaciones que requirieron BCrypt")
+                .register(registry);
+        Gauge.builder("ecomarket.auth.cache.entradas", entradas, Map::size)
+                .register(registry);
+    }
+
+    public long getAciertos() {
+        return aciertos.sum();
+    }
+
+    public long getFallos() {
+        return fallos.sum();
+    }
+
+    private void liberarEspacio() {
+        long ahora = System.nanoTime();
+        entradas.values().removeIf(e -> e.expiraEn - ahora <= 0);
+        // Si sigue llena se descartan entradas arbitrarias hasta dejar un 10% libre
+        Iterator<String> it = entradas.keySet().iterator();
+        while (entradas.size() >= maxEntradas * 0.9 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private byte[] digest(String password) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(clave);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo calcular el digest de la credencial", e);
+        }
+    }
+
+    private static String normalizar(String login) {
+        return login.toLowerCase(Locale.ROOT);
+    }
+
+    private record Entrada(byte[] digest, Object principal,
+                           Collection<? extends GrantedAuthority> authorities, long expiraEn) {
+    }
+}
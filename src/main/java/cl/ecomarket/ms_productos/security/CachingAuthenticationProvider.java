@@ -0,0 +1,47 @@
+package cl.ecomarket.ms_productos.security;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * Envuelve al DaoAuthenticationProvider y consulta primero la {@link CacheAutenticacion}.
+ * Solo las autenticaciones exitosas se guardan en la cache.
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private final AuthenticationProvider delegado;
+    private final CacheAutenticacion cache;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegado, CacheAutenticacion cache) {
+        this.delegado = delegado;
+        this.cache = cache;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (!(authentication.getCredentials() instanceof String password)) {
+            return delegado.authenticate(authentication);
+        }
+        String login = authentication.getName();
+
+        Authentication cacheada = cache.buscar(login, password);
+        if (cacheada != null) {
+            ((AbstractAuthenticationToken) cacheada).setDetails(authentication.getDetails());
+            return cacheada;
+        }
+
+        long generacion = cache.generacion();
+        Authentication resultado = delegado.authenticate(authentication);
+        if (resultado != null && resultado.isAuthenticated()) {
+            cache.guardar(login, password, resultado, generacion);
+        }
+        return resultado;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegado.supports(authentication);
+    }
+}
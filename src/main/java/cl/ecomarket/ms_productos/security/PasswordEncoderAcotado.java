@@ -0,0 +1,53 @@
+package cl.ecomarket.ms_productos.security;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * PasswordEncoder que limita cuántos hashes se calculan a la vez.
+ * <p>
+ * BCrypt es cálculo puro: en un hilo virtual nunca cede el hilo portador, así que muchas
+ * autenticaciones simultáneas pueden ocupar todos los portadores y detener al resto de las
+ * requests. Los hilos que exceden el límite esperan (estacionados, sin ocupar un portador).
+ */
+public class PasswordEncoderAcotado implements PasswordEncoder {
+
+    private final PasswordEncoder delegado;
+    private final Semaphore permisos;
+
+    public PasswordEncoderAcotado(PasswordEncoder delegado, int maxConcurrentes) {
+        this.delegado = delegado;
+        this.permisos = new Semaphore(maxConcurrentes, true);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return acotado(() -> delegado.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return acotado(() -> delegado.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegado.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T acotado(Supplier<T> operacion) {
+        try {
+            permisos.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando para verificar la contraseña", e);
+        }
+        try {
+            return operacion.get();
+        } finally {
+            permisos.release();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cl.ecomarket.ms_productos.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PasswordEncoder que registra la duración de cada encode y matches
+ * (ecomarket.password.encode y ecomarket.password.match{resultado=ok|fallo}).
+ */
+public class PasswordEncoderMedido implements PasswordEncoder {
+
+    private final PasswordEncoder delegado;
+    private final Timer encode;
+    private final Timer matchOk;
+    private final Timer matchFallo;
+
+    public PasswordEncoderMedido(PasswordEncoder delegado, MeterRegistry registry) {
+        this.delegado = delegado;
+        this.encode = Timer.builder("ecomarket.password.encode")
+                .description("Tiempo de cálculo de un hash de contraseña")
+                .register(registry);
+        this.matchOk = timerMatch(registry, "ok");
+        this.matchFallo = timerMatch(registry, "fallo");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long inicio = System.nanoTime();
+        try {
+            return delegado.encode(rawPassword);
+        } finally {
+            encode.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long inicio = System.nanoTime();
+        boolean coincide = false;
+        try {
+            coincide = delegado.matches(rawPassword, encodedPassword);
+            return coincide;
+        } finally {
+            (coincide ? matchOk : matchFallo).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegado.upgradeEncoding(encodedPassword);
+    }
+
+    private static Timer timerMatch(MeterRegistry registry, String resultado) {
+        return Timer.builder("ecomarket.password.match")
+                .description("Tiempo de verificación de una contraseña contra su hash")
+                .tag("resultado", resultado)
+                .register(registry);
+    }
+}
@@ -0,0 +1,174 @@
+package cl.ecomarket.ms_productos.security;
+
+import cl.ecomarket.ms_productos.event.CredencialesUsuarioModificadasEvent;
+import cl.ecomarket.ms_productos.repository.UsuarioRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Emite y valida tokens bearer firmados con HMAC-SHA256.
+ * <p>
+ * Formato: {@code base64url(exp|epoca|autoridades|sub).base64url(firma)}. El token lleva las
+ * autoridades del usuario, por lo que validarlo no requiere BCrypt ni cargar el usuario. Cada
+ * usuario tiene una época de revocación ({@code Usuario.epocaTokens}) que se incrementa cuando
+ * cambian sus credenciales; los tokens emitidos con una época anterior dejan de ser válidos.
+ * <p>
+ * La época se lee del primario y se guarda en memoria por revocacion-ttl: una revocación se aplica
+ * de inmediato en el nodo que la hizo y en los demás a más tardar al vencer esa entrada. Como vive
+ * en la base de datos, un reinicio no vuelve a validar los tokens revocados.
+ */
+@Service
+public class TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final long SIN_USUARIO = -1L;
+
+    // Sujeto (email) -> época de revocación, o SIN_USUARIO si no existe o está desactivado
+    private final Cache<String, Long> epocas;
+    private final UsuarioRepository usuarioRepository;
+    private final TransactionTemplate lectura;
+    private final SecretKeySpec clave;
+    private final Duration ttl;
+
+    public TokenService(@Value("${ecomarket.security.token.secreto:}") String secreto,
+                        @Value("${ecomarket.security.token.ttl:PT15M}") Duration ttl,
+                        @Value("${ecomarket.security.token.revocacion-ttl:PT5S}") Duration revocacionTtl,
+                        UsuarioRepository usuarioRepository,
+                        PlatformTransactionManager transactionManager) {
+        byte[] bytesClave;
+        if (secreto == null || secreto.isBlank()) {
+            log.warn("No se configuró ecomarket.security.token.secreto; se usará una clave aleatoria y los tokens no sobrevivirán un reinicio.");
+            bytesClave = new byte[32];
+            new SecureRandom().nextBytes(bytesClave);
+        } else {
+            bytesClave = Base64.getDecoder().decode(secreto);
+        }
+        this.clave = new SecretKeySpec(bytesClave, ALGORITMO);
+        this.ttl = ttl;
+        this.epocas = Caffeine.newBuilder()
+                .expireAfterWrite(revocacionTtl)
+                .maximumSize(100_000)
+                .build();
+        this.usuarioRepository = usuarioRepository;
+        // No es readOnly: con réplicas habilitadas la época se lee del primario, sin el retraso de replicación
+        this.lectura = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Emite un token para una autenticación ya verificada.
+     * <p>
+     * El token lleva la época leída junto con la contraseña que se verificó, no la vigente al emitirlo: si
+     * la contraseña cambió o la cuenta se desactivó entre la autenticación y la emisión, el token nace revocado.
+     * @param autenticacion El resultado de autenticar con usuario y contraseña.
+     * @return El token firmado.
+     * @throws IllegalArgumentException si el principal no es un {@link UsuarioAutenticado}.
+     */
+    public String emitir(Authentication autenticacion) {
+        if (!(autenticacion.getPrincipal() instanceof UsuarioAutenticado usuario)) {
+            throw new IllegalArgumentException("La autenticación no trae la época de tokens del usuario.");
+        }
+        String sub = autenticacion.getName();
+        long exp = Instant.now().plus(ttl).getEpochSecond();
+        String autoridades = autenticacion.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.joining(","));
+        long epoca = usuario.getEpocaTokens();
+        String payload = exp + "|" + epoca + "|" + autoridades + "|" + sub;
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(firmar(payloadBytes));
+    }
+
+    /**
+     * Valida un token. Solo consulta la base de datos si la época del usuario no está en memoria.
+     * @param token El token recibido en el header Authorization.
+     * @return La autenticación representada por el token, o null si es inválido, expiró o fue revocado.
+     */
+    public Authentication validar(String token) {
+        int punto = token.indexOf('.');
+        if (punto <= 0) {
+            return null;
+        }
+        byte[] payloadBytes;
+        byte[] firma;
+        try {
+            payloadBytes = DECODER.decode(token.substring(0, punto));
+            firma = DECODER.decode(token.substring(punto + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(firma, firmar(payloadBytes))) {
+            return null;
+        }
+
+        String[] partes = new String(payloadBytes, StandardCharsets.UTF_8).split("\\|", 4);
+        if (partes.length != 4) {
+            return null;
+        }
+        long exp = Long.parseLong(partes[0]);
+        long epocaToken = Long.parseLong(partes[1]);
+        String sub = partes[3];
+        if (Instant.now().getEpochSecond() >= exp) {
+            return null;
+        }
+        long epoca = epocas.get(sub, this::leerEpoca);
+        if (epoca == SIN_USUARIO || epocaToken != epoca) {
+            return null;
+        }
+        List<GrantedAuthority> autoridades = AuthorityUtils.commaSeparatedStringToAuthorityList(partes[2]);
+        return UsernamePasswordAuthenticationToken.authenticated(sub, null, autoridades);
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    // La época nueva ya está confirmada en la base de datos: este nodo la relee en la próxima validación
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarCredenciales(CredencialesUsuarioModificadasEvent evento) {
+        if (evento.email() != null) {
+            epocas.invalidate(evento.email());
+        }
+    }
+
+    private long leerEpoca(String sub) {
+        Long epoca = lectura.execute(status -> usuarioRepository.findEpocaTokens(sub).orElse(SIN_USUARIO));
+        return epoca != null ? epoca : SIN_USUARIO;
+    }
+
+    private byte[] firmar(byte[] datos) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(clave);
+            return mac.doFinal(datos);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo firmar el token", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package cl.ecomarket.ms_productos.security;
+
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * UserDetails liviano. A diferencia de {@code User}, no copia ni reordena las autoridades:
+ * recibe el conjunto inmutable ya calculado por rol. Lleva también la época de revocación de tokens
+ * leída junto con la contraseña, para firmar el token con la misma versión de las credenciales.
+ */
+public final class UsuarioAutenticado implements UserDetails, CredentialsContainer {
+
+    private final String username;
+    private String password;
+    private final boolean activo;
+    private final long epocaTokens;
+    private final Collection<? extends GrantedAuthority> authorities;
+
+    public UsuarioAutenticado(String username, String password, boolean activo, long epocaTokens,
+                              Collection<? extends GrantedAuthority> authorities) {
+        this.username = username;
+        this.password = password;
+        this.activo = activo;
+        this.epocaTokens = epocaTokens;
+        this.authorities = authorities;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return activo;
+    }
+
+    public long getEpocaTokens() {
+        return epocaTokens;
+    }
+
+    @Override
+    public void eraseCredentials() {
+        password = null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Objects.equals(username, ((UsuarioAutenticado) o).username);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(username);
+    }
+
+    @Override
+    public String toString() {
+        return "UsuarioAutenticado[username=" + username + ", activo=" + activo + ", authorities=" + authorities + "]";
+    }
+}
@@ -0,0 +1,396 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.event.StockDescargadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.model.PuntoControlStock;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Modo opcional de escritura diferida (write-behind) para el stock de productos muy demandados.
+ * <p>
+ * Cada código tiene su propio contador en memoria: el ajuste valida que el stock no quede
+ * negativo con un compare-and-set, sin bloquear a otros códigos ni tomar el lock de la fila
+ * en la base de datos. El ajuste se escribe en el {@link DiarioStock} antes de confirmarse y
+ * los deltas acumulados se aplican periódicamente a la tabla producto en un solo batch de UPDATE.
+ * Las lecturas de stock usan el contador, que ya incluye los deltas que aún no llegan a la base de datos.
+ * <p>
+ * Las operaciones que fijan el stock en la base de datos sin pasar por el contador (PUT, lote, importación,
+ * eliminación) primero llaman a {@link #bloquear}: se descargan los deltas de esos códigos y los ajustes
+ * diferidos nuevos sobre ellos esperan hasta {@link #sincronizar}, que relee el stock ya confirmado. Así
+ * ningún ajuste se valida contra un contador que la operación está por reemplazar, y el UPDATE de la
+ * descarga ({@code stock = stock + ?}) nunca suma un delta que no se validó contra el stock real.
+ */
+@Component
+public class AcumuladorStock implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(AcumuladorStock.class);
+    private static final long ID_PUNTO_CONTROL = 1L;
+    private static final String SQL_AJUSTE =
+            "update producto set stock = stock + ?, version = version + 1 where codigo = ?";
+
+    /**
+     * El estado del contador de un código después de un ajuste diferido.
+     * @param stock El stock efectivo: BD + pendiente + en vuelo.
+     * @param version La versión de la fila cuando se creó o se sincronizó el contador.
+     * @param ajuste El número del ajuste; crece con cada ajuste del código, en el orden en que se aplicaron.
+     */
+    public record Saldo(long stock, long version, long ajuste) {
+    }
+
+    private static final class Contador {
+        // Stock, versión y número de ajuste se reemplazan juntos con un compare-and-set
+        final AtomicReference<Saldo> saldo;
+        final AtomicLong pendiente = new AtomicLong(); // Deltas aún no enviados a la BD
+
+        Contador(long stock, long version) {
+            this.saldo = new AtomicReference<>(new Saldo(stock, version, 0));
+        }
+    }
+
+    private final Map<String, Contador> contadores = new ConcurrentHashMap<>();
+    // Lectura: cada ajuste (CAS + diario + pendiente). Escritura: la rotación del diario en una descarga.
+    private final ReentrantReadWriteLock rotacion = new ReentrantReadWriteLock();
+    // Una sola descarga a la vez
+    private final ReentrantLock descarga = new ReentrantLock();
+    // Código -> operaciones que lo tienen bloqueado; se modifica con el lock de escritura de rotacion
+    private final Map<String, Integer> bloqueados = new ConcurrentHashMap<>();
+    private final ReentrantLock espera = new ReentrantLock();
+    private final Condition desbloqueado = espera.newCondition();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ProductoRepository productoRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean habilitado;
+    private final long esperaBloqueoNanos;
+    private final DiarioStock diario;
+
+    public AcumuladorStock(ProductoRepository productoRepository,
+                           JdbcTemplate jdbcTemplate,
+                           ApplicationEventPublisher eventPublisher,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${ecomarket.stock.write-behind.habilitado:false}") boolean habilitado,
+                           @Value("${ecomarket.stock.write-behind.directorio:./data/diario-stock}") String directorio,
+                           @Value("${ecomarket.stock.write-behind.fsync:true}") boolean fsync,
+                           @Value("${ecomarket.stock.write-behind.espera-bloqueo:PT5S}") Duration esperaBloqueo) {
+        this.productoRepository = productoRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // La descarga nunca debe unirse a la transacción del llamador
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.habilitado = habilitado;
+        this.esperaBloqueoNanos = esperaBloqueo.toNanos();
+        this.diario = new DiarioStock(Path.of(directorio), fsync);
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Aplica los segmentos del diario que quedaron de una ejecución anterior. Corre antes
+     * de que el servidor web empiece a recibir requests.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!habilitado) {
+            return;
+        }
+        try {
+            Map<Long, Map<String, Long>> segmentos = diario.leerSegmentos();
+            long ultimo = transactionTemplate.execute(status -> {
+                PuntoControlStock puntoControl = entityManager.find(PuntoControlStock.class, ID_PUNTO_CONTROL);
+                if (puntoControl == null) {
+                    puntoControl = new PuntoControlStock(ID_PUNTO_CONTROL, 0L);
+                    entityManager.persist(puntoControl);
+                }
+                long aplicado = puntoControl.getUltimoSegmento();
+                Map<String, Long> pendientes = new HashMap<>();
+                long maximo = aplicado;
+                for (Map.Entry<Long, Map<String, Long>> segmento : segmentos.entrySet()) {
+                    maximo = Math.max(maximo, segmento.getKey());
+                    if (segmento.getKey() > aplicado) {
+                        segmento.getValue().forEach((codigo, delta) -> pendientes.merge(codigo, delta, Long::sum));
+                    }
+                }
+                aplicar(pendientes);
+                puntoControl.setUltimoSegmento(maximo);
+                if (!pendientes.isEmpty()) {
+                    log.warn("Se recuperaron ajustes de stock diferidos para {} productos desde el diario.", pendientes.size());
+                }
+                return maximo;
+            });
+            diario.eliminarHasta(ultimo);
+            diario.abrir(ultimo + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo recuperar el diario de stock", e);
+        }
+    }
+
+    /**
+     * Ajusta el stock en memoria y lo registra en el diario.
+     * @param codigo El código del producto.
+     * @param delta La cantidad a sumar (negativa para descontar).
+     * @param leido El producto leído de la base de datos; su stock y su versión solo se usan la primera vez que se ve el código.
+     * @return El saldo resultante, o null si no hay stock suficiente.
+     * @throws CannotAcquireLockException si el código sigue bloqueado después de espera-bloqueo.
+     */
+    public Saldo ajustar(String codigo, int delta, Producto leido) {
+        long limite = System.nanoTime() + esperaBloqueoNanos;
+        while (true) {
+            rotacion.readLock().lock();
+            if (!bloqueados.containsKey(codigo)) {
+                break;
+            }
+            rotacion.readLock().unlock();
+            esperarDesbloqueo(codigo, limite);
+        }
+        try {
+            Contador contador = contadores.computeIfAbsent(codigo, c -> new Contador(leido.getStock(), leido.getVersion()));
+            Saldo nuevo;
+            while (true) {
+                Saldo actual = contador.saldo.get();
+                if (actual.stock() + delta < 0) {
+                    return null;
+                }
+                nuevo = new Saldo(actual.stock() + delta, actual.version(), actual.ajuste() + 1);
+                if (contador.saldo.compareAndSet(actual, nuevo)) {
+                    break;
+                }
+            }
+            try {
+                diario.registrar(codigo, delta);
+            } catch (IOException e) {
+                // La reversión también lleva número: ningún ajuste posterior repite el de este
+                contador.saldo.updateAndGet(s -> new Saldo(s.stock() - delta, s.version(), s.ajuste() + 1));
+                throw new UncheckedIOException("No se pudo registrar el ajuste de stock en el diario", e);
+            }
+            contador.pendiente.addAndGet(delta);
+            return nuevo;
+        } finally {
+            rotacion.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve el producto con su stock efectivo (incluyendo los ajustes aún no descargados).
+     * @return El mismo producto si su stock ya es el efectivo, o una copia con el stock corregido.
+     */
+    public Producto aplicarPendientes(Producto producto) {
+        if (!habilitado || producto == null) {
+            return producto;
+        }
+        int stock = stockEfectivo(producto.getCodigo(), producto.getStock());
+        if (stock == producto.getStock()) {
+            return producto;
+        }
+        Producto copia = producto.copiar();
+        copia.setStock(stock);
+        return copia;
+    }
+
+    /**
+     * Stock efectivo de un código. Si el código tiene contador, su valor ya incluye los ajustes
+     * pendientes y en vuelo, y se lee en una sola operación atómica: no se combina con el stock
+     * leído, que puede venir de una réplica atrasada, de una cache o de antes de una descarga.
+     * @param stockLeido El stock leído de la base de datos; solo se usa si el código no tiene ajustes diferidos.
+     */
+    public int stockEfectivo(String codigo, int stockLeido) {
+        if (!habilitado) {
+            return stockLeido;
+        }
+        Contador contador = contadores.get(codigo);
+        return contador != null ? (int) contador.saldo.get().stock() : stockLeido;
+    }
+
+    /**
+     * Bloquea los ajustes diferidos sobre estos códigos y descarga sus deltas pendientes. Se llama antes de
+     * leer el stock de la base de datos para fijarlo; cada llamada debe terminar con {@link #sincronizar}.
+     * @throws IllegalStateException si no se pudieron descargar los deltas (los códigos quedan desbloqueados).
+     */
+    public void bloquear(Collection<String> codigos) {
+        if (!habilitado) {
+            return;
+        }
+        rotacion.writeLock().lock();
+        try {
+            codigos.forEach(codigo -> bloqueados.merge(codigo, 1, Integer::sum));
+        } finally {
+            rotacion.writeLock().unlock();
+        }
+        descargar();
+        for (String codigo : codigos) {
+            Contador contador = contadores.get(codigo);
+            if (contador != null && contador.pendiente.get() != 0) {
+                desbloquear(codigos);
+                throw new IllegalStateException("No se pudieron aplicar los ajustes de stock diferidos del producto: " + codigo);
+            }
+        }
+    }
+
+    /**
+     * Envía a la base de datos todos los deltas acumulados en un solo batch de UPDATE.
+     */
+    @Scheduled(fixedDelayString = "${ecomarket.stock.write-behind.intervalo-ms:200}")
+    public void descargar() {
+        if (!habilitado) {
+            return;
+        }
+        descarga.lock();
+        try {
+            long segmento;
+            Map<String, Long> lote = new HashMap<>();
+            rotacion.writeLock().lock();
+            try {
+                segmento = diario.rotar();
+                contadores.forEach((codigo, contador) -> {
+                    long delta = contador.pendiente.getAndSet(0);
+                    if (delta != 0) {
+                        lote.put(codigo, delta);
+                    }
+                });
+            } finally {
+                rotacion.writeLock().unlock();
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    aplicar(lote);
+                    entityManager.find(PuntoControlStock.class, ID_PUNTO_CONTROL).setUltimoSegmento(segmento);
+                });
+                if (!lote.isEmpty()) {
+                    eventPublisher.publishEvent(new StockDescargadoEvent(Set.copyOf(lote.keySet())));
+                }
+                diario.eliminarHasta(segmento);
+            } catch (RuntimeException e) {
+                // Los deltas vuelven a quedar pendientes; el segmento sigue en disco para la recuperación
+                log.error("Falló la descarga de {} ajustes de stock diferidos; se reintentará.", lote.size(), e);
+                lote.forEach((codigo, delta) -> contadores.get(codigo).pendiente.addAndGet(delta));
+            }
+        } catch (IOException e) {
+            log.error("No se pudo rotar el diario de stock.", e);
+        } finally {
+            descarga.unlock();
+        }
+    }
+
+    /**
+     * Vuelve a leer el stock de la base de datos para los códigos bloqueados con {@link #bloquear} y los
+     * desbloquea. Se llama cuando terminó (con commit o rollback) la operación que fijó el stock.
+     */
+    public void sincronizar(Collection<String> codigos) {
+        if (!habilitado) {
+            return;
+        }
+        descarga.lock();
+        try {
+            for (String codigo : codigos) {
+                Producto enBd = transactionTemplate.execute(status -> productoRepository.findByCodigo(codigo).orElse(null));
+                rotacion.writeLock().lock();
+                try {
+                    if (enBd == null) {
+                        contadores.remove(codigo);
+                    } else {
+                        // Mientras estuvo bloqueado no hubo ajustes: el pendiente es 0 y el contador queda igual a la BD.
+                        // Se crea si no existía, para que un ajuste que esperaba no use el stock que leyó antes.
+                        // El número de ajuste sigue desde el último: la versión nueva ya ordena lo que cambió la operación.
+                        Contador contador = contadores.computeIfAbsent(codigo, c -> new Contador(enBd.getStock(), enBd.getVersion()));
+                        long ajuste = contador.saldo.get().ajuste();
+                        contador.saldo.set(new Saldo(enBd.getStock() + contador.pendiente.get(), enBd.getVersion(), ajuste));
+                    }
+                } finally {
+                    rotacion.writeLock().unlock();
+                }
+            }
+        } finally {
+            descarga.unlock();
+            desbloquear(codigos);
+        }
+    }
+
+    @PreDestroy
+    public void detener() throws IOException {
+        if (habilitado) {
+            descargar();
+            diario.cerrar();
+        }
+    }
+
+    private void desbloquear(Collection<String> codigos) {
+        rotacion.writeLock().lock();
+        try {
+            codigos.forEach(codigo -> bloqueados.computeIfPresent(codigo, (c, n) -> n > 1 ? n - 1 : null));
+        } finally {
+            rotacion.writeLock().unlock();
+        }
+        espera.lock();
+        try {
+            desbloqueado.signalAll();
+        } finally {
+            espera.unlock();
+        }
+    }
+
+    private void esperarDesbloqueo(String codigo, long limite) {
+        espera.lock();
+        try {
+            while (bloqueados.containsKey(codigo)) {
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) {
+                    throw new CannotAcquireLockException("El stock del producto " + codigo + " se está actualizando; intente nuevamente.");
+                }
+                desbloqueado.awaitNanos(restante);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrumpido esperando el stock del producto " + codigo, e);
+        } finally {
+            espera.unlock();
+        }
+    }
+
+    private void aplicar(Map<String, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Object[]> parametros = new ArrayList<>(deltas.size());
+        deltas.forEach((codigo, delta) -> parametros.add(new Object[]{delta, codigo}));
+        jdbcTemplate.batchUpdate(SQL_AJUSTE, parametros);
+    }
+}
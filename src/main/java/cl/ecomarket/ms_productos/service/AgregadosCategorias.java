@@ -0,0 +1,131 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.FacetaCategoria;
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cantidad de productos y stock total por categoría, mantenidos en memoria.
+ * <p>
+ * Se calculan una vez al iniciar con un GROUP BY y luego se ajustan con cada
+ * {@link ProductoModificadoEvent}, así el endpoint de facetas no recorre la tabla.
+ */
+@Component
+public class AgregadosCategorias {
+
+    private static final Logger log = LoggerFactory.getLogger(AgregadosCategorias.class);
+
+    private static final class Agregado {
+        String nombre;
+        long productos;
+        long stock;
+
+        Agregado(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Agregado> porCategoria = new HashMap<>(); // Por categoría normalizada
+    private volatile boolean listo;
+
+    private final ProductoRepository productoRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public AgregadosCategorias(ProductoRepository productoRepository, PlatformTransactionManager transactionManager) {
+        this.productoRepository = productoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void construir() {
+        // Igual que el índice de búsqueda: los eventos que lleguen durante la construcción esperan el lock
+        lock.lock();
+        try {
+            List<FacetaCategoria> filas = transactionTemplate.execute(status -> productoRepository.contarPorCategoria());
+            porCategoria.clear();
+            for (FacetaCategoria fila : filas) {
+                Agregado agregado = new Agregado(fila.categoria().trim());
+                agregado.productos = fila.productos();
+                agregado.stock = fila.stock();
+                porCategoria.put(Producto.normalizarCategoria(fila.categoria()), agregado);
+            }
+            listo = true;
+            log.info("Agregados por categoría construidos: {} categorías.", porCategoria.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Las categorías con al menos un producto, ordenadas por nombre; o la consulta
+     * directa a la base de datos si los agregados aún no se construyen.
+     */
+    public List<FacetaCategoria> facetas() {
+        List<FacetaCategoria> facetas;
+        if (!listo) {
+            facetas = new ArrayList<>(transactionTemplate.execute(status -> productoRepository.contarPorCategoria()));
+        } else {
+            lock.lock();
+            try {
+                facetas = new ArrayList<>(porCategoria.size());
+                for (Agregado agregado : porCategoria.values()) {
+                    if (agregado.productos > 0) {
+                        facetas.add(new FacetaCategoria(agregado.nombre, agregado.productos, agregado.stock));
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        facetas.sort(Comparator.comparing(FacetaCategoria::categoria, String.CASE_INSENSITIVE_ORDER));
+        return facetas;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarProducto(ProductoModificadoEvent evento) {
+        lock.lock();
+        try {
+            if (!listo) {
+                return; // La construcción inicial ya incluirá este cambio
+            }
+            aplicar(evento.anterior(), -1);
+            aplicar(evento.producto(), 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void aplicar(Producto producto, int signo) {
+        if (producto == null) {
+            return;
+        }
+        String clave = Producto.normalizarCategoria(producto.getCategoria());
+        if (clave == null) {
+            return;
+        }
+        Agregado agregado = porCategoria.computeIfAbsent(clave, c -> new Agregado(producto.getCategoria().trim()));
+        agregado.productos += signo;
+        agregado.stock += (long) signo * producto.getStock();
+        if (agregado.productos == 0) {
+            porCategoria.remove(clave);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.ResultadoAjusteStock;
+
+import java.util.List;
+
+/**
+ * Indica que al menos una línea de un ajuste de stock por lote no se pudo aplicar.
+ * Al ser una RuntimeException la transacción se revierte completa.
+ */
+public class AjusteStockLoteException extends RuntimeException {
+
+    private final List<ResultadoAjusteStock> resultados;
+
+    public AjusteStockLoteException(List<ResultadoAjusteStock> resultados) {
+        super("No se aplicó ningún ajuste: al menos una línea es inválida.");
+        this.resultados = resultados;
+    }
+
+    public List<ResultadoAjusteStock> getResultados() {
+        return resultados;
+    }
+}
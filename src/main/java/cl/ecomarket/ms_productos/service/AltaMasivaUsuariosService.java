@@ -0,0 +1,300 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.AltaUsuario;
+import cl.ecomarket.ms_productos.dto.ResultadoAltaMasiva;
+import cl.ecomarket.ms_productos.dto.ResultadoAltaUsuario;
+import cl.ecomarket.ms_productos.model.Rol;
+import cl.ecomarket.ms_productos.model.Usuario;
+import cl.ecomarket.ms_productos.repository.RolRepository;
+import cl.ecomarket.ms_productos.repository.UsuarioRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Alta masiva de usuarios (/api/v1/usuarios/lote), por ejemplo todo el personal de una tienda nueva.
+ * <p>
+ * A diferencia de crear los usuarios uno por uno, el lote se valida completo en memoria, los usernames,
+ * emails y roles se verifican con una consulta cada uno (IN), los hashes BCrypt se calculan en paralelo en
+ * un pool acotado al número de núcleos y los usuarios y sus roles se insertan en batch JDBC en una sola
+ * transacción. Las filas inválidas se reportan sin impedir que se creen las demás.
+ */
+@Service
+public class AltaMasivaUsuariosService {
+
+    private static final Logger log = LoggerFactory.getLogger(AltaMasivaUsuariosService.class);
+    private static final String SQL_USUARIO =
+            "insert into usuarios (username, nombre_completo, email, password, activo) values (?, ?, ?, ?, ?)";
+    private static final String SQL_ROL = "insert into usuarios_roles (usuario_id, rol_id) values (?, ?)";
+
+    // Una fila que pasó la validación, con los roles ya resueltos y el hash en cálculo
+    private static final class Alta {
+        final int fila;
+        final Usuario usuario;
+        final Set<String> roles;
+        Future<String> hash;
+
+        Alta(int fila, Usuario usuario, Set<String> roles) {
+            this.fila = fila;
+            this.usuario = usuario;
+            this.roles = roles;
+        }
+    }
+
+    private final UsuarioRepository usuarioRepository;
+    private final RolRepository rolRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxFilas;
+    // BCrypt es cálculo puro: más hilos que núcleos no lo acelera. Lo comparten todos los lotes en curso.
+    private final ExecutorService hashes;
+
+    public AltaMasivaUsuariosService(UsuarioRepository usuarioRepository,
+                                     RolRepository rolRepository,
+                                     @Lazy PasswordEncoder passwordEncoder,
+                                     Validator validator,
+                                     JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${ecomarket.usuarios.lote.max-filas:1000}") int maxFilas,
+                                     @Value("${ecomarket.usuarios.lote.hilos:0}") int hilos) {
+        this.usuarioRepository = usuarioRepository;
+        this.rolRepository = rolRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.maxFilas = maxFilas;
+        this.hashes = Executors.newFixedThreadPool(hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors(),
+                Thread.ofPlatform().name("alta-usuarios-", 1).daemon().factory());
+    }
+
+    /**
+     * Crea los usuarios del lote. Cada usuario queda activo, como en el alta individual.
+     * @param altas Los usuarios a crear; como máximo max-filas.
+     * @return El resultado de cada fila: el id del usuario creado o el motivo del rechazo.
+     * @throws IllegalArgumentException si el lote está vacío o supera el máximo de filas.
+     */
+    public ResultadoAltaMasiva crearUsuarios(List<AltaUsuario> altas) {
+        if (altas == null || altas.isEmpty()) {
+            throw new IllegalArgumentException("El lote no tiene usuarios.");
+        }
+        if (altas.size() > maxFilas) {
+            throw new IllegalArgumentException("El lote supera el máximo de " + maxFilas + " usuarios.");
+        }
+        long inicio = System.nanoTime();
+        ResultadoAltaUsuario[] resultados = new ResultadoAltaUsuario[altas.size()];
+
+        // Validación y repetidos dentro del lote, sin tocar la base de datos
+        List<Alta> validas = new ArrayList<>(altas.size());
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        Set<String> nombresRoles = new HashSet<>();
+        for (int i = 0; i < altas.size(); i++) {
+            int fila = i + 1;
+            AltaUsuario alta = altas.get(i);
+            if (alta == null) {
+                resultados[i] = new ResultadoAltaUsuario(fila, null, null, "La fila está vacía.");
+                continue;
+            }
+            Usuario usuario = new Usuario();
+            usuario.setUsername(alta.username());
+            usuario.setNombreCompleto(alta.nombreCompleto());
+            usuario.setEmail(alta.email());
+            usuario.setPassword(alta.password() != null ? alta.password().trim() : null);
+            Set<ConstraintViolation<Usuario>> violaciones = validator.validate(usuario);
+            if (!violaciones.isEmpty()) {
+                resultados[i] = new ResultadoAltaUsuario(fila, alta.username(), null, violaciones.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage()).sorted().collect(Collectors.joining("; ")));
+            } else if (!usernames.add(clave(usuario.getUsername()))) {
+                resultados[i] = new ResultadoAltaUsuario(fila, alta.username(), null, "Username repetido en el lote: " + usuario.getUsername());
+            } else if (!emails.add(clave(usuario.getEmail()))) {
+                usernames.remove(clave(usuario.getUsername()));
+                resultados[i] = new ResultadoAltaUsuario(fila, alta.username(), null, "Email repetido en el lote: " + usuario.getEmail());
+            } else {
+                Set<String> roles = new HashSet<>();
+                if (alta.roles() != null) {
+                    for (String rol : alta.roles()) {
+                        if (rol != null && !rol.isBlank()) {
+                            roles.add(rol.trim().toUpperCase(Locale.ROOT));
+                        }
+                    }
+                }
+                nombresRoles.addAll(roles);
+                validas.add(new Alta(fila, usuario, roles));
+            }
+        }
+
+        // Una consulta por cada verificación, para todo el lote. Dentro del lote los repetidos se comparan en minúsculas,
+        // como la collation de MySQL ("Ana@Lote.cl" y "ana@lote.cl" son el mismo email). Contra la base se compara
+        // sobre las columnas indexadas, con la misma regla que el alta individual; lo encontrado pasa a minúsculas.
+        Set<String> usernamesExistentes = existentes(validas.stream().map(a -> a.usuario.getUsername()).toList(),
+                usuarioRepository::findUsernamesExistentes);
+        Set<String> emailsExistentes = existentes(validas.stream().map(a -> a.usuario.getEmail()).toList(),
+                usuarioRepository::findEmailsExistentes);
+        Map<String, Rol> roles = new HashMap<>();
+        if (!nombresRoles.isEmpty()) {
+            for (Rol rol : rolRepository.findByNombreIn(nombresRoles)) {
+                roles.put(rol.getNombre(), rol);
+            }
+        }
+        List<Alta> aceptadas = new ArrayList<>(validas.size());
+        for (Alta alta : validas) {
+            String username = alta.usuario.getUsername();
+            String error = null;
+            if (usernamesExistentes.contains(clave(username))) {
+                rechazo("username_duplicado");
+                error = "El nombre de usuario ya existe: " + username;
+            } else if (emailsExistentes.contains(clave(alta.usuario.getEmail()))) {
+                rechazo("email_duplicado");
+                error = "El email ya está registrado: " + alta.usuario.getEmail();
+            } else {
+                List<String> desconocidos = alta.roles.stream().filter(r -> !roles.containsKey(r)).sorted().toList();
+                if (!desconocidos.isEmpty()) {
+                    error = "Rol no encontrado: " + String.join(", ", desconocidos);
+                }
+            }
+            if (error != null) {
+                resultados[alta.fila - 1] = new ResultadoAltaUsuario(alta.fila, username, null, error);
+            } else {
+                aceptadas.add(alta);
+            }
+        }
+
+        // Los hashes se calculan fuera de la transacción: no se retiene una conexión mientras tanto
+        for (Alta alta : aceptadas) {
+            String password = alta.usuario.getPassword();
+            alta.hash = hashes.submit(() -> passwordEncoder.encode(password));
+        }
+        try {
+            for (Alta alta : aceptadas) {
+                alta.usuario.setPassword(alta.hash.get());
+            }
+        } catch (InterruptedException e) {
+            aceptadas.forEach(a -> a.hash.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido calculando los hashes de las contraseñas", e);
+        } catch (ExecutionException e) {
+            aceptadas.forEach(a -> a.hash.cancel(true));
+            throw new IllegalStateException("No se pudo calcular el hash de una contraseña", e.getCause());
+        }
+
+        int creados = 0;
+        if (!aceptadas.isEmpty()) {
+            try {
+                long[] ids = transactionTemplate.execute(status -> insertar(aceptadas, roles));
+                for (int i = 0; i < aceptadas.size(); i++) {
+                    Alta alta = aceptadas.get(i);
+                    resultados[alta.fila - 1] = new ResultadoAltaUsuario(alta.fila, alta.usuario.getUsername(), ids[i], null);
+                }
+                creados = aceptadas.size();
+            } catch (DataAccessException e) {
+                // Por ejemplo, otro request registró el mismo username entre la verificación y el insert
+                log.warn("Falló el alta masiva de {} usuarios: {}", aceptadas.size(), e.getMessage());
+                String motivo = "No se pudo guardar el lote: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                for (Alta alta : aceptadas) {
+                    resultados[alta.fila - 1] = new ResultadoAltaUsuario(alta.fila, alta.usuario.getUsername(), null, motivo);
+                }
+            }
+        }
+
+        log.info("Alta masiva: {} usuarios creados de {} en {} ms.", creados, altas.size(), (System.nanoTime() - inicio) / 1_000_000);
+        return new ResultadoAltaMasiva(altas.size(), creados, altas.size() - creados, Arrays.asList(resultados));
+    }
+
+    @PreDestroy
+    public void detener() {
+        hashes.shutdownNow();
+    }
+
+    // Los INSERT van en batch (rewriteBatchedStatements los envía en un solo round trip en MySQL). Con
+    // IDENTITY, Hibernate ejecutaría uno por uno para conocer cada id; aquí se leen las claves generadas.
+    private long[] insertar(List<Alta> altas, Map<String, Rol> roles) {
+        GeneratedKeyHolder claves = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(SQL_USUARIO, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Usuario usuario = altas.get(i).usuario;
+                        ps.setString(1, usuario.getUsername());
+                        ps.setString(2, usuario.getNombreCompleto());
+                        ps.setString(3, usuario.getEmail());
+                        ps.setString(4, usuario.getPassword());
+                        ps.setBoolean(5, true);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return altas.size();
+                    }
+                }, claves);
+
+        List<Map<String, Object>> generadas = claves.getKeyList();
+        if (generadas.size() != altas.size()) {
+            throw new IllegalStateException("Se esperaban " + altas.size() + " ids generados y se obtuvieron " + generadas.size());
+        }
+        long[] ids = new long[altas.size()];
+        List<Object[]> vinculos = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            // El nombre de la columna cambia según el driver (id, GENERATED_KEY): se toma el único valor
+            ids[i] = ((Number) generadas.get(i).values().iterator().next()).longValue();
+            for (String rol : altas.get(i).roles) {
+                vinculos.add(new Object[]{ids[i], roles.get(rol).getId()});
+            }
+        }
+        if (!vinculos.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_ROL, vinculos);
+        }
+        return ids;
+    }
+
+    private static String clave(String valor) {
+        return valor.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> existentes(List<String> valores, Function<List<String>, List<String>> consulta) {
+        if (valores.isEmpty()) {
+            return Set.of();
+        }
+        return consulta.apply(valores).stream().map(AltaMasivaUsuariosService::clave).collect(Collectors.toSet());
+    }
+
+    private void rechazo(String motivo) {
+        meterRegistry.counter("ecomarket.usuarios.rechazos", "motivo", motivo).increment();
+    }
+}
@@ -0,0 +1,142 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.event.StockDescargadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Cache de lectura (read-through) de productos por id y por código, acotada por tamaño y TTL.
+ * <p>
+ * Guarda copias con el estado de la base de datos; cada escritura en ProductoService invalida
+ * las entradas del producto después del commit. La invalidación también quita una carga en curso
+ * para la misma llave, así una lectura concurrente no deja un valor viejo en la cache.
+ * <p>
+ * Las cargas corren en una transacción que no es readOnly, así que con réplicas habilitadas leen del
+ * primario: una réplica atrasada dejaría en la cache, hasta el TTL, un valor anterior a una escritura
+ * cuya invalidación ya pasó. Los aciertos no usan conexión, y sin cache la lectura sigue yendo a la réplica.
+ * <p>
+ * Cada entrada es un CompletableFuture: la consulta a la base de datos corre en el hilo que
+ * registró la carga, fuera de los locks internos del mapa (un synchronized de ConcurrentHashMap
+ * mantendría fijo un hilo virtual durante todo el I/O), y las lecturas concurrentes de la misma
+ * llave esperan ese resultado.
+ * Las estadísticas (aciertos, expulsiones, tiempo de carga) se publican en /actuator/metrics
+ * como cache.* con cache=productos.id y cache=productos.codigo.
+ */
+@Component
+public class CacheProductos implements MeterBinder {
+
+    private final boolean habilitado;
+    private final AsyncCache<Long, Producto> porId;
+    private final AsyncCache<String, Producto> porCodigo;
+    private final TransactionTemplate primario;
+
+    public CacheProductos(@Value("${ecomarket.productos.cache.habilitado:true}") boolean habilitado,
+                          @Value("${ecomarket.productos.cache.max-entradas:10000}") long maxEntradas,
+                          @Value("${ecomarket.productos.cache.ttl:PT10M}") Duration ttl,
+                          PlatformTransactionManager transactionManager) {
+        this.habilitado = habilitado;
+        this.primario = new TransactionTemplate(transactionManager);
+        this.porId = Caffeine.newBuilder().maximumSize(maxEntradas).expireAfterWrite(ttl).recordStats().buildAsync();
+        this.porCodigo = Caffeine.newBuilder().maximumSize(maxEntradas).expireAfterWrite(ttl).recordStats().buildAsync();
+    }
+
+    /**
+     * @param cargar La consulta a la base de datos, usada solo si el producto no está en la cache (en el primario).
+     * @return Una copia del producto; los productos inexistentes no se cachean.
+     */
+    public Optional<Producto> porId(Long id, Function<Long, Optional<Producto>> cargar) {
+        if (!habilitado) {
+            return cargar.apply(id);
+        }
+        return Optional.ofNullable(leer(porId, id, cargar)).map(Producto::copiar);
+    }
+
+    /**
+     * @param cargar La consulta a la base de datos, usada solo si el producto no está en la cache (en el primario).
+     * @return Una copia del producto; los productos inexistentes no se cachean.
+     */
+    public Optional<Producto> porCodigo(String codigo, Function<String, Optional<Producto>> cargar) {
+        if (!habilitado) {
+            return cargar.apply(codigo);
+        }
+        return Optional.ofNullable(leer(porCodigo, codigo, cargar)).map(Producto::copiar);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarProducto(ProductoModificadoEvent evento) {
+        // Se invalida en vez de reemplazar: con la escritura diferida, el stock del evento
+        // incluye deltas que aún no están en la base de datos
+        invalidar(evento.anterior());
+        invalidar(evento.producto());
+    }
+
+    @EventListener
+    public void alDescargarStock(StockDescargadoEvent evento) {
+        if (!habilitado) {
+            return;
+        }
+        porCodigo.synchronous().invalidateAll(evento.codigos());
+        // La cache por id no está indexada por código: se recorre (solo cuando hubo una descarga)
+        porId.synchronous().asMap().values().removeIf(p -> evento.codigos().contains(p.getCodigo()));
+    }
+
+    public void invalidarTodo() {
+        porId.synchronous().invalidateAll();
+        porCodigo.synchronous().invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, porId, "productos.id");
+        CaffeineCacheMetrics.monitor(registry, porCodigo, "productos.codigo");
+    }
+
+    private void invalidar(Producto producto) {
+        if (!habilitado || producto == null) {
+            return;
+        }
+        porId.synchronous().invalidate(producto.getId());
+        porCodigo.synchronous().invalidate(producto.getCodigo());
+    }
+
+    private <K> Producto leer(AsyncCache<K, Producto> cache, K llave, Function<K, Optional<Producto>> cargar) {
+        CompletableFuture<Producto> entrada = cache.getIfPresent(llave); // Registra el acierto o la falla
+        if (entrada == null) {
+            CompletableFuture<Producto> carga = new CompletableFuture<>();
+            entrada = cache.asMap().putIfAbsent(llave, carga);
+            if (entrada == null) {
+                // Caffeine descarta la entrada si el resultado es null (producto inexistente) o una excepción
+                try {
+                    carga.complete(primario.execute(status -> cargar.apply(llave).map(Producto::copiar).orElse(null)));
+                } catch (RuntimeException e) {
+                    carga.completeExceptionally(e);
+                    throw e;
+                }
+                entrada = carga;
+            }
+        }
+        try {
+            return entrada.join();
+        } catch (CompletionException e) {
+            // La carga de otro hilo falló: se propaga la excepción original
+            throw e.getCause() instanceof RuntimeException causa ? causa : e;
+        }
+    }
+}
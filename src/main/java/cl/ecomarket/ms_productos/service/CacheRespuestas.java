@@ -0,0 +1,162 @@
+package cl.ecomarket.ms_productos.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache de las respuestas ya serializadas de los listados de productos: los bytes JSON (y su versión
+ * gzip) por consulta, marcados con el contador de cambios del catálogo con que se generaron.
+ * <p>
+ * Una entrada solo se entrega mientras el contador no cambie, así cualquier escritura en el catálogo
+ * invalida todos los listados sin recorrer la cache. El contador se lee antes de ejecutar la consulta:
+ * VersionCatalogo lo incrementa cuando el snapshot, los agregados y la base de datos ya tienen el cambio,
+ * por lo que una respuesta nunca queda guardada con un contador más nuevo que sus datos.
+ * <p>
+ * Con réplicas de lectura, durante ecomarket.replicas.ventana-listados después de cada cambio las consultas
+ * se ejecutan en el primario (en una transacción que no es readOnly, como las cargas de CacheProductos). Una
+ * réplica que aún no recibe el cambio no puede dejar una página vieja asociada al contador nuevo: esa página se
+ * entregaría con el ETag vigente, y los clientes recibirían 304 hasta la siguiente escritura. Pasada la
+ * ventana, que debe superar el atraso máximo de las réplicas, las consultas vuelven a las réplicas.
+ * <p>
+ * Las estadísticas se publican como cache.* con cache=productos.respuestas, y los bytes retenidos en
+ * ecomarket.productos.respuestas.bytes.
+ */
+@Component
+public class CacheRespuestas implements MeterBinder {
+
+    /**
+     * El resultado de ejecutar la consulta, antes de serializarlo.
+     * @param cuerpo La lista que se envía como cuerpo de la respuesta.
+     * @param siguienteCursor El cursor de la página siguiente, o null.
+     */
+    public record Pagina(Object cuerpo, Long siguienteCursor) {
+    }
+
+    /**
+     * @param json El cuerpo ya serializado.
+     * @param gzip El mismo cuerpo comprimido, o null si es pequeño o la compresión está deshabilitada.
+     * @param siguienteCursor El cursor de la página siguiente, o null.
+     */
+    public record Respuesta(byte[] json, byte[] gzip, Long siguienteCursor) {
+    }
+
+    private record Entrada(long version, Respuesta respuesta) {
+        int bytes() {
+            return respuesta.json().length + (respuesta.gzip() != null ? respuesta.gzip().length : 0);
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final VersionCatalogo versionCatalogo;
+    private final TransactionTemplate primario;
+    private final long ventanaPrimarioNanos;
+    private final boolean habilitado;
+    private final boolean gzip;
+    private final int gzipMinimo;
+    private final Cache<String, Entrada> respuestas;
+
+    public CacheRespuestas(ObjectMapper objectMapper,
+                           VersionCatalogo versionCatalogo,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${ecomarket.replicas.habilitado:false}") boolean replicas,
+                           @Value("${ecomarket.replicas.ventana-listados:PT5S}") Duration ventanaListados,
+                           @Value("${ecomarket.productos.respuestas.habilitado:true}") boolean habilitado,
+                           @Value("${ecomarket.productos.respuestas.max-tamano:64MB}") DataSize maxTamano,
+                           @Value("${ecomarket.productos.respuestas.ttl:PT1M}") Duration ttl,
+                           @Value("${ecomarket.productos.respuestas.gzip:true}") boolean gzip,
+                           @Value("${ecomarket.productos.respuestas.gzip-minimo:1KB}") DataSize gzipMinimo) {
+        this.objectMapper = objectMapper;
+        this.versionCatalogo = versionCatalogo;
+        this.primario = new TransactionTemplate(transactionManager);
+        this.ventanaPrimarioNanos = replicas ? ventanaListados.toNanos() : 0;
+        this.habilitado = habilitado;
+        this.gzip = gzip;
+        this.gzipMinimo = (int) gzipMinimo.toBytes();
+        this.respuestas = Caffeine.newBuilder()
+                .maximumWeight(maxTamano.toBytes())
+                .weigher((String consulta, Entrada entrada) -> consulta.length() + entrada.bytes())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param consulta La ruta y los parámetros de la request; identifica la respuesta dentro de una versión.
+     * @param version El contador de cambios del catálogo leído antes de ejecutar la consulta (el del ETag).
+     * @param ejecutar La consulta, usada solo si la respuesta no está en la cache para esta versión.
+     *                 Sus excepciones se propagan y no se cachea nada.
+     * @return La respuesta serializada. Con la cache deshabilitada se serializa en cada llamada, sin gzip.
+     */
+    public Respuesta obtener(String consulta, long version, Supplier<Pagina> ejecutar) {
+        if (!habilitado) {
+            Pagina pagina = consultar(ejecutar);
+            return new Respuesta(serializar(pagina.cuerpo()), null, pagina.siguienteCursor());
+        }
+        Entrada entrada = respuestas.getIfPresent(consulta);
+        if (entrada != null && entrada.version() == version) {
+            return entrada.respuesta();
+        }
+        // Sin compute: la consulta puede ir a la base de datos y no debe correr dentro de un lock del mapa.
+        // Dos requests simultáneas de la misma consulta la ejecutan ambas; la segunda reemplaza a la primera
+        Pagina pagina = consultar(ejecutar);
+        byte[] json = serializar(pagina.cuerpo());
+        Respuesta respuesta = new Respuesta(json, gzip && json.length >= gzipMinimo ? comprimir(json) : null,
+                pagina.siguienteCursor());
+        respuestas.put(consulta, new Entrada(version, respuesta));
+        return respuesta;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, respuestas, "productos.respuestas");
+        Gauge.builder("ecomarket.productos.respuestas.bytes", respuestas,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L))
+                .description("Bytes de respuestas serializadas retenidos en la cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private Pagina consultar(Supplier<Pagina> consulta) {
+        if (ventanaPrimarioNanos > 0 && versionCatalogo.cambioReciente(ventanaPrimarioNanos)) {
+            return primario.execute(status -> consulta.get());
+        }
+        return consulta.get();
+    }
+
+    private byte[] serializar(Object cuerpo) {
+        try {
+            return objectMapper.writeValueAsBytes(cuerpo);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el listado de productos", e);
+        }
+    }
+
+    private static byte[] comprimir(byte[] json) {
+        // El JSON de productos se comprime a menos de un cuarto
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(salida)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return salida.toByteArray();
+    }
+}
@@ -0,0 +1,297 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.event.StockDescargadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Modo opcional en que las lecturas de productos (listado, por id, por código, por categoría y por
+ * rango de precio) se responden desde un {@link SnapshotCatalogo} en memoria, sin consultar la base de datos.
+ * <p>
+ * El snapshot se construye al iniciar y se reemplaza después de cada commit que modificó productos:
+ * se vuelven a leer del primario solo las filas cambiadas (una consulta por transacción, así una
+ * importación de mil productos es una sola recarga) y se publica el snapshot siguiente, que comparte
+ * las columnas del anterior y lleva las filas cambiadas en un delta (ver {@link SnapshotCatalogo}).
+ * Las escrituras concurrentes se agrupan: quien toma el lock aplica en un solo reemplazo también los
+ * cambios que llegaron mientras esperaba, y los demás retornan sin tocar el snapshot. El que escribe
+ * espera ese reemplazo, para leer su propio cambio al volver. Los lectores solo leen la referencia
+ * volátil, nunca esperan.
+ * <p>
+ * Pensado para un catálogo que se lee mucho más de lo que se escribe: decenas de escrituras por segundo
+ * (altas, ediciones, precios; el stock con escritura diferida llega en lotes, uno por descarga). Con N
+ * productos cada reemplazo cuesta O(√N) y cada √N filas cambiadas hay una compactación O(N): con 100 mil
+ * productos, ~80 µs por cambio en promedio y 30 a 100 ms la compactación, en una CPU. El tiempo de cada reemplazo se publica en ecomarket.catalogo.snapshot.actualizacion
+ * y el tamaño del delta en ecomarket.catalogo.snapshot.delta.
+ * <p>
+ * Guarda el stock de la base de datos, como la cache de productos: ProductoService le suma los
+ * ajustes diferidos pendientes al leer.
+ */
+@Component
+public class CatalogoEnMemoria implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogoEnMemoria.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<Long> idsPendientes = ConcurrentHashMap.newKeySet();
+    private final Set<String> codigosPendientes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong solicitados = new AtomicLong();
+    private long aplicados; // Protegido por el lock
+    private volatile SnapshotCatalogo snapshot; // null mientras no se construye
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ProductoRepository productoRepository;
+    private final AcumuladorStock acumuladorStock;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate recarga;
+    private final boolean habilitado;
+    private Timer actualizaciones;
+
+    public CatalogoEnMemoria(ProductoRepository productoRepository,
+                             AcumuladorStock acumuladorStock,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${ecomarket.productos.snapshot.habilitado:false}") boolean habilitado) {
+        this.productoRepository = productoRepository;
+        this.acumuladorStock = acumuladorStock;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        // La recarga corre después del commit de otra transacción y no es readOnly: con réplicas
+        // habilitadas debe leer del primario, donde el cambio ya está
+        this.recarga = new TransactionTemplate(transactionManager);
+        this.recarga.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.habilitado = habilitado;
+    }
+
+    /**
+     * @return true si el modo está habilitado y el snapshot terminó de construirse.
+     */
+    public boolean isListo() {
+        return snapshot != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void construir() {
+        if (!habilitado) {
+            return;
+        }
+        long inicio = System.currentTimeMillis();
+        // Como el índice de búsqueda: las recargas que lleguen durante la construcción esperan el lock
+        lock.lock();
+        try {
+            List<Producto> productos = transactionTemplate.execute(status -> {
+                List<Producto> copias = new ArrayList<>();
+                try (Stream<Producto> filas = productoRepository.streamAll()) {
+                    for (Producto producto : (Iterable<Producto>) filas::iterator) {
+                        copias.add(producto.copiar());
+                        if (copias.size() % 1000 == 0) {
+                            entityManager.clear();
+                        }
+                    }
+                }
+                return copias;
+            });
+            snapshot = SnapshotCatalogo.construir(productos);
+            log.info("Snapshot del catálogo construido con {} productos en {} ms (~{} bytes por producto).",
+                    snapshot.tamano(), System.currentTimeMillis() - inicio,
+                    snapshot.tamano() > 0 ? snapshot.bytesEstimados() / snapshot.tamano() : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Optional<Producto> porId(Long id) {
+        return Optional.ofNullable(snapshot.porId(id));
+    }
+
+    public Optional<Producto> porCodigo(String codigo) {
+        return Optional.ofNullable(snapshot.porCodigo(codigo));
+    }
+
+    public List<Producto> listar(long after, int limite) {
+        return snapshot.listar(after, limite);
+    }
+
+    public List<Producto> categoria(String categoriaNormalizada, long after, int limite) {
+        return snapshot.categoria(categoriaNormalizada, after, limite);
+    }
+
+    public List<Producto> rangoPrecio(double min, double max, long after, int limite) {
+        return snapshot.rangoPrecio(min, max, after, limite);
+    }
+
+    /**
+     * Junta los ids modificados en la transacción y los recarga una sola vez, después del commit.
+     */
+    @EventListener
+    public void alModificarProducto(ProductoModificadoEvent evento) {
+        if (!habilitado) {
+            return;
+        }
+        // Con la escritura diferida el ajuste no cambia la fila; se recarga con StockDescargadoEvent
+        if (evento.tipo() == ProductoModificadoEvent.Tipo.STOCK_AJUSTADO && acumuladorStock.isHabilitado()) {
+            return;
+        }
+        Long id = evento.producto() != null ? evento.producto().getId() : evento.anterior().getId();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refrescar(Set.of(id), Set.of());
+            return;
+        }
+        CambiosTransaccion cambios = (CambiosTransaccion) TransactionSynchronizationManager.getResource(this);
+        if (cambios == null) {
+            cambios = new CambiosTransaccion();
+            TransactionSynchronizationManager.bindResource(this, cambios);
+            TransactionSynchronizationManager.registerSynchronization(cambios);
+        }
+        cambios.ids.add(id);
+    }
+
+    // Se publica después del commit de la descarga. Corre antes que VersionCatalogo, que incrementa
+    // el contador con el mismo evento
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void alDescargarStock(StockDescargadoEvent evento) {
+        if (habilitado) {
+            refrescar(Set.of(), evento.codigos());
+        }
+    }
+
+    /**
+     * Vuelve a leer los productos dados y publica el snapshot siguiente. Retorna cuando el
+     * snapshot publicado ya incluye estos cambios (aunque los haya aplicado otro hilo).
+     */
+    void refrescar(Collection<Long> ids, Collection<String> codigos) {
+        idsPendientes.addAll(ids);
+        codigosPendientes.addAll(codigos);
+        long turno = solicitados.incrementAndGet();
+        lock.lock();
+        try {
+            if (aplicados >= turno) {
+                return; // Otro hilo ya aplicó este cambio junto con los suyos
+            }
+            long hasta = solicitados.get();
+            Set<Long> lote = drenar(idsPendientes);
+            Set<String> loteCodigos = drenar(codigosPendientes);
+            if (snapshot == null) {
+                aplicados = hasta; // Aún no se construye; la construcción leerá estos cambios
+                return;
+            }
+            long inicio = System.nanoTime();
+            try {
+                List<Producto> filas = recarga.execute(status -> {
+                    List<Producto> copias = new ArrayList<>();
+                    if (!lote.isEmpty()) {
+                        productoRepository.findAllById(lote).forEach(p -> copias.add(p.copiar()));
+                    }
+                    if (!loteCodigos.isEmpty()) {
+                        productoRepository.findByCodigoIn(loteCodigos).forEach(p -> copias.add(p.copiar()));
+                    }
+                    return copias;
+                });
+                Set<Long> eliminados = new HashSet<>(lote);
+                filas.forEach(p -> eliminados.remove(p.getId()));
+                snapshot = snapshot.con(filas, eliminados);
+                aplicados = hasta;
+            } catch (RuntimeException e) {
+                // Los cambios quedan pendientes para la siguiente recarga
+                idsPendientes.addAll(lote);
+                codigosPendientes.addAll(loteCodigos);
+                log.error("No se pudo actualizar el snapshot del catálogo ({} productos); se reintentará.",
+                        lote.size() + loteCodigos.size(), e);
+                return;
+            }
+            if (actualizaciones != null) {
+                actualizaciones.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!habilitado) {
+            return;
+        }
+        Gauge.builder("ecomarket.catalogo.snapshot.productos", this, c -> c.isListo() ? c.snapshot.tamano() : 0)
+                .description("Productos en el snapshot del catálogo")
+                .register(registry);
+        Gauge.builder("ecomarket.catalogo.snapshot.delta", this, c -> c.isListo() ? c.snapshot.tamanoDelta() : 0)
+                .description("Filas cambiadas desde la última compactación del snapshot")
+                .register(registry);
+        Gauge.builder("ecomarket.catalogo.snapshot.bytes", this, c -> c.isListo() ? c.snapshot.bytesEstimados() : 0)
+                .description("Heap estimado del snapshot del catálogo")
+                .baseUnit("bytes")
+                .register(registry);
+        actualizaciones = Timer.builder("ecomarket.catalogo.snapshot.actualizacion")
+                .description("Recarga de las filas cambiadas y armado del snapshot siguiente")
+                .register(registry);
+    }
+
+    // Ids modificados en una transacción; se desvincula mientras una transacción REQUIRES_NEW la suspende
+    private final class CambiosTransaccion implements TransactionSynchronization {
+        final Set<Long> ids = new HashSet<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(CatalogoEnMemoria.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(CatalogoEnMemoria.this, this);
+        }
+
+        @Override
+        public void afterCommit() {
+            refrescar(ids, Set.of());
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CatalogoEnMemoria.this);
+        }
+    }
+
+    private static <T> Set<T> drenar(Set<T> pendientes) {
+        Set<T> lote = new HashSet<>();
+        for (Iterator<T> it = pendientes.iterator(); it.hasNext(); ) {
+            lote.add(it.next());
+            it.remove();
+        }
+        return lote;
+    }
+}
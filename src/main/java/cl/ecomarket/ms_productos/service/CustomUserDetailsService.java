@@ -1,9 +1,14 @@
 package cl.ecomarket.ms_productos.service;
 
+import cl.ecomarket.ms_productos.model.Permiso;
 import cl.ecomarket.ms_productos.model.Rol;
 import cl.ecomarket.ms_productos.model.Usuario;
 import cl.ecomarket.ms_productos.repository.UsuarioRepository;
+import cl.ecomarket.ms_productos.security.UsuarioAutenticado;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -12,43 +17,79 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-@Service("customUserDetailsService") 
+@Service("customUserDetailsService")
 public class CustomUserDetailsService implements UserDetailsService {
 
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    // Autoridades (ROLE_* más los permisos) precalculadas por id de rol. Los permisos de un rol no se modifican
+    // desde la API sino en la base de datos, así que un cambio se aplica a lo más ttl después (o al invalidar)
+    private final Cache<Long, Set<GrantedAuthority>> autoridadesPorRol;
+
+    public CustomUserDetailsService(@Value("${ecomarket.security.autoridades.ttl:PT5M}") Duration ttl) {
+        this.autoridadesPorRol = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
     @Override
     @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(String usernameOrEmail) throws UsernameNotFoundException {
-        Usuario usuario = usuarioRepository.findByUsername(usernameOrEmail)
-                .orElseGet(() -> usuarioRepository.findByEmail(usernameOrEmail)
+        // Una sola consulta: username o email, con roles y permisos por join fetch
+        List<Usuario> candidatos = usuarioRepository.findParaAutenticacion(usernameOrEmail);
+        Usuario usuario = candidatos.stream()
+                .filter(u -> usernameOrEmail.equals(u.getUsername())) // El username tiene prioridad sobre el email
+                .findFirst()
+                .orElseGet(() -> candidatos.stream().findFirst()
                         .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado con username o email: " + usernameOrEmail)));
 
         if (!usuario.isActivo()) {
             throw new UsernameNotFoundException("La cuenta del usuario está desactivada: " + usernameOrEmail);
         }
 
-        Set<GrantedAuthority> authorities = new HashSet<>();
-
+        return new UsuarioAutenticado(
+                usuario.getEmail(),
+                usuario.getPassword(),
+                usuario.isActivo(),
+                usuario.getEpocaTokens(),
+                autoridadesDe(usuario.getRoles())
+        );
+    }
 
-        for (Rol rol : usuario.getRoles()) {
-            authorities.add(new SimpleGrantedAuthority("ROLE_" + rol.getNombre())); // rol.getNombre() 
-                                                                                    // si DataInitializer lo guarda así (ej: ADMINISTADOR_SISTEMA)
+    /**
+     * Descarta las autoridades precalculadas. Se debe llamar si cambian los permisos de un rol; si no, el cambio
+     * se aplica cuando vencen (ecomarket.security.autoridades.ttl).
+     */
+    public void invalidarAutoridades() {
+        autoridadesPorRol.invalidateAll();
+    }
 
+    private Set<GrantedAuthority> autoridadesDe(Set<Rol> roles) {
+        if (roles.size() == 1) {
+            return autoridadesDe(roles.iterator().next());
+        }
+        Set<GrantedAuthority> authorities = new HashSet<>();
+        for (Rol rol : roles) {
+            authorities.addAll(autoridadesDe(rol));
         }
+        return authorities;
+    }
 
-        return new org.springframework.security.core.userdetails.User(
-                usuario.getEmail(), 
-                usuario.getPassword(), 
-                usuario.isActivo(),
-                true, 
-                true, 
-                true, 
-                authorities
-        );
+    private Set<GrantedAuthority> autoridadesDe(Rol rol) {
+        return autoridadesPorRol.get(rol.getId(), id -> {
+            Set<GrantedAuthority> authorities = new HashSet<>();
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + rol.getNombre())); // rol.getNombre()
+                                                                                    // si DataInitializer lo guarda así (ej: ADMINISTADOR_SISTEMA)
+            for (Permiso permiso : rol.getPermisos()) {
+                authorities.add(new SimpleGrantedAuthority(permiso.getNombre()));
+            }
+            return Set.copyOf(authorities);
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,235 @@
+package cl.ecomarket.ms_productos.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Diario local (append-only) de los ajustes de stock diferidos. Cada ajuste se escribe
+ * antes de confirmarse al cliente; el archivo se divide en segmentos numerados que se
+ * rotan en cada descarga a la base de datos y se borran cuando ya están aplicados.
+ * <p>
+ * Con fsync, los ajustes concurrentes comparten el force (group commit): el primero que
+ * necesita sincronizar lleva a disco todo lo escrito hasta ese momento, y los que llegan
+ * mientras tanto esperan al siguiente force en vez de hacer uno cada uno.
+ * <p>
+ * Formato de cada registro: {@code <bytes del código>:<código>\t<delta>\n}. El largo explícito
+ * permite cualquier carácter en el código (incluidos tabulación y salto de línea).
+ */
+class DiarioStock {
+
+    private static final String PREFIJO = "segmento-";
+    private static final String SUFIJO = ".log";
+
+    private final Path directorio;
+    private final boolean fsync;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition sincronizado = lock.newCondition();
+    private FileChannel canal;
+    private long segmentoActual;
+    private long escritos; // Registros escritos en el canal (acumulado entre segmentos)
+    private long sincronizados; // Registros que ya están en disco
+    private boolean sincronizando; // Hay un force en curso (fuera del lock)
+
+    DiarioStock(Path directorio, boolean fsync) {
+        this.directorio = directorio;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Lee los segmentos existentes (de una ejecución anterior).
+     * @return Por número de segmento, la suma de deltas por código.
+     */
+    Map<Long, Map<String, Long>> leerSegmentos() throws IOException {
+        Files.createDirectories(directorio);
+        Map<Long, Map<String, Long>> segmentos = new TreeMap<>();
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                Long numero = numeroDe(archivo);
+                if (numero == null) {
+                    continue;
+                }
+                segmentos.put(numero, leerRegistros(archivo));
+            }
+        }
+        return segmentos;
+    }
+
+    void abrir(long segmento) throws IOException {
+        lock.lock();
+        try {
+            segmentoActual = segmento;
+            canal = FileChannel.open(archivo(segmento), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Escribe el ajuste y, con fsync, vuelve cuando está en disco.
+     */
+    void registrar(String codigo, long delta) throws IOException {
+        byte[] bytesCodigo = codigo.getBytes(StandardCharsets.UTF_8);
+        byte[] cabecera = (bytesCodigo.length + ":").getBytes(StandardCharsets.US_ASCII);
+        byte[] cola = ("\t" + delta + "\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer registro = ByteBuffer.allocate(cabecera.length + bytesCodigo.length + cola.length)
+                .put(cabecera).put(bytesCodigo).put(cola).flip();
+        lock.lock();
+        try {
+            while (registro.hasRemaining()) {
+                canal.write(registro);
+            }
+            long propio = ++escritos;
+            if (!fsync) {
+                return;
+            }
+            while (sincronizados < propio) {
+                if (sincronizando) {
+                    sincronizado.await(); // El force en curso puede no incluir este registro: se vuelve a mirar
+                } else {
+                    sincronizar();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Se interrumpió la espera del fsync del diario de stock");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Con el lock tomado: lleva a disco todo lo escrito hasta ahora. El force corre sin el lock, así los demás
+    // ajustes siguen escribiendo mientras tanto y quedan para el force siguiente
+    private void sincronizar() throws IOException {
+        sincronizando = true;
+        long hasta = escritos;
+        FileChannel actual = canal;
+        boolean exito = false;
+        lock.unlock();
+        try {
+            actual.force(false);
+            exito = true;
+        } finally {
+            lock.lock();
+            sincronizando = false;
+            if (exito) {
+                sincronizados = Math.max(sincronizados, hasta);
+            }
+            sincronizado.signalAll(); // Si falló, otro de los que esperan lo reintenta
+        }
+    }
+
+    /**
+     * Cierra el segmento actual y abre el siguiente.
+     * @return El número del segmento cerrado.
+     */
+    long rotar() throws IOException {
+        lock.lock();
+        try {
+            // El segmento se cierra con todos sus registros en disco (incluidos los que esperan un force)
+            while (sincronizando) {
+                sincronizado.awaitUninterruptibly();
+            }
+            if (fsync && sincronizados < escritos) {
+                canal.force(false);
+                sincronizados = escritos;
+                sincronizado.signalAll();
+            }
+            long cerrado = segmentoActual;
+            canal.close();
+            abrir(cerrado + 1);
+            return cerrado;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void eliminarHasta(long segmento) throws IOException {
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                Long numero = numeroDe(archivo);
+                if (numero != null && numero <= segmento) {
+                    Files.deleteIfExists(archivo);
+                }
+            }
+        }
+    }
+
+    void cerrar() throws IOException {
+        lock.lock();
+        try {
+            if (canal != null) {
+                canal.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Solo cuentan los registros completos: si la escritura se cortó, el último queda
+    // incompleto y ese ajuste nunca se confirmó al cliente.
+    private static Map<String, Long> leerRegistros(Path archivo) throws IOException {
+        byte[] datos = Files.readAllBytes(archivo);
+        Map<String, Long> deltas = new HashMap<>();
+        int i = 0;
+        while (i < datos.length) {
+            int dosPuntos = indice(datos, (byte) ':', i);
+            if (dosPuntos < 0) {
+                break;
+            }
+            int finCodigo = dosPuntos + 1 + Integer.parseInt(ascii(datos, i, dosPuntos));
+            int finLinea = finCodigo < datos.length ? indice(datos, (byte) '\n', finCodigo) : -1;
+            if (finLinea < 0) {
+                break;
+            }
+            if (datos[finCodigo] != '\t') {
+                throw new IOException("Registro inválido en " + archivo + " (byte " + i + ")");
+            }
+            String codigo = new String(datos, dosPuntos + 1, finCodigo - dosPuntos - 1, StandardCharsets.UTF_8);
+            deltas.merge(codigo, Long.parseLong(ascii(datos, finCodigo + 1, finLinea)), Long::sum);
+            i = finLinea + 1;
+        }
+        return deltas;
+    }
+
+    private static int indice(byte[] datos, byte buscado, int desde) {
+        for (int i = desde; i < datos.length; i++) {
+            if (datos[i] == buscado) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String ascii(byte[] datos, int desde, int hasta) {
+        return new String(datos, desde, hasta - desde, StandardCharsets.US_ASCII);
+    }
+
+    private Path archivo(long segmento) {
+        return directorio.resolve(PREFIJO + segmento + SUFIJO);
+    }
+
+    private static Long numeroDe(Path archivo) {
+        String nombre = archivo.getFileName().toString();
+        if (!nombre.startsWith(PREFIJO) || !nombre.endsWith(SUFIJO)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - SUFIJO.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Exporta el catálogo completo escribiendo fila por fila en la respuesta.
+ * La memoria usada no depende del tamaño de la tabla: las entidades se leen con un
+ * cursor JDBC y se desacoplan del contexto de persistencia apenas se escriben.
+ */
+@Service
+public class ExportacionService {
+
+    public enum Formato {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final MediaType mediaType;
+        private final String extension;
+
+        Formato(String mediaType, String extension) {
+            this.mediaType = MediaType.parseMediaType(mediaType);
+            this.extension = extension;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Formato desde(String valor) {
+            try {
+                return valueOf(valor.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Formato no soportado: " + valor + " (use ndjson o csv).");
+            }
+        }
+    }
+
+    private static final String CABECERA_CSV = "id,codigo,nombre,descripcion,categoria,precio,stock\n";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ProductoRepository productoRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final AcumuladorStock acumuladorStock;
+
+    public ExportacionService(ProductoRepository productoRepository, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              AcumuladorStock acumuladorStock) {
+        this.productoRepository = productoRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.acumuladorStock = acumuladorStock;
+    }
+
+    /**
+     * Escribe todo el catálogo en la salida.
+     * @param formato NDJSON o CSV.
+     * @param salida El stream de la respuesta HTTP.
+     * @param inicioNanos El instante (System.nanoTime) en que llegó la request, para medir el tiempo al primer byte.
+     * @return La cantidad de productos exportados.
+     */
+    @Transactional(readOnly = true)
+    public long exportar(Formato formato, OutputStream salida, long inicioNanos) throws IOException {
+        String tag = formato.getExtension();
+        Counter filas = meterRegistry.counter("ecomarket.exportacion.filas", "formato", tag);
+        long total = 0;
+
+        try (Stream<Producto> productos = productoRepository.streamAll()) {
+            Iterator<Producto> it = productos.iterator();
+            if (formato == Formato.NDJSON) {
+                // El ObjectMapper de Spring Boot hace flush después de cada valor: aquí sería un chunk HTTP por producto
+                OutputStream buffer = new BufferedOutputStream(salida);
+                SequenceWriter writer = objectMapper.writer()
+                        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                        .withRootValueSeparator("\n")
+                        .writeValues(buffer);
+                while (it.hasNext()) {
+                    Producto producto = it.next();
+                    writer.write(acumuladorStock.aplicarPendientes(producto));
+                    entityManager.detach(producto);
+                    if (total++ == 0) {
+                        writer.flush();
+                        primerByte(salida, tag, inicioNanos);
+                    }
+                }
+                writer.flush();
+                if (total > 0) {
+                    buffer.write('\n'); // Un catálogo vacío es un cuerpo vacío, no una línea en blanco
+                }
+                buffer.flush();
+            } else {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+                writer.write(CABECERA_CSV);
+                while (it.hasNext()) {
+                    Producto producto = it.next();
+                    escribirCsv(writer, acumuladorStock.aplicarPendientes(producto));
+                    entityManager.detach(producto);
+                    if (total++ == 0) {
+                        writer.flush();
+                        primerByte(salida, tag, inicioNanos);
+                    }
+                }
+                writer.flush();
+            }
+        }
+
+        filas.increment(total);
+        meterRegistry.timer("ecomarket.exportacion.duracion", "formato", tag)
+                .record(System.nanoTime() - inicioNanos, TimeUnit.NANOSECONDS);
+        return total;
+    }
+
+    private void primerByte(OutputStream salida, String tag, long inicioNanos) throws IOException {
+        salida.flush();
+        Timer.builder("ecomarket.exportacion.primer.byte")
+                .description("Tiempo hasta enviar el primer producto exportado")
+                .tag("formato", tag)
+                .register(meterRegistry)
+                .record(System.nanoTime() - inicioNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static void escribirCsv(Writer writer, Producto p) throws IOException {
+        writer.write(String.valueOf(p.getId()));
+        writer.write(',');
+        writer.write(csv(p.getCodigo()));
+        writer.write(',');
+        writer.write(csv(p.getNombre()));
+        writer.write(',');
+        writer.write(csv(p.getDescripcion()));
+        writer.write(',');
+        writer.write(csv(p.getCategoria()));
+        writer.write(',');
+        writer.write(String.valueOf(p.getPrecio()));
+        writer.write(',');
+        writer.write(String.valueOf(p.getStock()));
+        writer.write('\n');
+    }
+
+    private static String csv(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+}
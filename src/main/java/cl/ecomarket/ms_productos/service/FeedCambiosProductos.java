@@ -0,0 +1,351 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.CambioProducto;
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feed de los cambios confirmados en el catálogo para /api/v1/productos/cambios (Server-Sent Events).
+ * <p>
+ * Cada cambio recibe un número de secuencia y se guarda en un buffer circular de tamaño fijo. La secuencia es el
+ * orden de llegada al feed, después del commit; el orden entre los cambios de un mismo producto lo dan su
+ * versión y su número de ajuste (ver {@link CambioProducto}). Quien escribe
+ * no envía nada: solo despierta a los suscriptores. Cada suscriptor tiene su propio hilo virtual que lee el
+ * buffer desde su posición y escribe en el socket de su cliente, así un cliente lento solo se frena a sí mismo
+ * y no acumula memoria. Si se atrasa más que el tamaño del buffer, recibe el evento {@code desincronizado} y se
+ * cierra su stream: debe volver a leer el listado y reconectarse desde la secuencia indicada. Si una escritura
+ * en su socket tarda más que ecomarket.cambios.timeout-envio, se lo expulsa y se libera su lugar.
+ * <p>
+ * El id de cada evento es {@code <época>-<secuencia>}; un cliente que reconecta con Last-Event-ID recibe
+ * los cambios siguientes. La época cambia con cada arranque del proceso, y un id de otra época (o ya
+ * fuera del buffer) también recibe {@code desincronizado}.
+ */
+@Service
+public class FeedCambiosProductos implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(FeedCambiosProductos.class);
+
+    private record Entrada(CambioProducto cambio, String categoria, String categoriaAnterior) {
+    }
+
+    /**
+     * El cliente de un stream. La implementación de {@link #suscribir} escribe en un {@link SseEmitter}.
+     */
+    interface Destino {
+        void enviar(ServerSentEvent<Object> evento) throws IOException;
+
+        void completar();
+    }
+
+    private final String epoca = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicReferenceArray<Entrada> anillo;
+    private final int maxSuscriptores;
+    private final long timeoutEnvioNanos;
+    private final Set<Suscriptor> suscriptores = ConcurrentHashMap.newKeySet();
+    // Lugares reservados: se toma uno antes de crear el suscriptor y se devuelve al cerrarlo
+    private final AtomicInteger reservados = new AtomicInteger();
+    private volatile long ultima; // Secuencia del último cambio publicado; se escribe con el lock de this
+    private Counter desincronizados;
+    private Counter expulsados;
+
+    public FeedCambiosProductos(@Value("${ecomarket.cambios.capacidad:10000}") int capacidad,
+                                @Value("${ecomarket.cambios.max-suscriptores:1000}") int maxSuscriptores,
+                                @Value("${ecomarket.cambios.timeout-envio:PT10S}") Duration timeoutEnvio) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("ecomarket.cambios.capacidad debe ser mayor a 0.");
+        }
+        this.anillo = new AtomicReferenceArray<>(capacidad);
+        this.maxSuscriptores = maxSuscriptores;
+        this.timeoutEnvioNanos = timeoutEnvio.toNanos();
+    }
+
+    /**
+     * Abre un stream de cambios.
+     * @param ultimoEvento El id del último evento recibido (Last-Event-ID), o null para recibir solo los cambios nuevos.
+     * @param categoria Solo los productos de esta categoría (incluye los que entran o salen de ella), o null.
+     * @param codigos Solo estos códigos, o null.
+     * @throws IllegalArgumentException si el id no tiene el formato de este feed.
+     * @throws FeedSaturadoException si ya hay max-suscriptores streams abiertos.
+     */
+    public SseEmitter suscribir(String ultimoEvento, String categoria, Set<String> codigos) {
+        // Sin timeout propio: vence con spring.mvc.async.request-timeout, como el resto de las respuestas asíncronas
+        SseEmitter emitter = new SseEmitter();
+        Suscriptor suscriptor = abrir(ultimoEvento, categoria, codigos, new Destino() {
+            @Override
+            public void enviar(ServerSentEvent<Object> evento) throws IOException {
+                SseEmitter.SseEventBuilder builder = SseEmitter.event();
+                if (evento.id() != null) {
+                    builder.id(evento.id());
+                }
+                if (evento.event() != null) {
+                    builder.name(evento.event());
+                }
+                if (evento.comment() != null) {
+                    builder.comment(evento.comment());
+                }
+                if (evento.data() != null) {
+                    builder.data(evento.data());
+                }
+                emitter.send(builder);
+            }
+
+            @Override
+            public void completar() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(suscriptor::cerrar);
+        emitter.onTimeout(suscriptor::cerrar);
+        emitter.onError(e -> suscriptor.cerrar());
+        return emitter;
+    }
+
+    /**
+     * Como {@link #suscribir}, con el cliente dado.
+     * @return El suscriptor, que envía desde su propio hilo virtual hasta que se cierra.
+     */
+    Suscriptor abrir(String ultimoEvento, String categoria, Set<String> codigos, Destino destino) {
+        long desde = ultima;
+        boolean vigente = true;
+        if (ultimoEvento != null && !ultimoEvento.isBlank()) {
+            int separador = ultimoEvento.indexOf('-');
+            long secuencia;
+            try {
+                secuencia = Long.parseLong(ultimoEvento.substring(separador + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Last-Event-ID no válido: " + ultimoEvento);
+            }
+            if (separador <= 0 || secuencia < 0) {
+                throw new IllegalArgumentException("Last-Event-ID no válido: " + ultimoEvento);
+            }
+            vigente = ultimoEvento.substring(0, separador).trim().equals(epoca) && secuencia <= desde;
+            desde = secuencia;
+        }
+        if (reservados.incrementAndGet() > maxSuscriptores) {
+            reservados.decrementAndGet();
+            throw new FeedSaturadoException();
+        }
+        Suscriptor suscriptor = new Suscriptor(destino, desde, Producto.normalizarCategoria(categoria), codigos);
+        suscriptor.perdido = !vigente;
+        suscriptores.add(suscriptor);
+        suscriptor.hilo = Thread.ofVirtual().name("feed-cambios").start(suscriptor::enviar);
+        return suscriptor;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarProducto(ProductoModificadoEvent evento) {
+        Producto producto = evento.producto();
+        Producto anterior = evento.anterior();
+        Producto base = producto != null ? producto : anterior;
+        synchronized (this) {
+            long secuencia = ultima + 1;
+            CambioProducto cambio = new CambioProducto(secuencia, evento.tipo(), base.getId(), base.getCodigo(),
+                    base.getVersion(), evento.ajusteDiferido(), producto != null ? producto.getNombre() : null, base.getCategoria(),
+                    producto != null ? producto.getPrecio() : null, producto != null ? producto.getStock() : null);
+            anillo.set(indice(secuencia), new Entrada(cambio, base.getCategoriaNormalizada(),
+                    anterior != null ? anterior.getCategoriaNormalizada() : null));
+            ultima = secuencia;
+        }
+        // Solo despierta los hilos de envío: ninguna escritura en un socket corre en el hilo del commit
+        suscriptores.forEach(Suscriptor::despertar);
+    }
+
+    /**
+     * Marca un comentario de latido para cada stream: mantiene abiertas las conexiones inactivas a través de
+     * proxies y hace que Spring MVC detecte pronto a los clientes que se desconectaron.
+     */
+    @Scheduled(fixedDelayString = "${ecomarket.cambios.latido-ms:15000}")
+    public void latir() {
+        suscriptores.forEach(s -> {
+            s.latido = true;
+            s.despertar();
+        });
+    }
+
+    /**
+     * Expulsa a los clientes cuya escritura en curso lleva más de timeout-envio: su hilo se interrumpe
+     * (lo que cierra la conexión) y su lugar queda libre.
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void expulsarLentos() {
+        long ahora = System.nanoTime();
+        for (Suscriptor suscriptor : suscriptores) {
+            long desde = suscriptor.enviandoDesde;
+            if (desde != 0 && ahora - desde > timeoutEnvioNanos) {
+                log.warn("Se expulsa un cliente del feed de cambios: una escritura lleva más de {} ms.",
+                        timeoutEnvioNanos / 1_000_000);
+                if (expulsados != null) {
+                    expulsados.increment();
+                }
+                suscriptor.cerrar();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        suscriptores.forEach(Suscriptor::cerrar);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ecomarket.cambios.suscriptores", suscriptores, Set::size)
+                .description("Streams abiertos en el feed de cambios de productos")
+                .register(registry);
+        desincronizados = Counter.builder("ecomarket.cambios.desincronizados")
+                .description("Streams cerrados porque el cliente se atrasó más que el buffer o reanudó desde un id vencido")
+                .register(registry);
+        expulsados = Counter.builder("ecomarket.cambios.expulsados")
+                .description("Streams cerrados porque una escritura en el socket del cliente superó timeout-envio")
+                .register(registry);
+    }
+
+    private int indice(long secuencia) {
+        return (int) (secuencia % anillo.length());
+    }
+
+    final class Suscriptor {
+        final Destino destino;
+        final String categoria;
+        final Set<String> codigos;
+        final AtomicBoolean cerrado = new AtomicBoolean();
+        volatile Thread hilo;
+        long cursor; // Última secuencia revisada; solo la modifica el hilo de envío
+        boolean perdido; // El siguiente cambio ya no está en el buffer (o el id de reanudación venció)
+        volatile boolean latido;
+        volatile long enviandoDesde; // System.nanoTime() al empezar la escritura en curso, 0 si no hay una
+
+        Suscriptor(Destino destino, long cursor, String categoria, Set<String> codigos) {
+            this.destino = destino;
+            this.cursor = cursor;
+            this.categoria = categoria;
+            this.codigos = codigos;
+        }
+
+        void despertar() {
+            LockSupport.unpark(hilo);
+        }
+
+        /**
+         * Termina el stream y libera su lugar; se puede llamar más de una vez y desde cualquier hilo.
+         */
+        void cerrar() {
+            if (!cerrado.compareAndSet(false, true)) {
+                return;
+            }
+            suscriptores.remove(this);
+            reservados.decrementAndGet();
+            Thread actual = hilo;
+            if (actual == null || actual == Thread.currentThread()) {
+                completar();
+            } else {
+                actual.interrupt();
+                // Completar espera a que termine la escritura en curso: no se bloquea a quien expulsa
+                Thread.ofVirtual().name("feed-cambios-cierre").start(this::completar);
+            }
+        }
+
+        private void completar() {
+            try {
+                destino.completar();
+            } catch (RuntimeException e) {
+                // El stream ya estaba terminado
+            }
+        }
+
+        // El hilo de envío: espera cambios (o un latido) y los escribe de a uno, al ritmo del cliente
+        private void enviar() {
+            try {
+                while (!cerrado.get()) {
+                    if (latido) {
+                        latido = false;
+                        escribir(ServerSentEvent.builder().comment("latido").build());
+                    }
+                    while (!perdido && cursor < ultima && !cerrado.get()) {
+                        Entrada entrada = anillo.get(indice(cursor + 1));
+                        if (entrada == null || entrada.cambio().secuencia() != cursor + 1) {
+                            perdido = true; // Se sobrescribió antes de que el cliente lo leyera
+                            break;
+                        }
+                        if (acepta(entrada)) {
+                            escribir(ServerSentEvent.builder()
+                                    .id(epoca + '-' + entrada.cambio().secuencia())
+                                    .event(entrada.cambio().tipo().name())
+                                    .data(entrada.cambio())
+                                    .build());
+                        }
+                        cursor++;
+                    }
+                    if (perdido) {
+                        desincronizar();
+                        return;
+                    }
+                    // unpark antes de park no se pierde: el park siguiente retorna de inmediato
+                    while (!cerrado.get() && !latido && cursor >= ultima) {
+                        LockSupport.park(this);
+                        if (Thread.interrupted()) {
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // El cliente se desconectó (o fue expulsado)
+            } finally {
+                cerrar();
+            }
+        }
+
+        private void escribir(ServerSentEvent<Object> evento) throws IOException {
+            enviandoDesde = System.nanoTime();
+            try {
+                destino.enviar(evento);
+            } finally {
+                enviandoDesde = 0;
+            }
+        }
+
+        // El id lleva la secuencia actual: al reconectar, el cliente recibe lo que cambie después de releer
+        private void desincronizar() throws IOException {
+            if (desincronizados != null) {
+                desincronizados.increment();
+            }
+            long actual = ultima;
+            escribir(ServerSentEvent.builder()
+                    .id(epoca + '-' + actual)
+                    .event("desincronizado")
+                    .data(Map.of("secuencia", actual,
+                            "mensaje", "Se perdieron cambios: vuelva a leer los productos y reconéctese con este id."))
+                    .build());
+        }
+
+        boolean acepta(Entrada entrada) {
+            if (codigos != null && !codigos.contains(entrada.cambio().codigo())) {
+                return false;
+            }
+            return categoria == null || categoria.equals(entrada.categoria()) || categoria.equals(entrada.categoriaAnterior());
+        }
+    }
+}
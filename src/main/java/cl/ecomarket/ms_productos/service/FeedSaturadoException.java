@@ -0,0 +1,11 @@
+package cl.ecomarket.ms_productos.service;
+
+/**
+ * Indica que el feed de cambios ya tiene abiertos todos los streams permitidos (ecomarket.cambios.max-suscriptores).
+ */
+public class FeedSaturadoException extends RuntimeException {
+
+    public FeedSaturadoException() {
+        super("Hay demasiados clientes conectados al feed de cambios, reintente en un momento.");
+    }
+}
@@ -0,0 +1,379 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.ErrorImportacion;
+import cl.ecomarket.ms_productos.dto.ResultadoImportacion;
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Importación masiva de productos desde NDJSON o CSV (el mismo formato de la exportación).
+ * <p>
+ * El archivo se lee en streaming y se procesa por lotes: cada lote se valida, busca los códigos
+ * existentes con una sola consulta y hace upsert en su propia transacción, con los INSERT y UPDATE
+ * agrupados en batch JDBC. Un lote que falla no revierte los anteriores; sus filas se reportan como error.
+ */
+@Service
+public class ImportacionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportacionService.class);
+    private static final int MAX_ERRORES_REPORTADOS = 1000;
+    private static final long INTERVALO_PROGRESO_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // Una fila leída del archivo: el producto, o el motivo por el que no se pudo leer
+    private record Fila(long numero, Producto producto, String error) {
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ProductoRepository productoRepository;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AcumuladorStock acumuladorStock;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final int tamanoLote;
+
+    public ImportacionService(ProductoRepository productoRepository,
+                              ObjectMapper objectMapper,
+                              Validator validator,
+                              ApplicationEventPublisher eventPublisher,
+                              AcumuladorStock acumuladorStock,
+                              MeterRegistry meterRegistry,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${ecomarket.importacion.tamano-lote:1000}") int tamanoLote) {
+        this.productoRepository = productoRepository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.acumuladorStock = acumuladorStock;
+        this.meterRegistry = meterRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tamanoLote = tamanoLote;
+    }
+
+    /**
+     * Importa los productos del archivo. Si el código ya existe, el producto se actualiza.
+     * @param formato NDJSON o CSV (con cabecera; la columna id se ignora).
+     * @param entrada El cuerpo de la request.
+     * @return El resumen de la importación con el detalle de las filas rechazadas.
+     */
+    public ResultadoImportacion importar(ExportacionService.Formato formato, InputStream entrada) throws IOException {
+        Progreso progreso = new Progreso();
+        Reader reader = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        List<Fila> lote = new ArrayList<>(tamanoLote);
+
+        if (formato == ExportacionService.Formato.NDJSON) {
+            BufferedReader lineas = (BufferedReader) reader;
+            String linea;
+            long numero = 0;
+            while ((linea = lineas.readLine()) != null) {
+                numero++;
+                if (linea.isBlank()) {
+                    continue;
+                }
+                lote.add(leerJson(numero, linea));
+                if (lote.size() == tamanoLote) {
+                    procesar(lote, progreso);
+                }
+            }
+        } else {
+            LectorCsv csv = new LectorCsv(reader);
+            Map<String, Integer> columnas = cabecera(csv.siguiente());
+            List<String> campos;
+            long numero = 0;
+            while ((campos = csv.siguiente()) != null) {
+                numero++;
+                if (campos.size() == 1 && campos.get(0).isBlank()) {
+                    continue;
+                }
+                lote.add(leerCsv(numero, campos, columnas));
+                if (lote.size() == tamanoLote) {
+                    procesar(lote, progreso);
+                }
+            }
+        }
+        if (!lote.isEmpty()) {
+            procesar(lote, progreso);
+        }
+
+        double segundos = (System.nanoTime() - progreso.inicio) / 1e9;
+        log.info("Importación terminada: {} filas en {} s ({} creados, {} actualizados, {} con error).",
+                progreso.filas, String.format("%.1f", segundos), progreso.creados, progreso.actualizados, progreso.conError);
+        return new ResultadoImportacion(progreso.filas, progreso.creados, progreso.actualizados,
+                progreso.conError, progreso.errores);
+    }
+
+    private void procesar(List<Fila> lote, Progreso progreso) {
+        // Validación y duplicados dentro del lote, sin tocar la base de datos
+        Map<String, Producto> validos = new LinkedHashMap<>(); // Los ids se asignan en el orden del archivo
+        for (Fila fila : lote) {
+            progreso.filas++;
+            if (fila.error() != null) {
+                progreso.error(fila.numero(), fila.producto() != null ? fila.producto().getCodigo() : null, fila.error());
+                continue;
+            }
+            Producto producto = fila.producto();
+            Set<ConstraintViolation<Producto>> violaciones = validator.validate(producto);
+            if (!violaciones.isEmpty()) {
+                progreso.error(fila.numero(), producto.getCodigo(), violaciones.stream()
+                        .map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(" ")));
+            } else if (progreso.codigos.contains(producto.getCodigo())
+                    || validos.putIfAbsent(producto.getCodigo(), producto) != null) {
+                progreso.error(fila.numero(), producto.getCodigo(), "Código repetido en el archivo: " + producto.getCodigo());
+            }
+        }
+
+        if (!validos.isEmpty()) {
+            try {
+                // Las filas fijan el stock absoluto: los ajustes diferidos de estos códigos esperan hasta el commit
+                acumuladorStock.bloquear(validos.keySet());
+                int[] creadosYActualizados;
+                try {
+                    creadosYActualizados = transactionTemplate.execute(status -> upsert(validos));
+                } finally {
+                    acumuladorStock.sincronizar(validos.keySet());
+                }
+                progreso.codigos.addAll(validos.keySet());
+                progreso.creados += creadosYActualizados[0];
+                progreso.actualizados += creadosYActualizados[1];
+            } catch (RuntimeException e) {
+                log.warn("Falló un lote de la importación ({} productos): {}", validos.size(), e.getMessage());
+                String motivo = "No se pudo guardar el lote: " + e.getMessage();
+                for (Fila fila : lote) {
+                    if (fila.producto() != null && validos.get(fila.producto().getCodigo()) == fila.producto()) {
+                        progreso.error(fila.numero(), fila.producto().getCodigo(), motivo);
+                    }
+                }
+            }
+        }
+        lote.clear();
+        progreso.informar();
+    }
+
+    private int[] upsert(Map<String, Producto> productos) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(tamanoLote);
+        Map<String, Producto> existentes = new HashMap<>();
+        for (Producto producto : productoRepository.findByCodigoIn(productos.keySet())) {
+            existentes.put(producto.getCodigo(), producto);
+        }
+
+        int creados = 0;
+        int actualizados = 0;
+        List<ProductoModificadoEvent> eventos = new ArrayList<>(productos.size());
+        for (Producto nuevo : productos.values()) {
+            Producto existente = existentes.get(nuevo.getCodigo());
+            if (existente == null) {
+                nuevo.setId(null);
+                nuevo.setVersion(null);
+                entityManager.persist(nuevo);
+                eventos.add(new ProductoModificadoEvent(ProductoModificadoEvent.Tipo.CREADO, nuevo, null));
+                creados++;
+            } else {
+                Producto anterior = existente.copiar();
+                existente.setNombre(nuevo.getNombre());
+                existente.setDescripcion(nuevo.getDescripcion());
+                existente.setCategoria(nuevo.getCategoria());
+                existente.setPrecio(nuevo.getPrecio());
+                existente.setStock(nuevo.getStock());
+                eventos.add(new ProductoModificadoEvent(ProductoModificadoEvent.Tipo.ACTUALIZADO, existente, anterior));
+                actualizados++;
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        // Se publican después del flush para que los productos nuevos ya tengan id y versión
+        for (ProductoModificadoEvent evento : eventos) {
+            eventPublisher.publishEvent(new ProductoModificadoEvent(evento.tipo(), evento.producto().copiar(), evento.anterior()));
+        }
+        return new int[]{creados, actualizados};
+    }
+
+    private Fila leerJson(long numero, String linea) {
+        try {
+            Producto producto = objectMapper.readValue(linea, Producto.class);
+            return new Fila(numero, producto, null);
+        } catch (JsonProcessingException e) {
+            return new Fila(numero, null, "JSON inválido: " + e.getOriginalMessage());
+        }
+    }
+
+    private static Map<String, Integer> cabecera(List<String> campos) {
+        if (campos == null) {
+            throw new IllegalArgumentException("El archivo CSV está vacío.");
+        }
+        Map<String, Integer> columnas = new HashMap<>();
+        for (int i = 0; i < campos.size(); i++) {
+            columnas.put(campos.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String requerida : List.of("codigo", "nombre", "precio", "stock")) {
+            if (!columnas.containsKey(requerida)) {
+                throw new IllegalArgumentException("Falta la columna '" + requerida + "' en la cabecera CSV.");
+            }
+        }
+        return columnas;
+    }
+
+    private static Fila leerCsv(long numero, List<String> campos, Map<String, Integer> columnas) {
+        Producto producto = new Producto();
+        producto.setCodigo(campo(campos, columnas, "codigo"));
+        producto.setNombre(campo(campos, columnas, "nombre"));
+        producto.setDescripcion(campo(campos, columnas, "descripcion"));
+        producto.setCategoria(campo(campos, columnas, "categoria"));
+        try {
+            String precio = campo(campos, columnas, "precio");
+            String stock = campo(campos, columnas, "stock");
+            producto.setPrecio(precio != null ? Double.valueOf(precio) : null);
+            producto.setStock(stock != null ? Integer.valueOf(stock) : null);
+        } catch (NumberFormatException e) {
+            return new Fila(numero, producto, "Precio o stock no numérico.");
+        }
+        return new Fila(numero, producto, null);
+    }
+
+    private static String campo(List<String> campos, Map<String, Integer> columnas, String nombre) {
+        Integer indice = columnas.get(nombre);
+        if (indice == null || indice >= campos.size()) {
+            return null;
+        }
+        String valor = campos.get(indice);
+        return valor.isEmpty() ? null : valor;
+    }
+
+    private final class Progreso {
+        final long inicio = System.nanoTime();
+        long ultimoInforme = inicio;
+        long filas;
+        long creados;
+        long actualizados;
+        long conError;
+        long contadas; // Filas ya sumadas a la métrica
+        final List<ErrorImportacion> errores = new ArrayList<>();
+        // Códigos ya guardados por lotes anteriores: una fila repetida en otro lote también es un error
+        final Set<String> codigos = new HashSet<>();
+
+        void error(long numero, String codigo, String motivo) {
+            conError++;
+            if (errores.size() < MAX_ERRORES_REPORTADOS) {
+                errores.add(new ErrorImportacion(numero, codigo, motivo));
+            }
+        }
+
+        void informar() {
+            meterRegistry.counter("ecomarket.importacion.filas").increment(filas - contadas);
+            contadas = filas;
+            long ahora = System.nanoTime();
+            if (ahora - ultimoInforme >= INTERVALO_PROGRESO_NANOS) {
+                ultimoInforme = ahora;
+                double segundos = (ahora - inicio) / 1e9;
+                log.info("Importación en curso: {} filas ({} filas/s), {} con error.",
+                        filas, String.format("%.0f", filas / segundos), conError);
+            }
+        }
+    }
+
+    /**
+     * Lector CSV mínimo (RFC 4180): campos entre comillas con comas, saltos de línea y comillas dobladas.
+     */
+    private static final class LectorCsv {
+        private final Reader reader;
+        private int siguiente = -2; // -2: aún no leído
+
+        LectorCsv(Reader reader) {
+            this.reader = reader;
+        }
+
+        List<String> siguiente() throws IOException {
+            int c = leer();
+            if (c == -1) {
+                return null;
+            }
+            List<String> campos = new ArrayList<>();
+            StringBuilder campo = new StringBuilder();
+            boolean entreComillas = false;
+            while (true) {
+                if (entreComillas) {
+                    if (c == -1) {
+                        break;
+                    } else if (c == '"') {
+                        if (mirar() == '"') {
+                            leer();
+                            campo.append('"');
+                        } else {
+                            entreComillas = false;
+                        }
+                    } else {
+                        campo.append((char) c);
+                    }
+                } else if (c == '"') {
+                    entreComillas = true;
+                } else if (c == ',') {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    break;
+                } else if (c == '\r') {
+                    if (mirar() == '\n') {
+                        leer();
+                    }
+                    break;
+                } else {
+                    campo.append((char) c);
+                }
+                c = leer();
+            }
+            campos.add(campo.toString());
+            return campos;
+        }
+
+        private int leer() throws IOException {
+            if (siguiente != -2) {
+                int c = siguiente;
+                siguiente = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        private int mirar() throws IOException {
+            if (siguiente == -2) {
+                siguiente = reader.read();
+            }
+            return siguiente;
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.ResultadoBusqueda;
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Índice invertido en memoria sobre nombre, código y descripción de los productos.
+ * <p>
+ * Cada campo tiene su propio diccionario token → ids. Para soportar búsquedas por
+ * subcadena (como el LIKE %x% que reemplaza) existe además un índice de trigramas sobre
+ * el vocabulario: un término de búsqueda se resuelve primero a los tokens que lo contienen
+ * y luego a los productos. Se construye al iniciar y se mantiene con los eventos de
+ * {@link ProductoModificadoEvent}, así que las búsquedas no consultan la base de datos.
+ * <p>
+ * Los eventos se aplican después del commit, en el hilo de cada transacción, y pueden llegar
+ * en otro orden que el de los commits: un producto solo se reemplaza por una versión igual o
+ * más nueva, y un producto eliminado no vuelve con un evento atrasado.
+ */
+@Component
+public class IndiceBusquedaProductos {
+
+    private static final Logger log = LoggerFactory.getLogger(IndiceBusquedaProductos.class);
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+
+    // Peso de una coincidencia por campo; una coincidencia exacta del token vale el doble
+    private static final int PESO_CODIGO = 5;
+    private static final int PESO_NOMBRE = 3;
+    private static final int PESO_DESCRIPCION = 1;
+
+    // nombreNormalizado: para comprobar la búsqueda por nombre (contiene) sin normalizar en cada consulta
+    private record Documento(Producto producto, String[] codigo, String[] nombre, String[] descripcion,
+                             String nombreNormalizado) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Long, Documento> documentos = new TreeMap<>(); // En orden de id, como el listado
+    private final Map<String, Postings> porCodigo = new HashMap<>();
+    private final Map<String, Postings> porNombre = new HashMap<>();
+    private final Map<String, Postings> porDescripcion = new HashMap<>();
+    private final TreeMap<String, Integer> vocabulario = new TreeMap<>(); // token → cantidad de campos que lo usan
+    private final Map<String, Set<String>> trigramas = new HashMap<>(); // trigrama → tokens del vocabulario
+    // id → versión con la que se eliminó; los eventos atrasados llegan milisegundos después del commit
+    private final Cache<Long, Long> eliminados = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+    private volatile boolean listo;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ProductoRepository productoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean habilitado;
+
+    public IndiceBusquedaProductos(ProductoRepository productoRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${ecomarket.busqueda.indice.habilitado:true}") boolean habilitado) {
+        this.productoRepository = productoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.habilitado = habilitado;
+    }
+
+    /**
+     * @return true si el índice está habilitado y terminó de construirse.
+     */
+    public boolean isListo() {
+        return listo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void construir() {
+        if (!habilitado) {
+            return;
+        }
+        long inicio = System.currentTimeMillis();
+        // Se mantiene el lock de escritura mientras se construye: los eventos que lleguen
+        // entretanto esperan y se aplican sobre el índice completo.
+        lock.writeLock().lock();
+        try {
+            int total = transactionTemplate.execute(status -> {
+                int n = 0;
+                try (Stream<Producto> productos = productoRepository.streamAll()) {
+                    for (Producto producto : (Iterable<Producto>) productos::iterator) {
+                        indexarSinLock(producto.copiar());
+                        if (++n % 1000 == 0) {
+                            entityManager.clear();
+                        }
+                    }
+                }
+                return n;
+            });
+            listo = true;
+            log.info("Índice de búsqueda construido con {} productos y {} tokens en {} ms.",
+                    total, vocabulario.size(), System.currentTimeMillis() - inicio);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void alModificarProducto(ProductoModificadoEvent evento) {
+        if (!habilitado) {
+            return;
+        }
+        if (evento.tipo() == ProductoModificadoEvent.Tipo.ELIMINADO) {
+            eliminar(evento.anterior());
+        } else {
+            indexar(evento.producto());
+        }
+    }
+
+    public void indexar(Producto producto) {
+        lock.writeLock().lock();
+        try {
+            indexarSinLock(producto);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(Producto producto) {
+        lock.writeLock().lock();
+        try {
+            eliminados.put(producto.getId(), version(producto));
+            Documento documento = documentos.get(producto.getId());
+            if (documento != null && version(documento.producto()) <= version(producto)) {
+                documentos.remove(producto.getId());
+                desindexar(documento);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca productos cuyo código, nombre o descripción contengan todos los términos de la consulta.
+     * @param consulta El texto ingresado por el usuario.
+     * @param pagina El número de página, desde 0.
+     * @param tamano La cantidad de productos por página.
+     * @return Los productos de la página ordenados por relevancia y el total de coincidencias.
+     */
+    public ResultadoBusqueda buscar(String consulta, int pagina, int tamano) {
+        Set<String> terminos = tokenizar(consulta);
+        if (terminos.isEmpty()) {
+            return new ResultadoBusqueda(List.of(), 0);
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Integer> puntajes = null;
+            for (String termino : terminos) {
+                Map<Long, Integer> porTermino = new HashMap<>();
+                for (String token : tokensQueContienen(termino)) {
+                    int multiplicador = token.equals(termino) ? 2 : 1;
+                    acumular(porTermino, porCodigo.get(token), PESO_CODIGO * multiplicador);
+                    acumular(porTermino, porNombre.get(token), PESO_NOMBRE * multiplicador);
+                    acumular(porTermino, porDescripcion.get(token), PESO_DESCRIPCION * multiplicador);
+                }
+                if (puntajes == null) {
+                    puntajes = porTermino;
+                } else {
+                    // Todos los términos deben coincidir (AND)
+                    puntajes.keySet().retainAll(porTermino.keySet());
+                    for (Map.Entry<Long, Integer> e : puntajes.entrySet()) {
+                        e.setValue(e.getValue() + porTermino.get(e.getKey()));
+                    }
+                }
+                if (puntajes.isEmpty()) {
+                    return new ResultadoBusqueda(List.of(), 0);
+                }
+            }
+
+            List<Map.Entry<Long, Integer>> ordenados = new ArrayList<>(puntajes.entrySet());
+            ordenados.sort(Map.Entry.<Long, Integer>comparingByValue(Comparator.reverseOrder())
+                    .thenComparing(Map.Entry.comparingByKey()));
+            int desde = (int) Math.min((long) pagina * tamano, ordenados.size());
+            int hasta = Math.min(desde + tamano, ordenados.size());
+            List<Producto> productos = new ArrayList<>(hasta - desde);
+            for (Map.Entry<Long, Integer> e : ordenados.subList(desde, hasta)) {
+                productos.add(documentos.get(e.getKey()).producto());
+            }
+            return new ResultadoBusqueda(productos, ordenados.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Productos cuyo nombre contiene el texto, como el LIKE %x% de la búsqueda por nombre (sin distinguir
+     * mayúsculas ni acentos), en orden de id a partir del cursor.
+     * @param texto El texto buscado.
+     * @param after El último id de la página anterior (0 para la primera).
+     * @param limite La cantidad máxima de productos.
+     * @return Los productos que coinciden, o null si el texto no tiene letras ni números (el índice no lo resuelve).
+     */
+    public List<Producto> porNombre(String texto, long after, int limite) {
+        Set<String> terminos = tokenizar(texto);
+        if (terminos.isEmpty()) {
+            return null;
+        }
+        String buscado = normalizar(texto);
+        lock.readLock().lock();
+        try {
+            // Un nombre que contiene el texto completo contiene cada uno de sus términos: basta con recorrer los
+            // productos del término más selectivo y comprobar el texto completo. Los términos de menos de
+            // 3 letras también pueden estar dentro de un token (no solo al inicio) y no acotan la búsqueda
+            List<Postings> candidatos = null;
+            long menor = Long.MAX_VALUE;
+            for (String termino : terminos) {
+                if (termino.length() < 3) {
+                    continue;
+                }
+                List<Postings> conTermino = new ArrayList<>();
+                long cantidad = 0;
+                for (String token : tokensQueContienen(termino)) {
+                    Postings postings = porNombre.get(token);
+                    if (postings != null) {
+                        conTermino.add(postings);
+                        cantidad += postings.tamano;
+                    }
+                }
+                if (cantidad < menor) {
+                    menor = cantidad;
+                    candidatos = conTermino;
+                }
+            }
+            List<Producto> productos = new ArrayList<>(Math.min(limite, 64));
+            if (candidatos == null) {
+                for (Documento documento : documentos.tailMap(after, false).values()) {
+                    if (documento.nombreNormalizado().contains(buscado)) {
+                        productos.add(documento.producto());
+                        if (productos.size() == limite) {
+                            break;
+                        }
+                    }
+                }
+                return productos;
+            }
+            // Mezcla en orden de id de las listas de los tokens (un producto puede estar en varias)
+            PriorityQueue<Recorrido> recorridos = new PriorityQueue<>(Math.max(candidatos.size(), 1));
+            for (Postings postings : candidatos) {
+                int posicion = postings.siguiente(after);
+                if (posicion < postings.tamano) {
+                    recorridos.add(new Recorrido(postings, posicion));
+                }
+            }
+            long ultimo = after;
+            while (!recorridos.isEmpty() && productos.size() < limite) {
+                Recorrido recorrido = recorridos.poll();
+                long id = recorrido.id();
+                if (++recorrido.posicion < recorrido.postings.tamano) {
+                    recorridos.add(recorrido);
+                }
+                if (id == ultimo) {
+                    continue;
+                }
+                ultimo = id;
+                Documento documento = documentos.get(id);
+                if (documento.nombreNormalizado().contains(buscado)) {
+                    productos.add(documento.producto());
+                }
+            }
+            return productos;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void indexarSinLock(Producto producto) {
+        Documento anterior = documentos.get(producto.getId());
+        Long versionEliminado = eliminados.getIfPresent(producto.getId());
+        if ((anterior != null && version(anterior.producto()) > version(producto))
+                || (versionEliminado != null && versionEliminado >= version(producto))) {
+            return; // Evento atrasado: el índice ya tiene un estado más nuevo
+        }
+        String[] codigo = tokensCodigo(producto.getCodigo());
+        String[] nombre = tokenizar(producto.getNombre()).toArray(String[]::new);
+        String[] descripcion = tokenizar(producto.getDescripcion()).toArray(String[]::new);
+
+        if (anterior != null && Arrays.equals(anterior.codigo(), codigo) && Arrays.equals(anterior.nombre(), nombre)
+                && Arrays.equals(anterior.descripcion(), descripcion)) {
+            // Solo cambiaron campos no indexados (stock, precio...): basta con reemplazar el producto
+            documentos.put(producto.getId(), new Documento(producto, codigo, nombre, descripcion, anterior.nombreNormalizado()));
+            return;
+        }
+        if (anterior != null) {
+            desindexar(anterior);
+        }
+        Documento documento = new Documento(producto, codigo, nombre, descripcion, normalizar(producto.getNombre()));
+        documentos.put(producto.getId(), documento);
+        agregar(porCodigo, codigo, producto.getId());
+        agregar(porNombre, nombre, producto.getId());
+        agregar(porDescripcion, descripcion, producto.getId());
+    }
+
+    private void desindexar(Documento documento) {
+        Long id = documento.producto().getId();
+        quitar(porCodigo, documento.codigo(), id);
+        quitar(porNombre, documento.nombre(), id);
+        quitar(porDescripcion, documento.descripcion(), id);
+    }
+
+    private void agregar(Map<String, Postings> campo, String[] tokens, long id) {
+        for (String token : tokens) {
+            Postings postings = campo.get(token);
+            if (postings == null) {
+                postings = new Postings();
+                campo.put(token, postings);
+                if (vocabulario.merge(token, 1, Integer::sum) == 1) {
+                    for (String trigrama : trigramasDe(token)) {
+                        trigramas.computeIfAbsent(trigrama, t -> new HashSet<>()).add(token);
+                    }
+                }
+            }
+            postings.agregar(id);
+        }
+    }
+
+    private void quitar(Map<String, Postings> campo, String[] tokens, long id) {
+        for (String token : tokens) {
+            Postings postings = campo.get(token);
+            if (postings == null) {
+                continue;
+            }
+            postings.quitar(id);
+            if (postings.tamano == 0) {
+                campo.remove(token);
+                if (vocabulario.merge(token, -1, Integer::sum) == 0) {
+                    vocabulario.remove(token);
+                    for (String trigrama : trigramasDe(token)) {
+                        Set<String> conTrigrama = trigramas.get(trigrama);
+                        if (conTrigrama != null && conTrigrama.remove(token) && conTrigrama.isEmpty()) {
+                            trigramas.remove(trigrama);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Tokens del vocabulario que contienen el término como subcadena
+    private Set<String> tokensQueContienen(String termino) {
+        if (termino.length() < 3) {
+            // Términos cortos: solo por prefijo, recorriendo el rango ordenado del vocabulario
+            return vocabulario.subMap(termino, termino + Character.MAX_VALUE).keySet();
+        }
+        Set<String> candidatos = null;
+        for (String trigrama : trigramasDe(termino)) {
+            Set<String> tokens = trigramas.get(trigrama);
+            if (tokens == null) {
+                return Set.of();
+            }
+            if (candidatos == null) {
+                candidatos = new HashSet<>(tokens);
+            } else {
+                candidatos.retainAll(tokens);
+            }
+        }
+        candidatos.removeIf(token -> !token.contains(termino));
+        return candidatos;
+    }
+
+    private static void acumular(Map<Long, Integer> puntajes, Postings postings, int peso) {
+        if (postings == null) {
+            return;
+        }
+        for (int i = 0; i < postings.tamano; i++) {
+            puntajes.merge(postings.ids[i], peso, Math::max);
+        }
+    }
+
+    private static long version(Producto producto) {
+        return producto.getVersion() != null ? producto.getVersion() : 0L;
+    }
+
+    private static Set<String> trigramasDe(String token) {
+        Set<String> resultado = new HashSet<>();
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            resultado.add(token.substring(i, i + 3));
+        }
+        return resultado;
+    }
+
+    private static String[] tokensCodigo(String codigo) {
+        Set<String> tokens = tokenizar(codigo);
+        String completo = normalizar(codigo);
+        if (!completo.isEmpty()) {
+            tokens.add(completo); // El código completo también se indexa tal cual (ej: "cod-001")
+        }
+        return tokens.toArray(String[]::new);
+    }
+
+    static Set<String> tokenizar(String texto) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (texto == null) {
+            return tokens;
+        }
+        for (String token : SEPARADORES.split(normalizar(texto))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinAcentos = DIACRITICOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return sinAcentos.toLowerCase(Locale.ROOT).trim();
+    }
+
+    // Lista ordenada de ids sin boxing; con cientos de miles de productos evita millones de Long en HashSets.
+    // Los productos nuevos tienen el mayor id y se agregan al final; solo al reindexar uno existente se desplaza
+    private static final class Postings {
+        private long[] ids = new long[4];
+        private int tamano;
+
+        void agregar(long id) {
+            if (tamano == ids.length) {
+                ids = Arrays.copyOf(ids, tamano * 2);
+            }
+            int posicion = tamano == 0 || ids[tamano - 1] < id ? tamano : siguiente(id - 1);
+            System.arraycopy(ids, posicion, ids, posicion + 1, tamano - posicion);
+            ids[posicion] = id;
+            tamano++;
+        }
+
+        void quitar(long id) {
+            int posicion = siguiente(id - 1);
+            if (posicion < tamano && ids[posicion] == id) {
+                System.arraycopy(ids, posicion + 1, ids, posicion, tamano - posicion - 1);
+                tamano--;
+            }
+        }
+
+        // Posición del primer id mayor al dado
+        int siguiente(long id) {
+            int bajo = 0;
+            int alto = tamano;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (ids[medio] <= id) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo;
+        }
+    }
+
+    private static final class Recorrido implements Comparable<Recorrido> {
+        private final Postings postings;
+        private int posicion;
+
+        Recorrido(Postings postings, int posicion) {
+            this.postings = postings;
+            this.posicion = posicion;
+        }
+
+        long id() {
+            return postings.ids[posicion];
+        }
+
+        @Override
+        public int compareTo(Recorrido otro) {
+            return Long.compare(id(), otro.id());
+        }
+    }
+}
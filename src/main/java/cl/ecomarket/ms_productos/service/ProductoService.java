@@ -1,55 +1,150 @@
 package cl.ecomarket.ms_productos.service;
 
+import cl.ecomarket.ms_productos.dto.AjusteStock;
+import cl.ecomarket.ms_productos.dto.FacetaCategoria;
+import cl.ecomarket.ms_productos.dto.PaginaCampos;
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.dto.ResultadoAjusteStock;
+import cl.ecomarket.ms_productos.dto.ResultadoBusqueda;
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
 import cl.ecomarket.ms_productos.model.Producto;
 import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.Tuple;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 
 @Service
 public class ProductoService {
 
+    // Campos que se pueden pedir con el parámetro fields, en el orden en que se serializan
+    private static final List<String> CAMPOS = List.of(
+            "id", "codigo", "nombre", "descripcion", "categoria", "precio", "stock", "version");
+
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private IndiceBusquedaProductos indiceBusqueda;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private AcumuladorStock acumuladorStock;
+
+    @Autowired
+    private CacheProductos cacheProductos;
+
+    @Autowired
+    private CatalogoEnMemoria catalogo;
+
+    @Autowired
+    private AgregadosCategorias agregadosCategorias;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ecomarket.productos.pagina.limite-por-defecto:50}")
+    private int limitePorDefecto;
+
+    @Value("${ecomarket.productos.pagina.limite-maximo:500}")
+    private int limiteMaximo;
+
+    @Value("${ecomarket.stock.lote.max-lineas:500}")
+    private int maxLineasLote;
+
+    public int getLimitePorDefecto() {
+        return limitePorDefecto;
+    }
+
+    /**
+     * Tamaño de página de GET /api/v1/productos. Sin limit se usa el límite por defecto: el listado siempre se
+     * pagina, y el catálogo completo se obtiene con /api/v1/productos/exportar.
+     * @return El limit validado, o el límite por defecto.
+     * @throws IllegalArgumentException si limit está fuera de rango.
+     */
+    public int limiteDePagina(Integer limit) {
+        if (limit == null) {
+            return limitePorDefecto;
+        }
+        validarLimite(limit);
+        return limit;
+    }
+
     @Transactional(readOnly = true)
     public List<Producto> getAllProductos() {
-        return productoRepository.findAll();
+        return conPendientes(productoRepository.findAll());
     }
 
-    @Transactional(readOnly = true)
+    // Sin @Transactional: un acierto en la cache (o el snapshot del catálogo) no debe tomar una conexión del pool
     public Optional<Producto> getProductoById(Long id) {
-        return productoRepository.findById(id);
+        Optional<Producto> producto = catalogo.isListo()
+                ? catalogo.porId(id)
+                : cacheProductos.porId(id, productoRepository::findById);
+        return producto.map(acumuladorStock::aplicarPendientes);
     }
 
-    @Transactional(readOnly = true)
     public Optional<Producto> getProductoByCodigo(String codigo) {
-        return productoRepository.findByCodigo(codigo);
+        Optional<Producto> producto = catalogo.isListo()
+                ? catalogo.porCodigo(codigo)
+                : cacheProductos.porCodigo(codigo, productoRepository::findByCodigo);
+        return producto.map(acumuladorStock::aplicarPendientes);
     }
 
     @Transactional
     public Producto createProducto(Producto producto) {
         if (productoRepository.existsByCodigo(producto.getCodigo())) {
+            rechazo("codigo_duplicado");
             throw new IllegalArgumentException("Ya existe un producto con el código: " + producto.getCodigo());
         }
-       
-        return productoRepository.save(producto);
+        producto.setVersion(null); // La versión la asigna JPA al insertar
+
+        Producto guardado = productoRepository.save(producto);
+        publicar(ProductoModificadoEvent.Tipo.CREADO, guardado, null);
+        return guardado;
     }
 
     @Transactional
     public Producto updateProducto(Long id, Producto productoDetails) {
+        // El PUT fija el stock absoluto: los ajustes diferidos de ambos códigos se aplican y esperan al commit
+        Set<String> bloqueados = bloquearStockDiferido(id, productoDetails.getCodigo());
         Producto producto = productoRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con id: " + id));
+        verificarBloqueo(bloqueados, producto);
+
+        // Si el cliente envía la versión que leyó, se rechaza la actualización cuando otro la modificó antes
+        if (productoDetails.getVersion() != null && !productoDetails.getVersion().equals(producto.getVersion())) {
+            rechazo("conflicto_version");
+            throw new ObjectOptimisticLockingFailureException(Producto.class, id);
+        }
 
-        
         if (!producto.getCodigo().equals(productoDetails.getCodigo()) &&
             productoRepository.existsByCodigo(productoDetails.getCodigo())) {
+            rechazo("codigo_duplicado");
             throw new IllegalArgumentException("El nuevo código '" + productoDetails.getCodigo() + "' ya está en uso por otro producto.");
         }
+        Producto anterior = producto.copiar();
 
         producto.setCodigo(productoDetails.getCodigo());
         producto.setNombre(productoDetails.getNombre());
@@ -59,38 +154,404 @@ public class ProductoService {
         producto.setStock(productoDetails.getStock());
         
 
-        return productoRepository.save(producto);
+        Producto actualizado = productoRepository.saveAndFlush(producto); // El evento lleva la versión nueva
+        publicar(ProductoModificadoEvent.Tipo.ACTUALIZADO, actualizado, anterior);
+        return actualizado;
     }
 
     @Transactional
     public void deleteProducto(Long id) {
-        if (!productoRepository.existsById(id)) {
-            throw new EntityNotFoundException("Producto no encontrado con id: " + id);
+        Set<String> bloqueados = bloquearStockDiferido(id, null);
+        Producto producto = productoRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con id: " + id));
+        verificarBloqueo(bloqueados, producto);
+        Producto anterior = producto.copiar(); // Los listeners no reciben la entidad administrada
+        productoRepository.delete(producto);
+        publicar(ProductoModificadoEvent.Tipo.ELIMINADO, null, anterior);
+    }
+
+    // Sin @Transactional, como getProductoById: las consultas del repositorio ya son de solo lectura
+    public PaginaProductos listarProductos(Long after, int limit) {
+        validarLimite(limit);
+        if (catalogo.isListo()) {
+            return paginar(catalogo.listar(cursor(after), conSiguiente(limit)), limit);
+        }
+        return paginar(productoRepository.findByIdGreaterThanOrderByIdAsc(cursor(after), Limit.of(conSiguiente(limit))), limit);
+    }
+
+    // Con el índice listo se resuelve en memoria; el LIKE sobre el nombre queda para cuando no lo está
+    @Transactional(readOnly = true)
+    public PaginaProductos searchProductosByNombre(String nombre, Long after, int limit) {
+        validarLimite(limit);
+        if (indiceBusqueda.isListo()) {
+            List<Producto> filas = indiceBusqueda.porNombre(nombre, cursor(after), conSiguiente(limit));
+            if (filas != null) {
+                return paginar(filas, limit);
+            }
         }
-        productoRepository.deleteById(id);
+        return paginar(productoRepository.findByNombreContainingIgnoreCaseAndIdGreaterThanOrderByIdAsc(
+                nombre, cursor(after), Limit.of(conSiguiente(limit))), limit);
     }
 
+    /**
+     * Listado por cursor que solo lee de la base de datos las columnas pedidas
+     * (ej: codigo, precio y stock sin la descripción).
+     * @param campos Los campos validados con {@link #parsearCampos}.
+     * @param nombre Filtro por nombre, o null.
+     * @param categoria Filtro por categoría, o null.
+     * @param precioMin Precio mínimo (incluido), o null.
+     * @param precioMax Precio máximo (incluido), o null.
+     */
     @Transactional(readOnly = true)
-    public List<Producto> searchProductosByNombre(String nombre) {
-        return productoRepository.findByNombreContainingIgnoreCase(nombre);
+    public PaginaCampos listarCampos(Set<String> campos, String nombre, String categoria,
+                                     Double precioMin, Double precioMax, Long after, int limit) {
+        validarLimite(limit);
+        validarRangoPrecio(precioMin, precioMax);
+        if (nombre != null && categoria == null && precioMin == null && precioMax == null && indiceBusqueda.isListo()) {
+            // Por nombre, el índice ya tiene los productos completos: solo se proyectan
+            List<Producto> coincidencias = indiceBusqueda.porNombre(nombre, cursor(after), conSiguiente(limit));
+            if (coincidencias != null) {
+                PaginaProductos pagina = paginar(coincidencias, limit);
+                List<Map<String, Object>> productos = new ArrayList<>(pagina.productos().size());
+                for (Producto producto : pagina.productos()) {
+                    productos.add(proyectar(producto, campos));
+                }
+                return new PaginaCampos(productos, pagina.siguienteCursor());
+            }
+        }
+        List<Tuple> filas = productoRepository.findCamposByIdGreaterThan(campos, nombre,
+                Producto.normalizarCategoria(categoria), precioMin, precioMax, cursor(after), conSiguiente(limit));
+        Long siguiente = null;
+        if (filas.size() > limit) {
+            filas = filas.subList(0, limit);
+            siguiente = filas.get(limit - 1).get("id", Long.class);
+        }
+        List<Map<String, Object>> productos = new ArrayList<>(filas.size());
+        for (Tuple fila : filas) {
+            Map<String, Object> producto = new LinkedHashMap<>();
+            for (String campo : campos) {
+                Object valor = fila.get(campo);
+                if (campo.equals("stock") && valor != null) {
+                    valor = acumuladorStock.stockEfectivo(fila.get("codigo", String.class), (Integer) valor);
+                }
+                producto.put(campo, valor);
+            }
+            productos.add(producto);
+        }
+        return new PaginaCampos(productos, siguiente);
+    }
+
+    /**
+     * Valida el parámetro fields (ej: "codigo,precio,stock").
+     * @return Los campos en el orden en que se serializan, o null si no se pidió ninguno (producto completo).
+     */
+    public Set<String> parsearCampos(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> pedidos = new HashSet<>();
+        for (String campo : fields.split(",")) {
+            String nombre = campo.trim();
+            if (!CAMPOS.contains(nombre)) {
+                throw new IllegalArgumentException("Campo desconocido en fields: '" + nombre + "'. Campos válidos: " + String.join(",", CAMPOS) + ".");
+            }
+            pedidos.add(nombre);
+        }
+        Set<String> campos = new LinkedHashSet<>();
+        for (String campo : CAMPOS) {
+            if (pedidos.contains(campo)) {
+                campos.add(campo);
+            }
+        }
+        return campos;
     }
 
+    /**
+     * Reduce un producto ya cargado (ej: desde la cache) a los campos pedidos.
+     */
+    public Map<String, Object> proyectar(Producto producto, Set<String> campos) {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        for (String campo : campos) {
+            resultado.put(campo, switch (campo) {
+                case "id" -> producto.getId();
+                case "codigo" -> producto.getCodigo();
+                case "nombre" -> producto.getNombre();
+                case "descripcion" -> producto.getDescripcion();
+                case "categoria" -> producto.getCategoria();
+                case "precio" -> producto.getPrecio();
+                case "stock" -> producto.getStock();
+                case "version" -> producto.getVersion();
+                default -> throw new IllegalArgumentException("Campo desconocido: " + campo);
+            });
+        }
+        return resultado;
+    }
+
+    /**
+     * Búsqueda con relevancia sobre código, nombre y descripción. Usa el índice en memoria;
+     * si está deshabilitado o aún se construye, hace la misma búsqueda (cada término en alguno de
+     * los tres campos) en la base de datos.
+     */
     @Transactional(readOnly = true)
-    public List<Producto> getProductosByCategoria(String categoria) {
-        return productoRepository.findByCategoriaIgnoreCase(categoria);
+    public ResultadoBusqueda buscarProductos(String consulta, int pagina, int tamano) {
+        validarLimite(tamano);
+        if (pagina < 0) {
+            throw new IllegalArgumentException("La página no puede ser negativa.");
+        }
+        if ((long) pagina * tamano > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("La página está fuera de rango.");
+        }
+        if (indiceBusqueda.isListo()) {
+            return indiceBusqueda.buscar(consulta, pagina, tamano);
+        }
+        List<String> terminos = List.copyOf(IndiceBusquedaProductos.tokenizar(consulta));
+        if (terminos.isEmpty()) {
+            return new ResultadoBusqueda(List.of(), 0);
+        }
+        List<Producto> productos = productoRepository.buscarPorTerminos(terminos, pagina * tamano, tamano);
+        long total = pagina == 0 && productos.size() < tamano ? productos.size()
+                : productoRepository.contarPorTerminos(terminos);
+        return new ResultadoBusqueda(conPendientes(productos), total);
     }
 
-    
+    public PaginaProductos getProductosByCategoria(String categoria, Long after, int limit) {
+        validarLimite(limit);
+        String categoriaNormalizada = Producto.normalizarCategoria(categoria);
+        if (catalogo.isListo()) {
+            return paginar(catalogo.categoria(categoriaNormalizada, cursor(after), conSiguiente(limit)), limit);
+        }
+        return paginar(productoRepository.findByCategoriaNormalizadaAndIdGreaterThanOrderByIdAsc(
+                categoriaNormalizada, cursor(after), Limit.of(conSiguiente(limit))), limit);
+    }
+
+    /**
+     * Página por cursor de los productos con precio dentro del rango (ambos extremos incluidos).
+     * @param precioMin Precio mínimo, o null para no acotar.
+     * @param precioMax Precio máximo, o null para no acotar.
+     */
+    public PaginaProductos getProductosByRangoPrecio(Double precioMin, Double precioMax, Long after, int limit) {
+        validarLimite(limit);
+        validarRangoPrecio(precioMin, precioMax);
+        double min = precioMin != null ? precioMin : 0.0;
+        double max = precioMax != null ? precioMax : Double.MAX_VALUE;
+        if (catalogo.isListo()) {
+            return paginar(catalogo.rangoPrecio(min, max, cursor(after), conSiguiente(limit)), limit);
+        }
+        return paginar(productoRepository.findByPrecioBetweenAndIdGreaterThanOrderByIdAsc(
+                min, max, cursor(after), Limit.of(conSiguiente(limit))), limit);
+    }
+
+    /**
+     * Cantidad de productos y stock total por categoría, desde los agregados en memoria.
+     */
+    public List<FacetaCategoria> getFacetasCategoria() {
+        return agregadosCategorias.facetas();
+    }
+
+    /**
+     * Ajusta el stock con un UPDATE condicional atómico: no hay lectura previa ni
+     * actualizaciones perdidas entre requests concurrentes sobre el mismo código.
+     * Con la escritura diferida habilitada, el ajuste se valida en memoria y se registra en el
+     * diario; la fila se actualiza después, junto con los demás ajustes del mismo intervalo.
+     */
     @Transactional
     public Producto ajustarStock(String codigoProducto, int cantidad) {
+        if (acumuladorStock.isHabilitado()) {
+            return ajustarStockDiferido(codigoProducto, cantidad);
+        }
+        int filas = productoRepository.ajustarStock(codigoProducto, cantidad);
         Producto producto = productoRepository.findByCodigo(codigoProducto)
                 .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con código: " + codigoProducto));
+        if (filas == 0) {
+            rechazo("stock_insuficiente");
+            throw new IllegalArgumentException("No hay suficiente stock para el producto: " + producto.getNombre());
+        }
+
+        Producto anterior = producto.copiar();
+        anterior.setStock(producto.getStock() - cantidad);
+        publicar(ProductoModificadoEvent.Tipo.STOCK_AJUSTADO, producto, anterior);
+        return producto;
+    }
 
-        int nuevoStock = producto.getStock() + cantidad;
-        if (nuevoStock < 0) {
+    private Producto ajustarStockDiferido(String codigoProducto, int cantidad) {
+        Producto producto = productoRepository.findByCodigo(codigoProducto)
+                .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con código: " + codigoProducto));
+        AcumuladorStock.Saldo saldo = acumuladorStock.ajustar(codigoProducto, cantidad, producto);
+        if (saldo == null) {
+            rechazo("stock_insuficiente");
             throw new IllegalArgumentException("No hay suficiente stock para el producto: " + producto.getNombre());
         }
-        producto.setStock(nuevoStock);
-        return productoRepository.save(producto);
+
+        Producto ajustado = producto.copiar();
+        ajustado.setStock((int) saldo.stock());
+        // El evento lleva la versión del contador, no la leída: otra operación pudo fijar el stock
+        // entre la lectura y el ajuste. Con el número de ajuste, ordena los cambios de la fila.
+        Producto evento = ajustado.copiar();
+        evento.setVersion(saldo.version());
+        Producto anterior = evento.copiar();
+        anterior.setStock((int) saldo.stock() - cantidad);
+        eventPublisher.publishEvent(new ProductoModificadoEvent(ProductoModificadoEvent.Tipo.STOCK_AJUSTADO,
+                evento, anterior, saldo.ajuste()));
+        return ajustado;
+    }
+
+    /**
+     * Aplica varios ajustes de stock en una sola transacción, todo o nada.
+     * Usa un SELECT ... FOR UPDATE para todos los códigos y las actualizaciones se envían
+     * en batch al confirmar, en lugar de una transacción por línea.
+     * @param ajustes Las líneas (código, cantidad); un código puede repetirse.
+     * @return El resultado de cada línea, en el mismo orden recibido.
+     * @throws AjusteStockLoteException si alguna línea no se puede aplicar; no se aplica ninguna.
+     */
+    @Transactional
+    public List<ResultadoAjusteStock> ajustarStockLote(List<AjusteStock> ajustes) {
+        if (ajustes == null || ajustes.isEmpty()) {
+            throw new IllegalArgumentException("Debe indicar al menos un ajuste de stock.");
+        }
+        if (ajustes.size() > maxLineasLote) {
+            throw new IllegalArgumentException("Un lote puede tener como máximo " + maxLineasLote + " líneas.");
+        }
+        TreeSet<String> codigos = new TreeSet<>(); // Orden determinista de bloqueo
+        for (AjusteStock ajuste : ajustes) {
+            if (ajuste == null || ajuste.codigo() == null || ajuste.codigo().isBlank()) {
+                throw new IllegalArgumentException("Cada línea debe indicar el código del producto.");
+            }
+            codigos.add(ajuste.codigo());
+        }
+        bloquearStockDiferido(codigos); // El lote valida contra el stock de la base de datos
+
+        Map<String, Producto> productos = new HashMap<>();
+        for (Producto producto : productoRepository.findByCodigoInParaActualizar(codigos)) {
+            productos.put(producto.getCodigo(), producto);
+        }
+
+        Map<String, Integer> stock = new HashMap<>();
+        List<ResultadoAjusteStock> resultados = new ArrayList<>(ajustes.size());
+        boolean valido = true;
+        for (AjusteStock ajuste : ajustes) {
+            Producto producto = productos.get(ajuste.codigo());
+            if (producto == null) {
+                resultados.add(new ResultadoAjusteStock(ajuste.codigo(), ajuste.cantidad(), null,
+                        "Producto no encontrado con código: " + ajuste.codigo()));
+                valido = false;
+                continue;
+            }
+            int nuevoStock = stock.getOrDefault(ajuste.codigo(), producto.getStock()) + ajuste.cantidad();
+            if (nuevoStock < 0) {
+                resultados.add(new ResultadoAjusteStock(ajuste.codigo(), ajuste.cantidad(), null,
+                        "No hay suficiente stock para el producto: " + producto.getNombre()));
+                valido = false;
+                continue;
+            }
+            stock.put(ajuste.codigo(), nuevoStock);
+            resultados.add(new ResultadoAjusteStock(ajuste.codigo(), ajuste.cantidad(), nuevoStock, null));
+        }
+        if (!valido) {
+            rechazo("stock_insuficiente");
+            throw new AjusteStockLoteException(resultados);
+        }
+
+        List<Producto> ajustados = new ArrayList<>(stock.size());
+        List<Producto> anteriores = new ArrayList<>(stock.size());
+        for (Map.Entry<String, Integer> e : stock.entrySet()) {
+            Producto producto = productos.get(e.getKey());
+            anteriores.add(producto.copiar());
+            producto.setStock(e.getValue());
+            ajustados.add(producto);
+        }
+        productoRepository.flush(); // Los UPDATE van en un solo batch y los eventos llevan las versiones nuevas
+        for (int i = 0; i < ajustados.size(); i++) {
+            publicar(ProductoModificadoEvent.Tipo.STOCK_AJUSTADO, ajustados.get(i), anteriores.get(i));
+        }
+        return resultados;
+    }
+
+    // Los listeners (índice de búsqueda, caches) reciben copias y actúan después del commit
+    private void publicar(ProductoModificadoEvent.Tipo tipo, Producto producto, Producto anterior) {
+        eventPublisher.publishEvent(new ProductoModificadoEvent(tipo,
+                producto != null ? producto.copiar() : null,
+                anterior));
+    }
+
+    // Tras el commit, el acumulador vuelve a leer el stock que otra operación fijó directamente en la base de datos
+    // Con la escritura diferida, los códigos quedan bloqueados para los ajustes diferidos hasta que termina la
+    // transacción (con commit o rollback); entonces el contador se relee de la base de datos.
+    private void bloquearStockDiferido(Collection<String> codigos) {
+        if (!acumuladorStock.isHabilitado()) {
+            return;
+        }
+        Set<String> copia = Set.copyOf(codigos);
+        acumuladorStock.bloquear(copia);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                acumuladorStock.sincronizar(copia);
+            }
+        });
+    }
+
+    // Bloquea el código actual del producto (leído sin cargar la entidad) y, si cambia, el nuevo
+    private Set<String> bloquearStockDiferido(Long id, String codigoNuevo) {
+        if (!acumuladorStock.isHabilitado()) {
+            return null;
+        }
+        Set<String> codigos = new HashSet<>();
+        productoRepository.findCodigoById(id).ifPresent(codigos::add);
+        if (codigoNuevo != null) {
+            codigos.add(codigoNuevo);
+        }
+        bloquearStockDiferido(codigos);
+        return codigos;
+    }
+
+    // Otra operación cambió el código entre la lectura y el bloqueo: el stock de la fila no quedó protegido
+    private static void verificarBloqueo(Set<String> bloqueados, Producto producto) {
+        if (bloqueados != null && !bloqueados.contains(producto.getCodigo())) {
+            throw new ObjectOptimisticLockingFailureException(Producto.class, producto.getId());
+        }
+    }
+
+    // Resultados de negocio, para distinguirlos de los errores técnicos en /actuator/metrics
+    private void rechazo(String motivo) {
+        meterRegistry.counter("ecomarket.productos.rechazos", "motivo", motivo).increment();
+    }
+
+    private void validarLimite(int limit) {
+        if (limit < 1 || limit > limiteMaximo) {
+            throw new IllegalArgumentException("El limit debe estar entre 1 y " + limiteMaximo + ".");
+        }
+    }
+
+    private static void validarRangoPrecio(Double precioMin, Double precioMax) {
+        if ((precioMin != null && precioMin.isNaN()) || (precioMax != null && precioMax.isNaN())) {
+            throw new IllegalArgumentException("El rango de precio debe ser numérico.");
+        }
+        if (precioMin != null && precioMax != null && precioMin > precioMax) {
+            throw new IllegalArgumentException("precioMin no puede ser mayor que precioMax.");
+        }
+    }
+
+    private static long cursor(Long after) {
+        return after == null ? 0L : after;
+    }
+
+    // Se pide un elemento extra solo para saber si existe una página siguiente
+    private static int conSiguiente(int limit) {
+        return limit + 1;
+    }
+
+    private PaginaProductos paginar(List<Producto> filas, int limit) {
+        if (filas.size() <= limit) {
+            return new PaginaProductos(conPendientes(filas), null);
+        }
+        List<Producto> pagina = filas.subList(0, limit);
+        return new PaginaProductos(conPendientes(pagina), pagina.get(limit - 1).getId());
+    }
+
+    private List<Producto> conPendientes(List<Producto> productos) {
+        if (!acumuladorStock.isHabilitado()) {
+            return productos;
+        }
+        return productos.stream().map(acumuladorStock::aplicarPendientes).toList();
     }
 }
\ No newline at end of file
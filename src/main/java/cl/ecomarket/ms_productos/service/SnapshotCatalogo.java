@@ -0,0 +1,467 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.model.Producto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+
+/**
+ * Copia inmutable de todo el catálogo, organizada por columnas: un arreglo por atributo, donde la
+ * posición i de cada arreglo es el i-ésimo producto en orden de id. Los números se guardan como
+ * primitivos (sin Long/Double/Integer por fila) y cada categoría distinta se guarda una sola vez
+ * en un diccionario; las filas solo guardan su índice.
+ * <p>
+ * Nunca se modifica: {@link #con} arma un snapshot nuevo, así los lectores pueden recorrerlo sin locks
+ * mientras se prepara el siguiente. Para no copiar las N filas en cada escritura, el snapshot nuevo
+ * comparte las columnas del actual y lleva las filas cambiadas (y los ids eliminados) en un delta
+ * ordenado por id, que las lecturas mezclan con las columnas. Cuando el delta pasa de √N filas se
+ * compacta: se arman columnas nuevas en una sola pasada. Así cada cambio cuesta O(√N) más, amortizado,
+ * O(√N) de la compactación, en vez de O(N).
+ */
+final class SnapshotCatalogo {
+
+    private static final int[] SIN_POSICIONES = new int[0];
+    private static final int SIN_CATEGORIA = -1;
+    private static final int DELTA_MINIMO = 64;
+
+    private final int tamano; // Filas de las columnas (sin contar el delta)
+    private final long[] ids; // Ascendentes: la búsqueda por id y el cursor son búsquedas binarias
+    private final String[] codigos;
+    private final String[] nombres;
+    private final String[] descripciones;
+    private final int[] categorias; // Índice en el diccionario, o SIN_CATEGORIA
+    private final double[] precios;
+    private final int[] stocks;
+    private final long[] versiones;
+    private final String[] diccionario; // Cada categoría tal como se guardó, una vez
+    private final String[] diccionarioNormalizado;
+    private final Map<String, int[]> porCategoria; // Categoría normalizada → posiciones en orden de id
+    private final int[] tablaCodigos; // Hash abierto con sondeo lineal: posición + 1 de cada código, 0 = libre
+    // Filas cambiadas desde que se armaron las columnas: id → fila, o null si el producto se eliminó.
+    // Reemplazan a la fila de las columnas con el mismo id
+    private final NavigableMap<Long, Producto> delta;
+    private final Map<String, Producto> deltaPorCodigo;
+    private final int productos; // Total visible: columnas más el delta
+    private long bytes = -1; // Se calcula una vez, al pedirlo
+
+    private SnapshotCatalogo(Columnas columnas) {
+        this.tamano = columnas.n;
+        this.ids = Arrays.copyOf(columnas.ids, tamano);
+        this.codigos = Arrays.copyOf(columnas.codigos, tamano);
+        this.nombres = Arrays.copyOf(columnas.nombres, tamano);
+        this.descripciones = Arrays.copyOf(columnas.descripciones, tamano);
+        this.categorias = Arrays.copyOf(columnas.categorias, tamano);
+        this.precios = Arrays.copyOf(columnas.precios, tamano);
+        this.stocks = Arrays.copyOf(columnas.stocks, tamano);
+        this.versiones = Arrays.copyOf(columnas.versiones, tamano);
+        this.diccionario = columnas.diccionario.toArray(String[]::new);
+        this.diccionarioNormalizado = new String[diccionario.length];
+        for (int c = 0; c < diccionario.length; c++) {
+            diccionarioNormalizado[c] = Producto.normalizarCategoria(diccionario[c]);
+        }
+        this.porCategoria = indexarCategorias();
+        this.tablaCodigos = indexarCodigos();
+        this.delta = new TreeMap<>();
+        this.deltaPorCodigo = Map.of();
+        this.productos = tamano;
+    }
+
+    // Comparte las columnas de base (nunca se modifican) con otro delta
+    private SnapshotCatalogo(SnapshotCatalogo base, NavigableMap<Long, Producto> delta) {
+        this.tamano = base.tamano;
+        this.ids = base.ids;
+        this.codigos = base.codigos;
+        this.nombres = base.nombres;
+        this.descripciones = base.descripciones;
+        this.categorias = base.categorias;
+        this.precios = base.precios;
+        this.stocks = base.stocks;
+        this.versiones = base.versiones;
+        this.diccionario = base.diccionario;
+        this.diccionarioNormalizado = base.diccionarioNormalizado;
+        this.porCategoria = base.porCategoria;
+        this.tablaCodigos = base.tablaCodigos;
+        this.delta = delta;
+        Map<String, Producto> deltaPorCodigo = new HashMap<>(delta.size() * 2);
+        int productos = tamano;
+        for (Map.Entry<Long, Producto> cambio : delta.entrySet()) {
+            boolean enColumnas = Arrays.binarySearch(ids, 0, tamano, cambio.getKey()) >= 0;
+            if (cambio.getValue() != null) {
+                deltaPorCodigo.put(cambio.getValue().getCodigo(), cambio.getValue());
+                productos += enColumnas ? 0 : 1;
+            } else {
+                productos -= enColumnas ? 1 : 0;
+            }
+        }
+        this.deltaPorCodigo = deltaPorCodigo;
+        this.productos = productos;
+    }
+
+    /**
+     * @param productos Todos los productos del catálogo, en cualquier orden.
+     */
+    static SnapshotCatalogo construir(Collection<Producto> productos) {
+        TreeMap<Long, Producto> ordenados = new TreeMap<>();
+        for (Producto producto : productos) {
+            ordenados.put(producto.getId(), producto);
+        }
+        Columnas columnas = new Columnas(ordenados.size());
+        ordenados.values().forEach(columnas::agregar);
+        return new SnapshotCatalogo(columnas);
+    }
+
+    /**
+     * Arma el snapshot siguiente: agrega los cambios al delta, o compacta si el delta quedaría con más de √N filas.
+     * @param actualizados Las filas nuevas o modificadas (reemplazan a la fila con el mismo id).
+     * @param eliminados Los ids que ya no existen.
+     * @return Un snapshot nuevo; este no cambia.
+     */
+    SnapshotCatalogo con(Collection<Producto> actualizados, Collection<Long> eliminados) {
+        TreeMap<Long, Producto> cambios = new TreeMap<>(delta);
+        for (Long id : eliminados) {
+            cambios.put(id, null);
+        }
+        for (Producto producto : actualizados) {
+            Producto copia = producto.copiar();
+            if (copia.getVersion() == null) {
+                copia.setVersion(0L);
+            }
+            cambios.put(copia.getId(), copia);
+        }
+        if (cambios.size() <= Math.max(DELTA_MINIMO, (int) Math.sqrt(tamano))) {
+            return new SnapshotCatalogo(this, cambios);
+        }
+        return compactar(cambios);
+    }
+
+    // Columnas nuevas en una sola pasada sobre las actuales y el delta, ambos ordenados por id
+    private SnapshotCatalogo compactar(NavigableMap<Long, Producto> cambios) {
+        Columnas columnas = new Columnas(tamano + cambios.size());
+        Iterator<Map.Entry<Long, Producto>> pendientes = cambios.entrySet().iterator();
+        Map.Entry<Long, Producto> siguiente = pendientes.hasNext() ? pendientes.next() : null;
+        for (int i = 0; i < tamano; i++) {
+            while (siguiente != null && siguiente.getKey() < ids[i]) {
+                agregar(columnas, siguiente.getValue());
+                siguiente = pendientes.hasNext() ? pendientes.next() : null;
+            }
+            if (siguiente != null && siguiente.getKey() == ids[i]) {
+                agregar(columnas, siguiente.getValue());
+                siguiente = pendientes.hasNext() ? pendientes.next() : null;
+            } else {
+                columnas.copiar(this, i);
+            }
+        }
+        while (siguiente != null) {
+            agregar(columnas, siguiente.getValue());
+            siguiente = pendientes.hasNext() ? pendientes.next() : null;
+        }
+        return new SnapshotCatalogo(columnas);
+    }
+
+    // Las filas eliminadas (null) simplemente no se agregan
+    private static void agregar(Columnas columnas, Producto producto) {
+        if (producto != null) {
+            columnas.agregar(producto);
+        }
+    }
+
+    int tamano() {
+        return productos;
+    }
+
+    /**
+     * @return Las filas en el delta, es decir, cambiadas desde la última compactación.
+     */
+    int tamanoDelta() {
+        return delta.size();
+    }
+
+    Producto porId(long id) {
+        if (delta.containsKey(id)) {
+            Producto cambio = delta.get(id);
+            return cambio != null ? cambio.copiar() : null;
+        }
+        int posicion = Arrays.binarySearch(ids, 0, tamano, id);
+        return posicion >= 0 ? producto(posicion) : null;
+    }
+
+    Producto porCodigo(String codigo) {
+        Producto cambio = deltaPorCodigo.get(codigo);
+        if (cambio != null) {
+            return cambio.copiar();
+        }
+        int mascara = tablaCodigos.length - 1;
+        for (int h = mezclar(codigo.hashCode()) & mascara; tablaCodigos[h] != 0; h = (h + 1) & mascara) {
+            int posicion = tablaCodigos[h] - 1;
+            if (codigos[posicion].equals(codigo)) {
+                // Si la fila está en el delta, se eliminó o cambió de código
+                return delta.containsKey(ids[posicion]) ? null : producto(posicion);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Hasta {@code limite} productos con id mayor a {@code after}, ordenados por id.
+     */
+    List<Producto> listar(long after, int limite) {
+        return mezclar(i -> i, siguientePosicion(after), tamano, i -> true, p -> true, after, limite);
+    }
+
+    /**
+     * @param categoriaNormalizada La categoría ya normalizada con {@link Producto#normalizarCategoria}.
+     */
+    List<Producto> categoria(String categoriaNormalizada, long after, int limite) {
+        int[] posiciones = categoriaNormalizada != null
+                ? porCategoria.getOrDefault(categoriaNormalizada, SIN_POSICIONES) : SIN_POSICIONES;
+        // Las posiciones están en orden de id: búsqueda binaria del primer id mayor al cursor
+        int bajo = 0;
+        int alto = posiciones.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (ids[posiciones[medio]] <= after) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return mezclar(k -> posiciones[k], bajo, posiciones.length, i -> true,
+                p -> categoriaNormalizada != null && categoriaNormalizada.equals(p.getCategoriaNormalizada()), after, limite);
+    }
+
+    /**
+     * Recorre la columna de precios desde el cursor: es un arreglo contiguo de double, así que
+     * incluso un rango poco selectivo se filtra sin tocar las demás columnas.
+     * @return Hasta {@code limite} productos con precio entre min y max (incluidos), ordenados por id.
+     */
+    List<Producto> rangoPrecio(double min, double max, long after, int limite) {
+        return mezclar(i -> i, siguientePosicion(after), tamano, i -> precios[i] >= min && precios[i] <= max,
+                p -> p.getPrecio() >= min && p.getPrecio() <= max, after, limite);
+    }
+
+    /**
+     * Recorre en orden de id las filas de las columnas y las del delta con id mayor a {@code after}.
+     * Las filas de las columnas que están en el delta se saltan: su versión vigente (si existe) es la del delta.
+     * @param posicion La posición en las columnas de la k-ésima fila candidata, para k entre desde y hasta.
+     * @param filtro Filtra las filas de las columnas por posición.
+     * @param filtroDelta El mismo filtro para las filas del delta.
+     */
+    private List<Producto> mezclar(IntUnaryOperator posicion, int desde, int hasta, IntPredicate filtro,
+                                   Predicate<Producto> filtroDelta, long after, int limite) {
+        List<Producto> productos = new ArrayList<>(Math.min(limite, 64));
+        Iterator<Producto> cambios = delta.tailMap(after, false).values().iterator();
+        Producto cambio = siguienteCambio(cambios, filtroDelta);
+        int k = desde;
+        while (productos.size() < limite) {
+            while (k < hasta && (!filtro.test(posicion.applyAsInt(k))
+                    || (!delta.isEmpty() && delta.containsKey(ids[posicion.applyAsInt(k)])))) {
+                k++;
+            }
+            if (cambio != null && (k >= hasta || cambio.getId() < ids[posicion.applyAsInt(k)])) {
+                productos.add(cambio.copiar());
+                cambio = siguienteCambio(cambios, filtroDelta);
+            } else if (k < hasta) {
+                productos.add(producto(posicion.applyAsInt(k)));
+                k++;
+            } else {
+                break;
+            }
+        }
+        return productos;
+    }
+
+    private static Producto siguienteCambio(Iterator<Producto> cambios, Predicate<Producto> filtro) {
+        while (cambios.hasNext()) {
+            Producto cambio = cambios.next();
+            if (cambio != null && filtro.test(cambio)) {
+                return cambio;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Estimación del heap retenido, suponiendo referencias comprimidas (4 bytes) y Strings
+     * compactos (un byte por carácter si el texto es Latin-1). Incluye las cadenas de código,
+     * nombre y descripción, que las entidades de JPA también tendrían que tener.
+     */
+    long bytesEstimados() {
+        if (this.bytes >= 0) {
+            return this.bytes;
+        }
+        long bytes = arreglo(tamano, 8) * 3 // ids, precios, versiones
+                + arreglo(tamano, 4) * 5 // categorias, stocks y las tres columnas de referencias
+                + arreglo(tablaCodigos.length, 4)
+                + arreglo(diccionario.length, 4) * 2;
+        for (int[] posiciones : porCategoria.values()) {
+            bytes += arreglo(posiciones.length, 4) + 32; // Más la entrada del HashMap
+        }
+        for (int i = 0; i < tamano; i++) {
+            bytes += texto(codigos[i]) + texto(nombres[i]) + texto(descripciones[i]);
+        }
+        for (int c = 0; c < diccionario.length; c++) {
+            bytes += texto(diccionario[c]) + texto(diccionarioNormalizado[c]);
+        }
+        for (Producto cambio : delta.values()) {
+            // Entrada del TreeMap (40) y del mapa por código (32), más la fila como objeto
+            bytes += 72 + (cambio == null ? 0 : 64 + texto(cambio.getCodigo()) + texto(cambio.getNombre())
+                    + texto(cambio.getDescripcion()) + texto(cambio.getCategoria()) + texto(cambio.getCategoriaNormalizada()));
+        }
+        this.bytes = bytes;
+        return bytes;
+    }
+
+    private Producto producto(int i) {
+        int categoria = categorias[i];
+        return new Producto(ids[i], codigos[i], nombres[i], descripciones[i],
+                categoria != SIN_CATEGORIA ? diccionario[categoria] : null,
+                categoria != SIN_CATEGORIA ? diccionarioNormalizado[categoria] : null,
+                precios[i], stocks[i], versiones[i]);
+    }
+
+    // Primera posición con id mayor al cursor
+    private int siguientePosicion(long after) {
+        int posicion = Arrays.binarySearch(ids, 0, tamano, after);
+        return posicion >= 0 ? posicion + 1 : -posicion - 1;
+    }
+
+    private Map<String, int[]> indexarCategorias() {
+        Map<String, Integer> cantidades = new HashMap<>();
+        for (int i = 0; i < tamano; i++) {
+            if (categorias[i] != SIN_CATEGORIA) {
+                cantidades.merge(diccionarioNormalizado[categorias[i]], 1, Integer::sum);
+            }
+        }
+        Map<String, int[]> indice = new HashMap<>(cantidades.size() * 2);
+        cantidades.forEach((categoria, cantidad) -> indice.put(categoria, new int[cantidad]));
+        Map<String, Integer> llenas = new HashMap<>(cantidades.size() * 2);
+        for (int i = 0; i < tamano; i++) {
+            if (categorias[i] != SIN_CATEGORIA) {
+                String categoria = diccionarioNormalizado[categorias[i]];
+                indice.get(categoria)[llenas.merge(categoria, 1, Integer::sum) - 1] = i;
+            }
+        }
+        return indice;
+    }
+
+    private int[] indexarCodigos() {
+        // Capacidad potencia de dos de al menos el doble de filas: los sondeos se mantienen cortos
+        int[] tabla = new int[Integer.highestOneBit(Math.max(tamano, 1)) * 4];
+        int mascara = tabla.length - 1;
+        for (int i = 0; i < tamano; i++) {
+            int h = mezclar(codigos[i].hashCode()) & mascara;
+            while (tabla[h] != 0) {
+                h = (h + 1) & mascara;
+            }
+            tabla[h] = i + 1;
+        }
+        return tabla;
+    }
+
+    // Dispersa los bits altos del hash sobre los bajos, que son los que usa la máscara
+    private static int mezclar(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long arreglo(int largo, int bytesPorElemento) {
+        return 16 + ((long) largo * bytesPorElemento + 7) / 8 * 8;
+    }
+
+    private static long texto(String valor) {
+        if (valor == null) {
+            return 0;
+        }
+        int bytesPorCaracter = valor.chars().allMatch(c -> c < 256) ? 1 : 2;
+        return 24 + arreglo(valor.length(), bytesPorCaracter);
+    }
+
+    // Columnas en construcción; el diccionario reutiliza la primera instancia de cada categoría
+    private static final class Columnas {
+        final long[] ids;
+        final String[] codigos;
+        final String[] nombres;
+        final String[] descripciones;
+        final int[] categorias;
+        final double[] precios;
+        final int[] stocks;
+        final long[] versiones;
+        final Map<String, Integer> indiceDiccionario = new HashMap<>();
+        final List<String> diccionario = new ArrayList<>();
+        int n;
+        // Índice de cada categoría del snapshot de origen en el diccionario nuevo (-1 = aún no visto)
+        private int[] traduccion;
+
+        Columnas(int capacidad) {
+            ids = new long[capacidad];
+            codigos = new String[capacidad];
+            nombres = new String[capacidad];
+            descripciones = new String[capacidad];
+            categorias = new int[capacidad];
+            precios = new double[capacidad];
+            stocks = new int[capacidad];
+            versiones = new long[capacidad];
+        }
+
+        void agregar(Producto producto) {
+            ids[n] = producto.getId();
+            codigos[n] = producto.getCodigo();
+            nombres[n] = producto.getNombre();
+            descripciones[n] = producto.getDescripcion();
+            categorias[n] = categoria(producto.getCategoria());
+            precios[n] = producto.getPrecio();
+            stocks[n] = producto.getStock();
+            versiones[n] = producto.getVersion() != null ? producto.getVersion() : 0L;
+            n++;
+        }
+
+        void copiar(SnapshotCatalogo snapshot, int i) {
+            ids[n] = snapshot.ids[i];
+            codigos[n] = snapshot.codigos[i];
+            nombres[n] = snapshot.nombres[i];
+            descripciones[n] = snapshot.descripciones[i];
+            categorias[n] = traducir(snapshot, snapshot.categorias[i]);
+            precios[n] = snapshot.precios[i];
+            stocks[n] = snapshot.stocks[i];
+            versiones[n] = snapshot.versiones[i];
+            n++;
+        }
+
+        private int traducir(SnapshotCatalogo origen, int categoria) {
+            if (categoria == SIN_CATEGORIA) {
+                return SIN_CATEGORIA;
+            }
+            if (traduccion == null) {
+                traduccion = new int[origen.diccionario.length];
+                Arrays.fill(traduccion, -1);
+            }
+            if (traduccion[categoria] == -1) {
+                traduccion[categoria] = categoria(origen.diccionario[categoria]);
+            }
+            return traduccion[categoria];
+        }
+
+        private int categoria(String categoria) {
+            if (categoria == null) {
+                return SIN_CATEGORIA;
+            }
+            Integer indice = indiceDiccionario.get(categoria);
+            if (indice == null) {
+                indice = diccionario.size();
+                diccionario.add(categoria);
+                indiceDiccionario.put(categoria, indice);
+            }
+            return indice;
+        }
+    }
+}
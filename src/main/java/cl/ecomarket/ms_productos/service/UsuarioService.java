@@ -1,12 +1,21 @@
 package cl.ecomarket.ms_productos.service;
 
+import cl.ecomarket.ms_productos.dto.PaginaUsuarios;
+import cl.ecomarket.ms_productos.dto.ResumenUsuario;
+import cl.ecomarket.ms_productos.event.CredencialesUsuarioModificadasEvent;
 import cl.ecomarket.ms_productos.model.Rol;
 import cl.ecomarket.ms_productos.model.Usuario;
 import cl.ecomarket.ms_productos.repository.RolRepository;
 import cl.ecomarket.ms_productos.repository.UsuarioRepository;
+import cl.ecomarket.ms_productos.repository.UsuarioRepositoryCustom;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.TreeSet;
 @Service
 public class UsuarioService {
 
@@ -26,24 +36,79 @@ public class UsuarioService {
     private final UsuarioRepository usuarioRepository;
     private final RolRepository rolRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final int limiteMaximo;
 
     // Inyección por constructor (preferida para dependencias obligatorias)
     public UsuarioService(UsuarioRepository usuarioRepository,
                           RolRepository rolRepository,
-                          @Lazy PasswordEncoder passwordEncoder) { // @Lazy aquí es una precaución para ciclos
+                          @Lazy PasswordEncoder passwordEncoder, // @Lazy aquí es una precaución para ciclos
+                          ApplicationEventPublisher eventPublisher,
+                          MeterRegistry meterRegistry,
+                          @Value("${ecomarket.usuarios.pagina.limite-maximo:500}") int limiteMaximo) {
         this.usuarioRepository = usuarioRepository;
         this.rolRepository = rolRepository;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.limiteMaximo = limiteMaximo;
     }
 
+    /**
+     * Página del listado de usuarios, con solo los datos del resumen y los nombres de sus roles.
+     * @param activo Filtro por estado, o null para todos.
+     * @param rol Solo los usuarios con este rol, o null.
+     * @param orden "campo" o "campo,desc" (id, username, nombreCompleto, email o activo), o null para ordenar por id.
+     * @param pagina El número de página, desde 0.
+     * @param tamano La cantidad de usuarios por página.
+     * @throws IllegalArgumentException si la página, el tamaño o el orden no son válidos.
+     */
     @Transactional(readOnly = true)
-    public List<Usuario> getAllUsuarios() {
-        return usuarioRepository.findAll();
+    public PaginaUsuarios listarUsuarios(Boolean activo, String rol, String orden, int pagina, int tamano) {
+        if (tamano < 1 || tamano > limiteMaximo) {
+            throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + limiteMaximo + ".");
+        }
+        if (pagina < 0) {
+            throw new IllegalArgumentException("La página no puede ser negativa.");
+        }
+        if ((long) pagina * tamano > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("La página está fuera de rango.");
+        }
+        String nombreRol = rol == null || rol.isBlank() ? null : rol.trim().toUpperCase();
+        Sort criterio = parsearOrden(orden);
+        List<ResumenUsuario> usuarios = usuarioRepository.findResumenes(activo, nombreRol, criterio, pagina * tamano, tamano);
+        // El total solo hace falta contarlo si la página no lo deja a la vista
+        long total = pagina == 0 && usuarios.size() < tamano ? usuarios.size()
+                : usuarioRepository.countResumenes(activo, nombreRol);
+        return new PaginaUsuarios(usuarios, total);
+    }
+
+    private static Sort parsearOrden(String orden) {
+        if (orden == null || orden.isBlank()) {
+            return Sort.by("id");
+        }
+        String[] partes = orden.split(",");
+        if (partes.length > 2) {
+            throw new IllegalArgumentException("Orden no válido: " + orden);
+        }
+        String campo = partes[0].trim();
+        if (!UsuarioRepositoryCustom.ORDENABLES.contains(campo)) {
+            throw new IllegalArgumentException("No se puede ordenar por: " + campo
+                    + ". Valores permitidos: " + String.join(", ", new TreeSet<>(UsuarioRepositoryCustom.ORDENABLES)));
+        }
+        Sort.Direction direccion = Sort.Direction.ASC;
+        if (partes.length == 2) {
+            direccion = Sort.Direction.fromOptionalString(partes[1].trim())
+                    .orElseThrow(() -> new IllegalArgumentException("Dirección de orden no válida: " + partes[1].trim()));
+        }
+        return Sort.by(direccion, campo);
     }
 
+    // Los métodos que devuelven el usuario lo cargan con roles y permisos: se serializa fuera de la transacción
     @Transactional(readOnly = true)
     public Optional<Usuario> getUsuarioById(Long id) {
-        return usuarioRepository.findById(id);
+        return usuarioRepository.findConRolesById(id);
     }
 
     @Transactional(readOnly = true)
@@ -63,10 +128,13 @@ public class UsuarioService {
             throw new IllegalArgumentException("La contraseña es requerida.");
         }
 
+        // Sobre las columnas indexadas, con su collation (en MySQL, sin distinguir mayúsculas), igual que el alta masiva
         if (usuarioRepository.existsByUsername(usuario.getUsername())) {
+            rechazo("username_duplicado");
             throw new IllegalArgumentException("El nombre de usuario ya existe: " + usuario.getUsername());
         }
         if (usuarioRepository.existsByEmail(usuario.getEmail())) {
+            rechazo("email_duplicado");
             throw new IllegalArgumentException("El email ya está registrado: " + usuario.getEmail());
         }
 
@@ -83,7 +151,7 @@ public class UsuarioService {
 
     @Transactional
     public Usuario updateUsuario(Long id, Usuario usuarioDetails) {
-        Usuario usuario = usuarioRepository.findById(id)
+        Usuario usuario = usuarioRepository.findConRolesById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con id: " + id));
 
         if (usuarioDetails.getNombreCompleto() != null) {
@@ -92,8 +160,10 @@ public class UsuarioService {
 
         if (usuarioDetails.getEmail() != null && !usuario.getEmail().equals(usuarioDetails.getEmail())) {
             if (usuarioRepository.existsByEmail(usuarioDetails.getEmail())) {
+                rechazo("email_duplicado");
                 throw new IllegalArgumentException("El nuevo email ya está registrado: " + usuarioDetails.getEmail());
             }
+            publicarCredencialesModificadas(usuario); // Con el email anterior
             usuario.setEmail(usuarioDetails.getEmail());
         }
 
@@ -108,26 +178,28 @@ public class UsuarioService {
 
     @Transactional
     public Usuario cambiarPassword(Long usuarioId, String nuevaPassword) {
-        Usuario usuario = usuarioRepository.findById(usuarioId)
+        Usuario usuario = usuarioRepository.findConRolesById(usuarioId)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con id: " + usuarioId));
         if (nuevaPassword == null || nuevaPassword.trim().isEmpty()) {
             throw new IllegalArgumentException("La nueva contraseña no puede estar vacía.");
         }
         usuario.setPassword(passwordEncoder.encode(nuevaPassword.trim()));
+        publicarCredencialesModificadas(usuario);
         return usuarioRepository.save(usuario);
     }
 
     @Transactional
     public Usuario desactivarUsuario(Long id) {
-        Usuario usuario = usuarioRepository.findById(id)
+        Usuario usuario = usuarioRepository.findConRolesById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con id: " + id));
         usuario.setActivo(false);
+        publicarCredencialesModificadas(usuario);
         return usuarioRepository.save(usuario);
     }
 
     @Transactional
     public Usuario activarUsuario(Long id) {
-        Usuario usuario = usuarioRepository.findById(id)
+        Usuario usuario = usuarioRepository.findConRolesById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con id: " + id));
         usuario.setActivo(true);
         return usuarioRepository.save(usuario);
@@ -138,6 +210,7 @@ public class UsuarioService {
         Usuario usuario = usuarioRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con id: " + id));
 
+        publicarCredencialesModificadas(usuario);
         usuarioRepository.delete(usuario);
     }
 
@@ -146,13 +219,14 @@ public class UsuarioService {
         log.info("--- ASIGNAR ROL INICIO ---");
         log.info("Petición para asignar rol: '{}' al usuario ID: {}", nombreRol, usuarioId);
 
-        Usuario usuario = usuarioRepository.findById(usuarioId)
+        Usuario usuario = usuarioRepository.findConRolesById(usuarioId)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con id: " + usuarioId));
         log.info("Usuario encontrado: {} (ID: {})", usuario.getUsername(), usuario.getId());
 
         Rol rolAAgregar = rolRepository.findByNombre(nombreRol.toUpperCase())
                 .orElseThrow(() -> new EntityNotFoundException("Rol no encontrado con nombre: " + nombreRol));
         log.info("Rol a agregar (buscado por nombre '{}'): {} (ID: {})", nombreRol.toUpperCase(), rolAAgregar.getNombre(), rolAAgregar.getId());
+        Hibernate.initialize(rolAAgregar.getPermisos()); // Se serializan con el usuario
 
         if (usuario.getRoles() == null) {
             log.info("Inicializando colección de roles para el usuario.");
@@ -189,6 +263,7 @@ public class UsuarioService {
 
         log.info("PROCEDIENDO A AÑADIR: Añadiendo rol '{}' (ID: {}) a la colección de roles del usuario '{}'", rolAAgregar.getNombre(), rolAAgregar.getId(), usuario.getUsername());
         usuario.getRoles().add(rolAAgregar); // Aquí se añade el rol a la colección en memoria.
+        publicarCredencialesModificadas(usuario); // Las autoridades cacheadas ya no incluyen el rol nuevo
 
         log.info("Roles del usuario '{}' DESPUÉS de añadir a la colección (ANTES DE SAVE):", usuario.getUsername());
         for (Rol r : usuario.getRoles()) {
@@ -222,7 +297,7 @@ public class UsuarioService {
 
     @Transactional
     public Usuario removerRolDeUsuario(Long usuarioId, String nombreRol) {
-        Usuario usuario = usuarioRepository.findById(usuarioId)
+        Usuario usuario = usuarioRepository.findConRolesById(usuarioId)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con id: " + usuarioId));
         Rol rol = rolRepository.findByNombre(nombreRol.toUpperCase()) // Buscar rol por nombre (asegurar mayúsculas)
                 .orElseThrow(() -> new EntityNotFoundException("Rol no encontrado con nombre: " + nombreRol));
@@ -230,6 +305,18 @@ public class UsuarioService {
         if (usuario.getRoles() != null) {
             usuario.getRoles().remove(rol);
         }
+        publicarCredencialesModificadas(usuario);
         return usuarioRepository.save(usuario);
     }
+
+    private void rechazo(String motivo) {
+        meterRegistry.counter("ecomarket.usuarios.rechazos", "motivo", motivo).increment();
+    }
+
+    // Los tokens emitidos hasta ahora quedan revocados con el commit; las caches de autenticación se
+    // invalidan al confirmar la transacción
+    private void publicarCredencialesModificadas(Usuario usuario) {
+        usuario.setEpocaTokens(usuario.getEpocaTokens() + 1);
+        eventPublisher.publishEvent(new CredencialesUsuarioModificadasEvent(usuario.getUsername(), usuario.getEmail()));
+    }
 }
\ No newline at end of file
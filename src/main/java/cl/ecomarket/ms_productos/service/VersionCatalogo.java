@@ -0,0 +1,145 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.event.StockDescargadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Contador de cambios de todo el catálogo, para responder GET condicionales (ETag / Last-Modified)
+ * sin consultar la base de datos. Cada escritura en ProductoService lo incrementa después del commit.
+ * <p>
+ * Se incrementa al final, cuando la cache, los agregados y el snapshot ya aplicaron el cambio: quien lee
+ * el contador nuevo lee también los datos nuevos (CacheRespuestas guarda las respuestas con este contador).
+ * <p>
+ * Los ETag incluyen la época (el instante en que arrancó el proceso), así un ETag emitido antes
+ * de un reinicio nunca coincide con uno nuevo aunque el contador vuelva a empezar.
+ * <p>
+ * Last-Modified tiene precisión de segundos. Para que una escritura en el mismo segundo que una respuesta
+ * no deje a un cliente con If-Modified-Since recibiendo 304, la última modificación se lleva al segundo
+ * entero siguiente al cambio y no se informa hasta que ese segundo llega: todo Last-Modified entregado es
+ * anterior a las escrituras que vienen, y cada una de ellas lo adelanta.
+ */
+@Component
+public class VersionCatalogo {
+
+    /**
+     * @param contador La cantidad de cambios desde que arrancó el proceso.
+     * @param ultimaModificacion El segundo entero (epoch millis) siguiente al último cambio, o al arranque.
+     */
+    public record Estado(long contador, long ultimaModificacion) {
+    }
+
+    private final String epoca = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicReference<Estado> estado = new AtomicReference<>(new Estado(0, segundoSiguiente(System.currentTimeMillis())));
+    private volatile long ultimoCambioNanos = System.nanoTime();
+
+    public Estado getEstado() {
+        return estado.get();
+    }
+
+    /**
+     * @return true si el contador cambió hace menos de nanos nanosegundos (o el proceso arrancó hace menos).
+     */
+    public boolean cambioReciente(long nanos) {
+        return System.nanoTime() - ultimoCambioNanos < nanos;
+    }
+
+    /**
+     * @return El Last-Modified del estado, o -1 (sin Last-Modified) si el segundo del último cambio aún no termina.
+     */
+    public long lastModified(Estado estado) {
+        return System.currentTimeMillis() >= estado.ultimaModificacion() ? estado.ultimaModificacion() : -1;
+    }
+
+    /**
+     * ETag de un listado: cambia con cualquier escritura en el catálogo.
+     * @param consulta La ruta y los parámetros de la request, para que cada listado tenga su propio ETag.
+     */
+    public String etagListado(Estado estado, String consulta) {
+        return '"' + prefijo(estado) + Integer.toHexString(consulta.hashCode()) + '"';
+    }
+
+    /**
+     * ETag de un producto: el estado del catálogo más la versión y el stock de la fila. El stock
+     * se incluye porque con la escritura diferida cambia sin que cambie la versión.
+     * @param campos Los campos de la representación (fields), o null si es el producto completo.
+     */
+    public String etagProducto(Estado estado, Producto producto, Set<String> campos) {
+        return '"' + prefijo(estado) + representacion(campos) + fila(producto) + '"';
+    }
+
+    /**
+     * @return true si el ETag de un producto fue emitido con el estado dado del catálogo (nada cambió
+     * desde entonces) para la misma representación.
+     */
+    public boolean esDelEstado(String etag, Estado estado, Set<String> campos) {
+        return etag != null && sinComillas(etag).startsWith(prefijo(estado) + representacion(campos));
+    }
+
+    /**
+     * @return true si el ETag corresponde a la misma versión, stock y representación del producto,
+     * aunque el catálogo haya cambiado.
+     */
+    public boolean esDeLaFila(String etag, Producto producto, Set<String> campos) {
+        if (etag == null) {
+            return false;
+        }
+        String valor = sinComillas(etag);
+        return valor.startsWith(epoca + '.') && valor.endsWith('.' + representacion(campos) + fila(producto));
+    }
+
+    // AFTER_COMPLETION corre después de todos los afterCommit de la transacción. Tras un rollback
+    // también incrementa: solo invalida de más
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void alModificarProducto(ProductoModificadoEvent evento) {
+        incrementar();
+    }
+
+    // La descarga de la escritura diferida incrementa la versión de las filas
+    @EventListener
+    public void alDescargarStock(StockDescargadoEvent evento) {
+        incrementar();
+    }
+
+    private void incrementar() {
+        long siguiente = segundoSiguiente(System.currentTimeMillis());
+        ultimoCambioNanos = System.nanoTime();
+        estado.updateAndGet(e -> new Estado(e.contador() + 1, Math.max(siguiente, e.ultimaModificacion())));
+    }
+
+    private static long segundoSiguiente(long millis) {
+        return (millis / 1000 + 1) * 1000;
+    }
+
+    private String prefijo(Estado estado) {
+        return epoca + '.' + Long.toString(estado.contador(), 36) + '.';
+    }
+
+    // Con fields, cada selección de campos es otra representación y necesita su propio ETag
+    // (parsearCampos los entrega siempre en el mismo orden)
+    private static String representacion(Set<String> campos) {
+        return (campos == null ? "p" : "c" + Integer.toHexString(String.join(",", campos).hashCode())) + '.';
+    }
+
+    private static String fila(Producto producto) {
+        return producto.getId() + "-" + producto.getVersion() + "-" + producto.getStock();
+    }
+
+    private static String sinComillas(String etag) {
+        String valor = etag.trim();
+        if (valor.startsWith("W/")) {
+            valor = valor.substring(2);
+        }
+        if (valor.length() >= 2 && valor.startsWith("\"") && valor.endsWith("\"")) {
+            valor = valor.substring(1, valor.length() - 1);
+        }
+        return valor;
+    }
+}
@@ -0,0 +1,48 @@
+package cl.ecomarket.ms_productos.util;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deja el generador de ids de producto por sobre el mayor id existente. Es necesario en las
+ * bases de datos creadas cuando el id era AUTO_INCREMENT, donde la tabla id_generador parte vacía.
+ */
+@Component
+public class AlineadorIdProducto implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(AlineadorIdProducto.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AlineadorIdProducto(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Long maximo = jdbcTemplate.queryForObject("select max(id) from producto", Long.class);
+        if (maximo == null) {
+            return; // Sin productos, Hibernate inicializa el generador en el primer INSERT
+        }
+        // Con un bloque completo de margen, el primer id entregado queda sobre el máximo
+        // sin importar si el optimizador interpreta el valor como inicio o fin del bloque
+        long siguiente = maximo + Producto.BLOQUE_ID + 1;
+        int filas = jdbcTemplate.update(
+                "update id_generador set siguiente = ? where entidad = 'producto' and siguiente < ?", siguiente, siguiente);
+        if (filas == 0) {
+            Integer existe = jdbcTemplate.queryForObject(
+                    "select count(*) from id_generador where entidad = 'producto'", Integer.class);
+            if (existe == null || existe == 0) {
+                jdbcTemplate.update("insert into id_generador (entidad, siguiente) values ('producto', ?)", siguiente);
+                filas = 1;
+            }
+        }
+        if (filas > 0) {
+            log.info("Generador de ids de producto alineado: siguiente = {}", siguiente);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package cl.ecomarket.ms_productos.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Completa la columna categoria_normalizada de los productos guardados antes de que existiera.
+ * Después de la primera ejecución no encuentra filas pendientes.
+ */
+@Component
+public class NormalizadorCategorias implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(NormalizadorCategorias.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public NormalizadorCategorias(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // Misma regla que Producto.normalizarCategoria
+        int filas = jdbcTemplate.update("update producto set categoria_normalizada = lower(trim(categoria)) " +
+                "where categoria_normalizada is null and categoria is not null and trim(categoria) <> ''");
+        if (filas > 0) {
+            log.info("Se normalizó la categoría de {} productos existentes.", filas);
+        }
+    }
+}
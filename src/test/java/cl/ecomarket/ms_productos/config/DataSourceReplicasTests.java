@@ -0,0 +1,186 @@
+package cl.ecomarket.ms_productos.config;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.service.CacheProductos;
+import cl.ecomarket.ms_productos.service.CacheRespuestas;
+import cl.ecomarket.ms_productos.service.ProductoService;
+import cl.ecomarket.ms_productos.service.VersionCatalogo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Dos bases H2 en memoria: el primario de siempre y una "réplica" que solo recibe los datos cuando
+// el test llama a replicar(), así se puede ver desde dónde se leyó cada consulta
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:replicas_primario;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.replicas.habilitado=true",
+		"ecomarket.replicas.urls=" + DataSourceReplicasTests.URL_REPLICA,
+		"ecomarket.replicas.connection-timeout=PT1S",
+		"ecomarket.replicas.lectura-propia=PT1M",
+		"ecomarket.replicas.intervalo-chequeo-ms=3600000",
+		"ecomarket.replicas.ventana-listados=PT1M",
+		"ecomarket.productos.cache.habilitado=false"
+})
+class DataSourceReplicasTests {
+
+	// IFEXISTS: el pool de la réplica no puede crear la base; mientras no exista, la réplica está caída
+	static final String URL_REPLICA = "jdbc:h2:mem:replicas_replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;IFEXISTS=TRUE";
+	private static final String URL_CREACION_REPLICA = "jdbc:h2:mem:replicas_replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+	private static Connection replica;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private DataSourceReplicas dataSourceReplicas;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private ProductoRepository productoRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private CacheRespuestas cacheRespuestas;
+
+	@Autowired
+	private VersionCatalogo versionCatalogo;
+
+	@BeforeEach
+	void replicar() throws SQLException {
+		if (replica == null || replica.isClosed()) {
+			replica = DriverManager.getConnection(URL_CREACION_REPLICA, "sa", "");
+		}
+		List<String> script = jdbcTemplate.queryForList("SCRIPT NOPASSWORDS NOSETTINGS DROP", String.class);
+		try (Statement statement = replica.createStatement()) {
+			for (String sql : script) {
+				statement.execute(sql);
+			}
+		}
+		dataSourceReplicas.verificar();
+	}
+
+	@AfterEach
+	void limpiarUsuario() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void lasLecturasVanALaReplica() throws SQLException {
+		double antes = lecturas("replica-1", "replica");
+		productoService.createProducto(producto("REP-001"));
+
+		// La escritura fue al primario y la réplica aún no la recibe
+		assertThat(productoService.getProductoByCodigo("REP-001")).isEmpty();
+		replicar();
+		assertThat(productoService.getProductoByCodigo("REP-001")).isPresent();
+		assertThat(lecturas("replica-1", "replica") - antes).isGreaterThanOrEqualTo(2);
+	}
+
+	@Test
+	void quienEscribeLeeSuEscrituraDesdeElPrimario() {
+		autenticar("escritor@ecomarket.cl");
+		productoService.createProducto(producto("REP-002"));
+		double antes = lecturas("primario", "lectura-propia");
+
+		assertThat(productoService.getProductoByCodigo("REP-002")).isPresent();
+		assertThat(lecturas("primario", "lectura-propia") - antes).isEqualTo(1);
+
+		autenticar("otro@ecomarket.cl");
+		assertThat(productoService.getProductoByCodigo("REP-002")).isEmpty();
+	}
+
+	@Test
+	void siLaReplicaCaeSeLeeDelPrimario() throws SQLException {
+		productoService.createProducto(producto("REP-003"));
+		try (Statement statement = replica.createStatement()) {
+			statement.execute("SHUTDOWN");
+		}
+		dataSourceReplicas.verificar();
+		double antes = lecturas("primario", "sin-replica");
+
+		assertThat(productoService.getProductoByCodigo("REP-003")).isPresent();
+		assertThat(productoService.getProductoByCodigo("REP-003")).isPresent();
+		assertThat(lecturas("primario", "sin-replica") - antes).isEqualTo(2);
+		assertThat(registry.get("ecomarket.datasource.replicas.sanas").gauge().value()).isZero();
+
+		// Cuando vuelve, el chequeo periódico la reincorpora
+		replicar();
+		assertThat(registry.get("ecomarket.datasource.replicas.sanas").gauge().value()).isEqualTo(1);
+	}
+
+	@Test
+	void laCacheCargaDesdeElPrimario() {
+		productoService.createProducto(producto("REP-004"));
+		CacheProductos cache = new CacheProductos(true, 100, Duration.ofMinutes(1), transactionManager);
+
+		// La réplica aún no tiene el producto: sin cache no se encuentra, la cache lo carga del primario
+		assertThat(productoService.getProductoByCodigo("REP-004")).isEmpty();
+		assertThat(cache.porCodigo("REP-004", productoRepository::findByCodigo)).isPresent();
+		assertThat(cache.porCodigo("REP-004", codigo -> { throw new AssertionError("Debía ser un acierto"); })).isPresent();
+	}
+
+	@Test
+	void trasUnCambioLosListadosSeLeenDelPrimario() {
+		productoService.createProducto(producto("REP-005"));
+		long version = versionCatalogo.getEstado().contador();
+		Supplier<CacheRespuestas.Pagina> listar = () -> {
+			PaginaProductos pagina = productoService.getProductosByCategoria("replicas", null, 50);
+			return new CacheRespuestas.Pagina(pagina.productos(), pagina.siguienteCursor());
+		};
+
+		// La réplica no tiene el producto, pero la página que queda asociada al contador nuevo sí
+		assertThat(listar.get().cuerpo()).asList().extracting("codigo").doesNotContain("REP-005");
+		String json = new String(cacheRespuestas.obtener("/api/v1/productos?categoria=replicas", version, listar).json(),
+				StandardCharsets.UTF_8);
+		assertThat(json).contains("\"codigo\":\"REP-005\"");
+	}
+
+	private double lecturas(String destino, String motivo) {
+		Counter contador = registry.find("ecomarket.datasource.lecturas").tag("destino", destino).tag("motivo", motivo).counter();
+		return contador != null ? contador.count() : 0;
+	}
+
+	private static void autenticar(String usuario) {
+		SecurityContextHolder.getContext().setAuthentication(
+				UsernamePasswordAuthenticationToken.authenticated(usuario, null, List.of()));
+	}
+
+	private static Producto producto(String codigo) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre("Producto " + codigo);
+		producto.setCategoria("Replicas");
+		producto.setPrecio(1000.0);
+		producto.setStock(10);
+		return producto;
+	}
+}
@@ -0,0 +1,147 @@
+package cl.ecomarket.ms_productos.controller;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.service.ProductoService;
+import cl.ecomarket.ms_productos.service.VersionCatalogo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:get_condicional;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+class GetCondicionalProductosTests {
+
+	// El usuario admin que crea el DataInitializer
+	private static final String ADMIN = "Basic " + Base64.getEncoder()
+			.encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private VersionCatalogo versionCatalogo;
+
+	@Test
+	void unProductoSinCambiosRespondeNoModificadoYConCambiosSeVuelveAEntregar() throws Exception {
+		Producto producto = productoService.createProducto(producto("COND-001"));
+		String ruta = "/api/v1/productos/" + producto.getId();
+
+		String etag = mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+
+		// Otro producto cambia: la fila es la misma, así que se responde 304 con el ETag del estado nuevo
+		productoService.createProducto(producto("COND-002"));
+		String nuevo = mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(nuevo).isNotEqualTo(etag);
+
+		// El producto cambia: 200 con el stock nuevo, tanto con el ETag viejo como con el nuevo
+		productoService.ajustarStock("COND-001", -3);
+		for (String anterior : new String[]{etag, nuevo}) {
+			mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_NONE_MATCH, anterior))
+					.andExpect(status().isOk())
+					.andExpect(content().string(containsString("\"stock\":7")));
+		}
+	}
+
+	@Test
+	void cadaSeleccionDeCamposTieneSuPropioEtag() throws Exception {
+		Producto producto = productoService.createProducto(producto("COND-CAMPOS"));
+		String ruta = "/api/v1/productos/codigo/COND-CAMPOS";
+
+		String completo = mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// El ETag del producto completo no valida la representación reducida, aunque nada haya cambiado
+		MvcResult reducido = mvc.perform(get(ruta).param("fields", "codigo,stock")
+						.header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_NONE_MATCH, completo))
+				.andExpect(status().isOk())
+				.andExpect(content().json("{\"codigo\":\"COND-CAMPOS\",\"stock\":10}", true))
+				.andReturn();
+		String campos = reducido.getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(campos).isNotEqualTo(completo);
+
+		mvc.perform(get(ruta).param("fields", "codigo,stock")
+						.header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_NONE_MATCH, campos))
+				.andExpect(status().isNotModified());
+		// Tras un cambio en otro producto, la comparación por fila también distingue la representación
+		productoService.createProducto(producto("COND-OTRO"));
+		mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_NONE_MATCH, campos))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"id\":" + producto.getId())));
+		mvc.perform(get(ruta).param("fields", "stock,codigo")
+						.header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_NONE_MATCH, campos))
+				.andExpect(status().isNotModified());
+	}
+
+	@Test
+	void ifModifiedSinceNoDevuelveNoModificadoTrasUnaEscrituraEnElMismoSegundo() throws Exception {
+		productoService.createProducto(producto("COND-FECHA"));
+		String ruta = "/api/v1/productos/codigo/COND-FECHA";
+		String listado = "/api/v1/productos?limit=5";
+
+		// Mientras no termina el segundo del último cambio, las respuestas no llevan Last-Modified
+		VersionCatalogo.Estado estado = versionCatalogo.getEstado();
+		MvcResult inmediato = mvc.perform(get(listado).header(HttpHeaders.AUTHORIZATION, ADMIN))
+				.andExpect(status().isOk())
+				.andReturn();
+		if (System.currentTimeMillis() < estado.ultimaModificacion()) {
+			assertThat(inmediato.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)).isNull();
+		}
+		Thread.sleep(Math.max(0, estado.ultimaModificacion() - System.currentTimeMillis()) + 1);
+
+		String fechaListado = mvc.perform(get(listado).header(HttpHeaders.AUTHORIZATION, ADMIN))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+		String fechaProducto = mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+		assertThat(fechaListado).isNotNull().isEqualTo(fechaProducto);
+		mvc.perform(get(listado).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_MODIFIED_SINCE, fechaListado))
+				.andExpect(status().isNotModified());
+		mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_MODIFIED_SINCE, fechaProducto))
+				.andExpect(status().isNotModified());
+
+		// La escritura cae en el mismo segundo que las respuestas anteriores
+		productoService.ajustarStock("COND-FECHA", 5);
+		mvc.perform(get(listado).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_MODIFIED_SINCE, fechaListado))
+				.andExpect(status().isOk());
+		mvc.perform(get(ruta).header(HttpHeaders.AUTHORIZATION, ADMIN).header(HttpHeaders.IF_MODIFIED_SINCE, fechaProducto))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"stock\":15")));
+	}
+
+	private static Producto producto(String codigo) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre("Producto " + codigo);
+		producto.setCategoria("Frutas");
+		producto.setPrecio(1000.0);
+		producto.setStock(10);
+		return producto;
+	}
+}
@@ -0,0 +1,58 @@
+package cl.ecomarket.ms_productos.security;
+
+import cl.ecomarket.ms_productos.model.Usuario;
+import cl.ecomarket.ms_productos.service.UsuarioService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:cache_autenticacion;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+class CachingAuthenticationProviderTests {
+
+	@Autowired
+	private AuthenticationManager authenticationManager;
+
+	@Autowired
+	private CacheAutenticacion cacheAutenticacion;
+
+	@Autowired
+	private UsuarioService usuarioService;
+
+	@Test
+	void losCambiosDeRolesYContrasenaSeAplicanSinEsperarElTtl() {
+		Usuario usuario = new Usuario();
+		usuario.setUsername("cache-auth");
+		usuario.setNombreCompleto("Cache Autenticación");
+		usuario.setEmail("cache-auth@ecomarket.cl");
+		usuario.setPassword("clave-original");
+		Long id = usuarioService.createUsuario(usuario).getId();
+		usuarioService.asignarRolAUsuario(id, "EMPLEADO_VENTAS");
+
+		autenticar("cache-auth", "clave-original");
+		long aciertos = cacheAutenticacion.getAciertos();
+		autenticar("cache-auth", "clave-original");
+		assertThat(cacheAutenticacion.getAciertos()).isEqualTo(aciertos + 1);
+
+		usuarioService.asignarRolAUsuario(id, "LOGISTICA");
+		assertThat(AuthorityUtils.authorityListToSet(autenticar("cache-auth", "clave-original").getAuthorities()))
+				.contains("ROLE_EMPLEADO_VENTAS", "ROLE_LOGISTICA");
+
+		usuarioService.cambiarPassword(id, "clave-nueva");
+		assertThatThrownBy(() -> autenticar("cache-auth", "clave-original")).isInstanceOf(BadCredentialsException.class);
+		assertThat(autenticar("cache-auth@ecomarket.cl", "clave-nueva").isAuthenticated()).isTrue();
+	}
+
+	private Authentication autenticar(String login, String password) {
+		return authenticationManager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(login, password));
+	}
+}
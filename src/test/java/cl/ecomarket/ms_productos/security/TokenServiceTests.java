@@ -0,0 +1,89 @@
+package cl.ecomarket.ms_productos.security;
+
+import cl.ecomarket.ms_productos.model.Usuario;
+import cl.ecomarket.ms_productos.repository.UsuarioRepository;
+import cl.ecomarket.ms_productos.service.UsuarioService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:token_service;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.security.token.secreto=" + TokenServiceTests.SECRETO
+})
+class TokenServiceTests {
+
+	static final String SECRETO = "c2VjcmV0by1kZS1wcnVlYmEtcGFyYS10b2tlbnMtMzI=";
+
+	@Autowired
+	private TokenService tokenService;
+
+	@Autowired
+	private AuthenticationManager authenticationManager;
+
+	@Autowired
+	private UsuarioService usuarioService;
+
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void unTokenRevocadoSeRechazaTambienEnOtroNodoYDespuesDeReiniciar() {
+		Usuario usuario = new Usuario();
+		usuario.setUsername("token-revocado");
+		usuario.setNombreCompleto("Token Revocado");
+		usuario.setEmail("token-revocado@ecomarket.cl");
+		usuario.setPassword("clave-token");
+		Long id = usuarioService.createUsuario(usuario).getId();
+
+		String token = tokenService.emitir(authenticationManager.authenticate(
+				UsernamePasswordAuthenticationToken.unauthenticated("token-revocado", "clave-token")));
+		// Otro nodo (o el mismo proceso después de reiniciar) con el mismo secreto
+		TokenService otroNodo = new TokenService(SECRETO, Duration.ofMinutes(15), Duration.ZERO, usuarioRepository, transactionManager);
+		assertThat(tokenService.validar(token)).isNotNull();
+		assertThat(otroNodo.validar(token).getName()).isEqualTo("token-revocado@ecomarket.cl");
+
+		usuarioService.cambiarPassword(id, "clave-nueva");
+		assertThat(tokenService.validar(token)).isNull();
+		assertThat(otroNodo.validar(token)).isNull();
+		assertThat(new TokenService(SECRETO, Duration.ofMinutes(15), Duration.ofSeconds(5), usuarioRepository, transactionManager)
+				.validar(token)).isNull();
+
+		// Un token nuevo vale; al desactivar la cuenta también se rechaza
+		String nuevo = tokenService.emitir(authenticationManager.authenticate(
+				UsernamePasswordAuthenticationToken.unauthenticated("token-revocado", "clave-nueva")));
+		assertThat(otroNodo.validar(nuevo)).isNotNull();
+		usuarioService.desactivarUsuario(id);
+		assertThat(otroNodo.validar(nuevo)).isNull();
+	}
+
+	@Test
+	void unaRevocacionEntreLaAutenticacionYLaEmisionDejaElTokenRevocado() {
+		Usuario usuario = new Usuario();
+		usuario.setUsername("token-carrera");
+		usuario.setNombreCompleto("Token Carrera");
+		usuario.setEmail("token-carrera@ecomarket.cl");
+		usuario.setPassword("clave-carrera");
+		Long id = usuarioService.createUsuario(usuario).getId();
+
+		Authentication autenticacion = authenticationManager.authenticate(
+				UsernamePasswordAuthenticationToken.unauthenticated("token-carrera", "clave-carrera"));
+		usuarioService.cambiarPassword(id, "clave-cambiada"); // Se confirma antes de emitir el token
+
+		String token = tokenService.emitir(autenticacion);
+		assertThat(tokenService.validar(token)).isNull();
+		assertThat(new TokenService(SECRETO, Duration.ofMinutes(15), Duration.ZERO, usuarioRepository, transactionManager)
+				.validar(token)).isNull();
+	}
+}
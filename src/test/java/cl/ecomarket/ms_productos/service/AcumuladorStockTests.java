@@ -0,0 +1,145 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.HILOS;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.ajustarEnParalelo;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.crearProducto;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.descontarConLoteEnParalelo;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.descontarEnParalelo;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.ejecutarEnParalelo;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.stockEsperado;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:write_behind;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.stock.write-behind.habilitado=true",
+		"ecomarket.stock.write-behind.directorio=target/diario-stock-tests",
+		"ecomarket.stock.write-behind.fsync=false",
+		"ecomarket.stock.write-behind.intervalo-ms=3600000"
+})
+class AcumuladorStockTests {
+
+	private static final Logger log = LoggerFactory.getLogger(AcumuladorStockTests.class);
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private AcumuladorStock acumuladorStock;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void losAjustesSeVenAntesDeDescargarYSeAplicanEnUnSoloBatch() throws Exception {
+		crearProducto(productoService, "WB-001", 2_000);
+		int ajustesPorHilo = 250;
+
+		long inicio = System.nanoTime();
+		int rechazados = ajustarEnParalelo(productoService, "WB-001", ajustesPorHilo);
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+
+		int esperado = stockEsperado(2_000, ajustesPorHilo);
+		assertThat(rechazados).isZero();
+		assertThat(productoService.getProductoByCodigo("WB-001").orElseThrow().getStock()).isEqualTo(esperado);
+		assertThat(stockEnBd("WB-001")).isEqualTo(2_000);
+
+		// Una lectura atrasada (réplica, cache) no se mezcla con los ajustes: el contador es el que manda
+		Producto atrasado = productoService.getProductoByCodigo("WB-001").orElseThrow().copiar();
+		atrasado.setStock(1_999);
+		assertThat(acumuladorStock.aplicarPendientes(atrasado).getStock()).isEqualTo(esperado);
+
+		acumuladorStock.descargar();
+		assertThat(stockEnBd("WB-001")).isEqualTo(esperado);
+		assertThat(productoService.getProductoByCodigo("WB-001").orElseThrow().getStock()).isEqualTo(esperado);
+		log.info("{} ajustes diferidos sobre un mismo código en {} s ({} ajustes/s)",
+				HILOS * ajustesPorHilo, String.format("%.2f", segundos), String.format("%.0f", HILOS * ajustesPorHilo / segundos));
+	}
+
+	@Test
+	void losAjustesDiferidosNoDejanStockNegativo() throws Exception {
+		crearProducto(productoService, "WB-002", 100);
+
+		int exitosos = descontarEnParalelo(productoService, "WB-002", 20);
+
+		acumuladorStock.descargar();
+		assertThat(exitosos).isEqualTo(100);
+		assertThat(stockEnBd("WB-002")).isZero();
+	}
+
+	@Test
+	void losLotesYLosAjustesDiferidosNoVendenMasQueElStock() throws Exception {
+		crearProducto(productoService, "WB-004", 100);
+
+		int exitosos = descontarConLoteEnParalelo(productoService, "WB-004", 40);
+
+		assertThat(exitosos).isEqualTo(100);
+		assertThat(productoService.getProductoByCodigo("WB-004").orElseThrow().getStock()).isZero();
+		acumuladorStock.descargar();
+		assertThat(stockEnBd("WB-004")).isZero();
+	}
+
+	@Test
+	void unPutFijaElStockSobreLosAjustesDiferidos() {
+		Producto producto = crearProducto(productoService, "WB-003", 10);
+		productoService.ajustarStock("WB-003", -4);
+
+		Producto cambios = producto.copiar();
+		cambios.setVersion(null);
+		cambios.setStock(50);
+		productoService.updateProducto(producto.getId(), cambios);
+		productoService.ajustarStock("WB-003", -5);
+
+		assertThat(productoService.getProductoByCodigo("WB-003").orElseThrow().getStock()).isEqualTo(45);
+		acumuladorStock.descargar();
+		assertThat(stockEnBd("WB-003")).isEqualTo(45);
+	}
+
+	@Test
+	void cadaAjusteDiferidoLlevaSuNumeroYLaVersionDeLaFila() throws Exception {
+		Producto producto = crearProducto(productoService, "WB-005", 100);
+		Queue<AcumuladorStock.Saldo> saldos = new ConcurrentLinkedQueue<>();
+
+		ejecutarEnParalelo(hilo -> {
+			for (int i = 0; i < 10; i++) {
+				saldos.add(acumuladorStock.ajustar("WB-005", -1, producto));
+			}
+		});
+
+		// En el orden de los números de ajuste el stock baja de a uno: es el orden en que se aplicaron
+		List<AcumuladorStock.Saldo> ordenados = saldos.stream()
+				.sorted(Comparator.comparingLong(AcumuladorStock.Saldo::ajuste))
+				.toList();
+		for (int i = 0; i < ordenados.size(); i++) {
+			assertThat(ordenados.get(i).ajuste()).isEqualTo(i + 1);
+			assertThat(ordenados.get(i).stock()).isEqualTo(99 - i);
+			assertThat(ordenados.get(i).version()).isEqualTo(producto.getVersion());
+		}
+
+		// Un PUT sube la versión: los ajustes siguientes la llevan y siguen la numeración
+		Producto cambios = producto.copiar();
+		cambios.setVersion(null);
+		cambios.setStock(50);
+		Producto actualizado = productoService.updateProducto(producto.getId(), cambios);
+		AcumuladorStock.Saldo despues = acumuladorStock.ajustar("WB-005", -1, producto);
+		assertThat(despues.version()).isEqualTo(actualizado.getVersion()).isGreaterThan(producto.getVersion());
+		assertThat(despues.ajuste()).isEqualTo(HILOS * 10 + 1);
+		assertThat(despues.stock()).isEqualTo(49);
+	}
+
+	private int stockEnBd(String codigo) {
+		return jdbcTemplate.queryForObject("select stock from producto where codigo = ?", Integer.class, codigo);
+	}
+}
@@ -0,0 +1,70 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.AjusteStock;
+import cl.ecomarket.ms_productos.dto.ResultadoAjusteStock;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.crearProducto;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:ajuste_lote;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.stock.lote.max-lineas=4"
+})
+class AjusteStockLoteTests {
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void unaLineaInvalidaRevierteTodoElLote() {
+		crearProducto(productoService, "LOTE-1", 10);
+		crearProducto(productoService, "LOTE-2", 3);
+
+		AjusteStockLoteException error = catchThrowableOfType(AjusteStockLoteException.class,
+				() -> productoService.ajustarStockLote(List.of(
+						new AjusteStock("LOTE-1", -4),
+						new AjusteStock("LOTE-2", -2),
+						new AjusteStock("LOTE-2", -2), // La segunda línea del mismo código ya no tiene stock
+						new AjusteStock("NO-EXISTE", 1))));
+
+		assertThat(error.getResultados()).extracting(ResultadoAjusteStock::stockResultante)
+				.containsExactly(6, 1, null, null);
+		assertThat(error.getResultados().get(2).error()).startsWith("No hay suficiente stock");
+		assertThat(error.getResultados().get(3).error()).startsWith("Producto no encontrado");
+		assertThat(stockEnBd("LOTE-1")).isEqualTo(10);
+		assertThat(stockEnBd("LOTE-2")).isEqualTo(3);
+
+		List<ResultadoAjusteStock> aplicados = productoService.ajustarStockLote(List.of(
+				new AjusteStock("LOTE-1", -4), new AjusteStock("LOTE-2", -2), new AjusteStock("LOTE-1", 1)));
+		assertThat(aplicados).extracting(ResultadoAjusteStock::stockResultante).containsExactly(6, 1, 7);
+		assertThat(stockEnBd("LOTE-1")).isEqualTo(7);
+		assertThat(stockEnBd("LOTE-2")).isEqualTo(1);
+	}
+
+	@Test
+	void elMaximoDeLineasTieneSuPropiaPropiedad() {
+		List<AjusteStock> cinco = List.of(new AjusteStock("A", 1), new AjusteStock("B", 1), new AjusteStock("C", 1),
+				new AjusteStock("D", 1), new AjusteStock("E", 1));
+
+		assertThatThrownBy(() -> productoService.ajustarStockLote(cinco))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("4 líneas");
+		// El tamaño de página del listado no cambia con la propiedad del lote
+		assertThat(productoService.limiteDePagina(5)).isEqualTo(5);
+	}
+
+	private int stockEnBd(String codigo) {
+		return jdbcTemplate.queryForObject("select stock from producto where codigo = ?", Integer.class, codigo);
+	}
+}
@@ -0,0 +1,131 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.AjusteStock;
+import cl.ecomarket.ms_productos.model.Producto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Escenarios de ajustes de stock concurrentes, compartidos por las pruebas del UPDATE condicional
+ * (ProductoServiceConcurrencyTests) y de la escritura diferida (AcumuladorStockTests).
+ */
+final class AjustesStockConcurrentes {
+
+	static final int HILOS = 8;
+
+	interface Tarea {
+		void ejecutar(int hilo) throws Exception;
+	}
+
+	private AjustesStockConcurrentes() {
+	}
+
+	static Producto crearProducto(ProductoService productoService, String codigo, int stock) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre("Producto " + codigo);
+		producto.setCategoria("Pruebas");
+		producto.setPrecio(1000.0);
+		producto.setStock(stock);
+		return productoService.createProducto(producto);
+	}
+
+	/**
+	 * Los hilos pares descuentan 2 y los impares reponen 1, ajustesPorHilo veces cada uno.
+	 * @return La cantidad de ajustes rechazados por falta de stock.
+	 */
+	static int ajustarEnParalelo(ProductoService productoService, String codigo, int ajustesPorHilo) throws Exception {
+		AtomicInteger rechazados = new AtomicInteger();
+		ejecutarEnParalelo(hilo -> {
+			for (int i = 0; i < ajustesPorHilo; i++) {
+				int cantidad = hilo % 2 == 0 ? -2 : 1;
+				try {
+					productoService.ajustarStock(codigo, cantidad);
+				} catch (IllegalArgumentException e) {
+					rechazados.incrementAndGet();
+				}
+			}
+		});
+		return rechazados.get();
+	}
+
+	/**
+	 * @return El stock esperado después de {@link #ajustarEnParalelo} sin rechazos.
+	 */
+	static int stockEsperado(int stockInicial, int ajustesPorHilo) {
+		return stockInicial + (HILOS / 2) * ajustesPorHilo * (-2 + 1);
+	}
+
+	/**
+	 * Cada hilo intenta descontar 1, descuentosPorHilo veces.
+	 * @return La cantidad de descuentos aceptados.
+	 */
+	static int descontarEnParalelo(ProductoService productoService, String codigo, int descuentosPorHilo) throws Exception {
+		AtomicInteger exitosos = new AtomicInteger();
+		ejecutarEnParalelo(hilo -> {
+			for (int i = 0; i < descuentosPorHilo; i++) {
+				try {
+					productoService.ajustarStock(codigo, -1);
+					exitosos.incrementAndGet();
+				} catch (IllegalArgumentException e) {
+					// Sin stock
+				}
+			}
+		});
+		return exitosos.get();
+	}
+
+	/**
+	 * Los hilos pares descuentan 1 con el ajuste por lote y los impares con el ajuste individual
+	 * (diferido si la escritura diferida está habilitada), descuentosPorHilo veces cada uno.
+	 * @return La cantidad de descuentos aceptados.
+	 */
+	static int descontarConLoteEnParalelo(ProductoService productoService, String codigo, int descuentosPorHilo) throws Exception {
+		AtomicInteger exitosos = new AtomicInteger();
+		ejecutarEnParalelo(hilo -> {
+			for (int i = 0; i < descuentosPorHilo; i++) {
+				try {
+					if (hilo % 2 == 0) {
+						productoService.ajustarStockLote(List.of(new AjusteStock(codigo, -1)));
+					} else {
+						productoService.ajustarStock(codigo, -1);
+					}
+					exitosos.incrementAndGet();
+				} catch (AjusteStockLoteException | IllegalArgumentException e) {
+					// Sin stock
+				}
+			}
+		});
+		return exitosos.get();
+	}
+
+	// Los hilos parten a la vez para que los ajustes realmente compitan
+	static void ejecutarEnParalelo(Tarea tarea) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+		CountDownLatch partida = new CountDownLatch(1);
+		List<Future<?>> futuros = new ArrayList<>();
+		for (int h = 0; h < HILOS; h++) {
+			int hilo = h;
+			futuros.add(executor.submit(() -> {
+				partida.await();
+				tarea.ejecutar(hilo);
+				return null;
+			}));
+		}
+		partida.countDown();
+		for (Future<?> futuro : futuros) {
+			futuro.get();
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+	}
+}
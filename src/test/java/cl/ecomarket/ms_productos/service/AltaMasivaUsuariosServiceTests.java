@@ -0,0 +1,95 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.AltaUsuario;
+import cl.ecomarket.ms_productos.dto.ResultadoAltaMasiva;
+import cl.ecomarket.ms_productos.dto.ResultadoAltaUsuario;
+import cl.ecomarket.ms_productos.dto.ResumenUsuario;
+import cl.ecomarket.ms_productos.model.Usuario;
+import cl.ecomarket.ms_productos.repository.UsuarioRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// IGNORECASE: las columnas de texto comparan sin distinguir mayúsculas, como con la collation por defecto de MySQL
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:alta_masiva;MODE=MySQL;DATABASE_TO_LOWER=TRUE;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.usuarios.lote.hilos=2"
+})
+class AltaMasivaUsuariosServiceTests {
+
+	@Autowired
+	private AltaMasivaUsuariosService altaMasivaUsuariosService;
+
+	@Autowired
+	private UsuarioService usuarioService;
+
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void creaLasFilasValidasConSusRolesYReportaLasRechazadas() {
+		ResultadoAltaMasiva resultado = altaMasivaUsuariosService.crearUsuarios(List.of(
+				new AltaUsuario("lote-ana", "Ana Lote", "ana@lote.cl", " clave-ana ", List.of("logistica", "EMPLEADO_VENTAS")),
+				new AltaUsuario("gerente01", "Repetido en la base", "otro@lote.cl", "clave", null),
+				new AltaUsuario("lote-beto", "Beto Lote", "ana@lote.cl", "clave", null),
+				new AltaUsuario("lote-carla", "Carla Lote", "carla@lote.cl", "clave", List.of("CAJERO")),
+				new AltaUsuario("lote-dani", "Dani Lote", "no-es-email", "clave", null),
+				new AltaUsuario("lote-eva", "Eva Lote", "eva@lote.cl", "clave-eva", null)));
+
+		assertThat(resultado.creados()).isEqualTo(2);
+		assertThat(resultado.conError()).isEqualTo(4);
+		assertThat(resultado.resultados()).extracting(ResultadoAltaUsuario::fila).containsExactly(1, 2, 3, 4, 5, 6);
+		List<String> errores = resultado.resultados().stream().map(ResultadoAltaUsuario::error).toList();
+		assertThat(errores.subList(0, 4)).containsExactly(null, "El nombre de usuario ya existe: gerente01",
+				"Email repetido en el lote: ana@lote.cl", "Rol no encontrado: CAJERO");
+		assertThat(errores.get(4)).startsWith("email: "); // El mensaje de Bean Validation depende del locale
+		assertThat(errores.get(5)).isNull();
+
+		Long idAna = resultado.resultados().get(0).id();
+		Usuario ana = usuarioRepository.findParaAutenticacion("lote-ana").get(0);
+		assertThat(ana.getId()).isEqualTo(idAna);
+		assertThat(ana.isActivo()).isTrue();
+		assertThat(passwordEncoder.matches("clave-ana", ana.getPassword())).isTrue();
+		ResumenUsuario resumen = usuarioService.listarUsuarios(null, "LOGISTICA", "id,desc", 0, 1).usuarios().get(0);
+		assertThat(resumen.username()).isEqualTo("lote-ana");
+		assertThat(resumen.roles()).containsExactly("EMPLEADO_VENTAS", "LOGISTICA");
+		assertThat(usuarioRepository.findByUsername("lote-eva").orElseThrow().getId()).isEqualTo(resultado.resultados().get(5).id());
+	}
+
+	@Test
+	void losRepetidosSeDetectanSinDistinguirMayusculas() {
+		ResultadoAltaMasiva resultado = altaMasivaUsuariosService.crearUsuarios(List.of(
+				new AltaUsuario("Gerente01", "Repetido en la base", "mayus@lote.cl", "clave", null),
+				new AltaUsuario("lote-fer", "Fer Lote", "GERENTE01@EcoMarket.cl", "clave", null),
+				new AltaUsuario("Lote-Gabi", "Gabi Lote", "gabi@lote.cl", "clave", null),
+				new AltaUsuario("lote-gabi", "Gabi Repetida", "otra-gabi@lote.cl", "clave", null),
+				new AltaUsuario("lote-hugo", "Hugo Lote", "Gabi@Lote.cl", "clave", null)));
+
+		assertThat(resultado.creados()).isEqualTo(1);
+		assertThat(resultado.resultados()).extracting(ResultadoAltaUsuario::error).containsExactly(
+				"El nombre de usuario ya existe: Gerente01",
+				"El email ya está registrado: GERENTE01@EcoMarket.cl",
+				null,
+				"Username repetido en el lote: lote-gabi",
+				"Email repetido en el lote: Gabi@Lote.cl");
+
+		// El alta individual aplica la misma regla
+		Usuario individual = new Usuario();
+		individual.setUsername("LOTE-GABI");
+		individual.setNombreCompleto("Gabi Individual");
+		individual.setEmail("individual@lote.cl");
+		individual.setPassword("clave");
+		assertThatThrownBy(() -> usuarioService.createUsuario(individual))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("El nombre de usuario ya existe: LOTE-GABI");
+	}
+}
@@ -0,0 +1,73 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.model.Producto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:cache_respuestas;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.productos.snapshot.habilitado=true"
+})
+class CacheRespuestasTests {
+
+	@Autowired
+	private CacheRespuestas cacheRespuestas;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private VersionCatalogo versionCatalogo;
+
+	@Test
+	void entregaLosMismosBytesHastaQueCambiaElCatalogo() throws IOException {
+		for (int i = 1; i <= 30; i++) {
+			productoService.createProducto(producto("RESP-" + i));
+		}
+		AtomicInteger consultas = new AtomicInteger();
+		Supplier<CacheRespuestas.Pagina> listar = () -> {
+			consultas.incrementAndGet();
+			PaginaProductos pagina = productoService.listarProductos(null, 50);
+			return new CacheRespuestas.Pagina(pagina.productos(), pagina.siguienteCursor());
+		};
+
+		long version = versionCatalogo.getEstado().contador();
+		CacheRespuestas.Respuesta primera = cacheRespuestas.obtener("/api/v1/productos?limit=50", version, listar);
+		CacheRespuestas.Respuesta segunda = cacheRespuestas.obtener("/api/v1/productos?limit=50", version, listar);
+		assertThat(consultas).hasValue(1);
+		assertThat(segunda.json()).isSameAs(primera.json());
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(primera.gzip()))) {
+			assertThat(gzip.readAllBytes()).isEqualTo(primera.json());
+		}
+
+		// El contador cambia cuando el snapshot ya tiene el cambio: la consulta se vuelve a ejecutar y lo ve
+		productoService.ajustarStock("RESP-1", 5);
+		long nueva = versionCatalogo.getEstado().contador();
+		assertThat(nueva).isGreaterThan(version);
+		String json = new String(cacheRespuestas.obtener("/api/v1/productos?limit=50", nueva, listar).json(),
+				StandardCharsets.UTF_8);
+		assertThat(consultas).hasValue(2);
+		assertThat(json).contains("\"codigo\":\"RESP-1\"", "\"stock\":15");
+	}
+
+	private static Producto producto(String codigo) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre("Producto " + codigo);
+		producto.setCategoria("Frutas");
+		producto.setPrecio(1000.0);
+		producto.setStock(10);
+		return producto;
+	}
+}
@@ -0,0 +1,92 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:snapshot_catalogo;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.productos.snapshot.habilitado=true"
+})
+class CatalogoEnMemoriaTests {
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private ProductoRepository productoRepository;
+
+	@Autowired
+	private CatalogoEnMemoria catalogo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void lasLecturasNoConsultanLaBaseYVenCadaEscrituraAlConfirmarse() {
+		assertThat(catalogo.isListo()).isTrue();
+		Producto manzana = productoService.createProducto(producto("SNAP-001", "Frutas", 1200.0));
+		productoService.createProducto(producto("SNAP-002", " frutas ", 800.0));
+		assertThat(productoService.getProductoByCodigo("SNAP-001").orElseThrow().getPrecio()).isEqualTo(1200.0);
+
+		// Un cambio hecho por fuera de ProductoService no se ve: la lectura viene del snapshot
+		jdbcTemplate.update("update producto set precio = 1 where codigo = 'SNAP-001'");
+		assertThat(productoService.getProductoById(manzana.getId()).orElseThrow().getPrecio()).isEqualTo(1200.0);
+
+		Producto cambios = producto("SNAP-001", "Frutas", 1500.0);
+		productoService.updateProducto(manzana.getId(), cambios);
+		Producto leido = productoService.getProductoByCodigo("SNAP-001").orElseThrow();
+		assertThat(leido.getPrecio()).isEqualTo(1500.0);
+		// La versión es la de la fila confirmada, no la de la copia publicada antes del flush
+		assertThat(leido.getVersion()).isEqualTo(
+				jdbcTemplate.queryForObject("select version from producto where codigo = 'SNAP-001'", Long.class));
+
+		productoService.ajustarStock("SNAP-002", -3);
+		assertThat(productoService.getProductoByCodigo("SNAP-002").orElseThrow().getStock()).isEqualTo(7);
+
+		productoService.deleteProducto(manzana.getId());
+		assertThat(productoService.getProductoById(manzana.getId())).isEmpty();
+		assertThat(productoService.getProductoByCodigo("SNAP-001")).isEmpty();
+	}
+
+	@Test
+	void categoriaYRangoDePrecioPaginanComoLaBaseDeDatos() {
+		for (int i = 1; i <= 5; i++) {
+			productoService.createProducto(producto("SNAP-R" + i, i % 2 == 0 ? "Snap-Par" : "Snap-Impar", 90_000.0 + i));
+		}
+
+		List<String> impares = new ArrayList<>();
+		Long cursor = null;
+		do {
+			PaginaProductos pagina = productoService.getProductosByCategoria("SNAP-IMPAR", cursor, 2);
+			pagina.productos().forEach(p -> impares.add(p.getCodigo()));
+			cursor = pagina.siguienteCursor();
+		} while (cursor != null);
+		assertThat(impares).containsExactly("SNAP-R1", "SNAP-R3", "SNAP-R5");
+
+		List<Producto> enRango = productoService.getProductosByRangoPrecio(90_002.0, 90_004.0, null, 50).productos();
+		assertThat(enRango).extracting(Producto::getCodigo).containsExactly("SNAP-R2", "SNAP-R3", "SNAP-R4");
+		assertThat(enRango).isEqualTo(productoRepository.findByPrecioBetweenAndIdGreaterThanOrderByIdAsc(
+				90_002.0, 90_004.0, 0L, Limit.of(50)));
+	}
+
+	private static Producto producto(String codigo, String categoria, double precio) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre("Producto " + codigo);
+		producto.setCategoria(categoria);
+		producto.setPrecio(precio);
+		producto.setStock(10);
+		return producto;
+	}
+}
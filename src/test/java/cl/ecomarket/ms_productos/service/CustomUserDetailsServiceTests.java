@@ -0,0 +1,60 @@
+package cl.ecomarket.ms_productos.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class CustomUserDetailsServiceTests {
+
+	@Autowired
+	private CustomUserDetailsService customUserDetailsService;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	void cargaPorUsernameConUnaSolaConsulta() {
+		UserDetails user = customUserDetailsService.loadUserByUsername("admin");
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(user.getUsername()).isEqualTo("admin@ecomarket.cl");
+		assertThat(AuthorityUtils.authorityListToSet(user.getAuthorities()))
+				.contains("ROLE_ADMINISTRADOR_SISTEMA", "PRODUCTOS_LEER", "USUARIOS_GESTIONAR");
+	}
+
+	@Test
+	void cargaPorEmailConUnaSolaConsulta() {
+		UserDetails user = customUserDetailsService.loadUserByUsername("gerente01@ecomarket.cl");
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(AuthorityUtils.authorityListToSet(user.getAuthorities()))
+				.containsExactlyInAnyOrder("ROLE_GERENTE_TIENDA", "PRODUCTOS_LEER", "PRODUCTOS_CREAR", "PRODUCTOS_EDITAR");
+	}
+
+	@Test
+	void usuarioInexistenteUsaUnaSolaConsulta() {
+		assertThatThrownBy(() -> customUserDetailsService.loadUserByUsername("no-existe"))
+				.isInstanceOf(UsernameNotFoundException.class);
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,69 @@
+package cl.ecomarket.ms_productos.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.HILOS;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.ejecutarEnParalelo;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiarioStockTests {
+
+	@TempDir
+	Path directorio;
+
+	@Test
+	void losCodigosConSeparadoresSeLeenTalCual() throws Exception {
+		DiarioStock diario = new DiarioStock(directorio, false);
+		diario.abrir(1);
+		diario.registrar("COD\t1", -2);
+		diario.registrar("línea\nnueva", 5);
+		diario.registrar("12:3", 1);
+		diario.registrar("COD\t1", 7);
+		diario.cerrar();
+
+		assertThat(new DiarioStock(directorio, false).leerSegmentos())
+				.containsExactly(Map.entry(1L, Map.of("COD\t1", 5L, "línea\nnueva", 5L, "12:3", 1L)));
+	}
+
+	@Test
+	void ignoraElUltimoRegistroSiLaEscrituraSeCorto() throws Exception {
+		DiarioStock diario = new DiarioStock(directorio, false);
+		diario.abrir(4);
+		diario.registrar("A", 3);
+		diario.cerrar();
+		Path segmento = directorio.resolve("segmento-4.log");
+		for (String incompleto : new String[]{"1", "1:", "5:AB", "1:B\t-", "1:B\t-9"}) {
+			Files.writeString(segmento, "1:A\t3\n" + incompleto, StandardCharsets.UTF_8);
+			assertThat(new DiarioStock(directorio, false).leerSegmentos().get(4L)).as(incompleto)
+					.isEqualTo(Map.of("A", 3L));
+		}
+		Files.writeString(segmento, "1:A\t3\n1:B\t-9\n", StandardCharsets.UTF_8);
+		assertThat(new DiarioStock(directorio, false).leerSegmentos().get(4L)).isEqualTo(Map.of("A", 3L, "B", -9L));
+	}
+
+	@Test
+	void losAjustesConcurrentesQuedanEnDiscoAlRotar() throws Exception {
+		DiarioStock diario = new DiarioStock(directorio, true);
+		diario.abrir(1);
+		int porHilo = 200;
+
+		ejecutarEnParalelo(hilo -> {
+			for (int i = 0; i < porHilo; i++) {
+				diario.registrar("H-" + (hilo % 2), 1);
+			}
+		});
+		assertThat(diario.rotar()).isEqualTo(1);
+		diario.registrar("H-0", 1);
+		diario.cerrar();
+
+		Map<Long, Map<String, Long>> segmentos = new DiarioStock(directorio, true).leerSegmentos();
+		assertThat(segmentos.get(1L)).isEqualTo(Map.of("H-0", HILOS / 2L * porHilo, "H-1", HILOS / 2L * porHilo));
+		assertThat(segmentos.get(2L)).isEqualTo(Map.of("H-0", 1L));
+	}
+}
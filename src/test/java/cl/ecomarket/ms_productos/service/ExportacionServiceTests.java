@@ -0,0 +1,132 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:exportacion;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+class ExportacionServiceTests {
+
+	private static final int TOTAL = 300;
+
+	@Autowired
+	private ExportacionService exportacionService;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void exportaCadaProductoEnUnaLineaSinFlushPorFila() throws IOException {
+		jdbcTemplate.update("delete from producto");
+		List<Long> ids = new ArrayList<>();
+		for (int i = 1; i <= TOTAL; i++) {
+			ids.add(productoService.createProducto(producto("EXP-" + i, "Producto " + i, "Descripción " + i)).getId());
+		}
+
+		Salida ndjson = new Salida();
+		assertThat(exportacionService.exportar(ExportacionService.Formato.NDJSON, ndjson, System.nanoTime())).isEqualTo(TOTAL);
+		String texto = ndjson.texto();
+		assertThat(texto).endsWith("}\n");
+		String[] lineas = texto.split("\n");
+		assertThat(lineas).hasSize(TOTAL);
+		JsonNode primera = objectMapper.readTree(lineas[0]);
+		assertThat(primera.get("id").asLong()).isEqualTo(ids.get(0));
+		assertThat(primera.get("codigo").asText()).isEqualTo("EXP-1");
+		assertThat(objectMapper.readTree(lineas[TOTAL - 1]).get("codigo").asText()).isEqualTo("EXP-" + TOTAL);
+		// Un flush para el primer byte y los del final, no uno por producto
+		assertThat(ndjson.flushes).isLessThan(10);
+
+		Salida csv = new Salida();
+		assertThat(exportacionService.exportar(ExportacionService.Formato.CSV, csv, System.nanoTime())).isEqualTo(TOTAL);
+		assertThat(csv.texto().split("\n")).hasSize(TOTAL + 1);
+		assertThat(csv.flushes).isLessThan(10);
+	}
+
+	@Test
+	void elCsvCitaLosValoresConSeparadores() throws IOException {
+		jdbcTemplate.update("delete from producto");
+		Producto queso = productoService.createProducto(producto("EXP-CSV", "Queso \"fresco\", 1kg", "línea 1\nlínea 2"));
+		Producto simple = productoService.createProducto(producto("EXP-SIMPLE", "Pan", null));
+
+		Salida csv = new Salida();
+		exportacionService.exportar(ExportacionService.Formato.CSV, csv, System.nanoTime());
+
+		assertThat(csv.texto()).isEqualTo("id,codigo,nombre,descripcion,categoria,precio,stock\n"
+				+ queso.getId() + ",EXP-CSV,\"Queso \"\"fresco\"\", 1kg\",\"línea 1\nlínea 2\",Lácteos,1500.0,7\n"
+				+ simple.getId() + ",EXP-SIMPLE,Pan,,Lácteos,1500.0,7\n");
+	}
+
+	@Test
+	void unCatalogoVacioNoEscribeFilas() throws IOException {
+		jdbcTemplate.update("delete from producto");
+
+		Salida ndjson = new Salida();
+		assertThat(exportacionService.exportar(ExportacionService.Formato.NDJSON, ndjson, System.nanoTime())).isZero();
+		assertThat(ndjson.texto()).isEmpty();
+
+		Salida csv = new Salida();
+		assertThat(exportacionService.exportar(ExportacionService.Formato.CSV, csv, System.nanoTime())).isZero();
+		assertThat(csv.texto()).isEqualTo("id,codigo,nombre,descripcion,categoria,precio,stock\n");
+	}
+
+	private static Producto producto(String codigo, String nombre, String descripcion) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre(nombre);
+		producto.setDescripcion(descripcion);
+		producto.setCategoria("Lácteos");
+		producto.setPrecio(1500.0);
+		producto.setStock(7);
+		return producto;
+	}
+
+	// Cuenta los flush que llegan a la respuesta: cada uno sería un chunk HTTP
+	private static class Salida extends FilterOutputStream {
+		final ByteArrayOutputStream bytes;
+		int flushes;
+
+		Salida() {
+			this(new ByteArrayOutputStream());
+		}
+
+		private Salida(ByteArrayOutputStream bytes) {
+			super(bytes);
+			this.bytes = bytes;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			bytes.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushes++;
+			super.flush();
+		}
+
+		String texto() {
+			return bytes.toString(StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.CambioProducto;
+import cl.ecomarket.ms_productos.model.Producto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.HILOS;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.ejecutarEnParalelo;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:feed_cambios;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.cambios.capacidad=8",
+		"ecomarket.cambios.max-suscriptores=3",
+		"ecomarket.cambios.timeout-envio=PT2S"
+})
+class FeedCambiosProductosTests {
+
+	@Autowired
+	private FeedCambiosProductos feed;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Test
+	void filtraPorCategoriaYReanudaDesdeElUltimoEventoRecibido() throws InterruptedException {
+		Cliente cliente = new Cliente(Integer.MAX_VALUE);
+		FeedCambiosProductos.Suscriptor suscriptor = feed.abrir(null, " FEED-Frutas ", null, cliente);
+
+		Producto manzana = productoService.createProducto(producto("FEED-001", "Feed-Frutas"));
+		productoService.createProducto(producto("FEED-002", "Feed-Verduras"));
+		productoService.ajustarStock("FEED-001", -4);
+		Producto cambios = producto("FEED-001", "Feed-Verduras");
+		productoService.updateProducto(manzana.getId(), cambios); // Sale de la categoría: también se informa
+
+		List<ServerSentEvent<Object>> eventos = cliente.esperar(3);
+		assertThat(eventos).extracting(ServerSentEvent::event).containsExactly("CREADO", "STOCK_AJUSTADO", "ACTUALIZADO");
+		CambioProducto ajuste = (CambioProducto) eventos.get(1).data();
+		assertThat(ajuste.codigo()).isEqualTo("FEED-001");
+		assertThat(ajuste.stock()).isEqualTo(6);
+		suscriptor.cerrar();
+		assertThat(cliente.completado.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// Reconexión con el id del primer evento: llegan los dos siguientes de la categoría
+		Cliente reconectado = new Cliente(Integer.MAX_VALUE);
+		FeedCambiosProductos.Suscriptor otro = feed.abrir(eventos.get(0).id(), "feed-frutas", null, reconectado);
+		assertThat(reconectado.esperar(2)).extracting(ServerSentEvent::id)
+				.containsExactly(eventos.get(1).id(), eventos.get(2).id());
+		otro.cerrar();
+	}
+
+	@Test
+	void losCambiosDeUnProductoSeOrdenanPorVersionAunqueLleguenDesordenados() throws Exception {
+		productoService.createProducto(producto("FEED-ORDEN", "Feed-Orden"));
+		Cliente cliente = new Cliente(Integer.MAX_VALUE);
+		FeedCambiosProductos.Suscriptor suscriptor = feed.abrir(null, null, Set.of("FEED-ORDEN"), cliente);
+
+		ejecutarEnParalelo(hilo -> productoService.ajustarStock("FEED-ORDEN", -1));
+
+		// La secuencia es el orden de llegada al feed; la versión, el de commit en la fila
+		List<CambioProducto> cambios = cliente.esperar(HILOS).stream()
+				.map(evento -> (CambioProducto) evento.data())
+				.sorted(Comparator.comparing(CambioProducto::version))
+				.toList();
+		assertThat(cambios).extracting(CambioProducto::ajuste).containsOnlyNulls();
+		for (int i = 0; i < HILOS; i++) {
+			assertThat(cambios.get(i).stock()).isEqualTo(10 - 1 - i);
+		}
+		assertThat(cambios.get(HILOS - 1).version())
+				.isEqualTo(productoService.getProductoByCodigo("FEED-ORDEN").orElseThrow().getVersion());
+		suscriptor.cerrar();
+	}
+
+	@Test
+	void unClienteQueSeAtrasaMasQueElBufferRecibeDesincronizado() throws InterruptedException {
+		Cliente lento = new Cliente(1);
+		feed.abrir(null, null, Set.of("FEED-LENTO"), lento);
+		productoService.createProducto(producto("FEED-LENTO", "Feed-Lento"));
+		assertThat(lento.esperar(1)).extracting(ServerSentEvent::event).containsExactly("CREADO");
+
+		// Con el socket bloqueado, se publican más cambios que la capacidad del buffer (8)
+		for (int i = 0; i < 10; i++) {
+			productoService.ajustarStock("FEED-LENTO", 1);
+		}
+		lento.permisos.release(5);
+		assertThat(lento.completado.await(5, TimeUnit.SECONDS)).isTrue();
+		List<ServerSentEvent<Object>> eventos = List.copyOf(lento.recibidos);
+		// El envío en curso al bloquearse puede haber alcanzado a leer el primer ajuste
+		assertThat(eventos.size()).isBetween(2, 3);
+		assertThat(eventos.get(0).event()).isEqualTo("CREADO");
+		assertThat(eventos.get(eventos.size() - 1).event()).isEqualTo("desincronizado");
+
+		// Un id de otro arranque del proceso tampoco se puede reanudar
+		Cliente anterior = new Cliente(1);
+		feed.abrir("otraepoca-3", null, null, anterior);
+		assertThat(anterior.esperar(1)).extracting(ServerSentEvent::event).containsExactly("desincronizado");
+		assertThat(anterior.completado.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void losLugaresSeReservanSinSuperarElMaximo() throws Exception {
+		Queue<FeedCambiosProductos.Suscriptor> abiertos = new ConcurrentLinkedQueue<>();
+		AtomicInteger rechazados = new AtomicInteger();
+
+		ejecutarEnParalelo(hilo -> {
+			try {
+				abiertos.add(feed.abrir(null, null, null, new Cliente(Integer.MAX_VALUE)));
+			} catch (FeedSaturadoException e) {
+				rechazados.incrementAndGet();
+			}
+		});
+
+		assertThat(abiertos).hasSize(3);
+		assertThat(rechazados).hasValue(HILOS - 3);
+		abiertos.forEach(FeedCambiosProductos.Suscriptor::cerrar);
+		abiertos.forEach(FeedCambiosProductos.Suscriptor::cerrar); // Cerrar dos veces no libera dos lugares
+		for (int i = 0; i < 3; i++) {
+			abiertos.add(feed.abrir(null, null, null, new Cliente(Integer.MAX_VALUE)));
+		}
+		assertThatThrownBy(() -> feed.abrir(null, null, null, new Cliente(Integer.MAX_VALUE)))
+				.isInstanceOf(FeedSaturadoException.class);
+		abiertos.forEach(FeedCambiosProductos.Suscriptor::cerrar);
+	}
+
+	@Test
+	void unClienteBloqueadoSeExpulsaSinFrenarALosDemas() throws Exception {
+		Cliente bloqueado = new Cliente(0);
+		Cliente normal = new Cliente(Integer.MAX_VALUE);
+		feed.abrir(null, null, Set.of("FEED-EXP"), bloqueado);
+		FeedCambiosProductos.Suscriptor suscriptor = feed.abrir(null, null, Set.of("FEED-EXP"), normal);
+
+		productoService.createProducto(producto("FEED-EXP", "Feed-Exp"));
+		productoService.ajustarStock("FEED-EXP", 1);
+		// El otro cliente recibe todo mientras el primero sigue bloqueado en su primera escritura
+		assertThat(normal.esperar(2)).extracting(ServerSentEvent::event).containsExactly("CREADO", "STOCK_AJUSTADO");
+
+		// Pasado timeout-envio, la siguiente revisión lo expulsa y su lugar queda libre
+		assertThat(bloqueado.completado.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(bloqueado.recibidos).isEmpty();
+		FeedCambiosProductos.Suscriptor nuevo = feed.abrir(null, null, null, new Cliente(Integer.MAX_VALUE));
+		FeedCambiosProductos.Suscriptor otro = feed.abrir(null, null, null, new Cliente(Integer.MAX_VALUE));
+		suscriptor.cerrar();
+		nuevo.cerrar();
+		otro.cerrar();
+	}
+
+	private static Producto producto(String codigo, String categoria) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre("Producto " + codigo);
+		producto.setCategoria(categoria);
+		producto.setPrecio(1000.0);
+		producto.setStock(10);
+		return producto;
+	}
+
+	// Cada escritura consume un permiso: sin permisos, el envío queda bloqueado como en un socket lleno
+	private static class Cliente implements FeedCambiosProductos.Destino {
+		final List<ServerSentEvent<Object>> recibidos = new CopyOnWriteArrayList<>();
+		final CountDownLatch completado = new CountDownLatch(1);
+		final Semaphore permisos;
+
+		Cliente(int permisos) {
+			this.permisos = new Semaphore(permisos);
+		}
+
+		@Override
+		public void enviar(ServerSentEvent<Object> evento) throws InterruptedIOException {
+			try {
+				permisos.acquire();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			if (evento.event() != null) { // Se ignoran los latidos
+				recibidos.add(evento);
+			}
+		}
+
+		@Override
+		public void completar() {
+			completado.countDown();
+		}
+
+		List<ServerSentEvent<Object>> esperar(int cantidad) throws InterruptedException {
+			long limite = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+			while (recibidos.size() < cantidad && System.nanoTime() < limite) {
+				Thread.sleep(10);
+			}
+			assertThat(recibidos).hasSize(cantidad);
+			return List.copyOf(recibidos);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.ErrorImportacion;
+import cl.ecomarket.ms_productos.dto.ResultadoImportacion;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import cl.ecomarket.ms_productos.util.AlineadorIdProducto;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// La tabla producto se crea antes del contexto, con el id AUTO_INCREMENT y filas existentes,
+// como en las bases de datos anteriores al generador por bloques
+@SpringBootTest(properties = {
+		"spring.datasource.url=" + ImportacionServiceTests.URL,
+		"spring.jpa.hibernate.ddl-auto=update",
+		"ecomarket.importacion.tamano-lote=3"
+})
+class ImportacionServiceTests {
+
+	static final String URL = "jdbc:h2:mem:importacion;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	private ImportacionService importacionService;
+
+	@Autowired
+	private ProductoRepository productoRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeAll
+	static void baseConIdsAutoIncrement() throws SQLException {
+		try (Connection conexion = DriverManager.getConnection(URL, "sa", "");
+			 Statement sentencia = conexion.createStatement()) {
+			sentencia.execute("create table producto (id bigint auto_increment primary key,"
+					+ " codigo varchar(50) not null unique, nombre varchar(255) not null, descripcion text,"
+					+ " categoria varchar(100), categoria_normalizada varchar(100), precio float(53) not null,"
+					+ " stock integer not null, version bigint not null default 0)");
+			sentencia.execute("insert into producto (codigo, nombre, categoria, categoria_normalizada, precio, stock)"
+					+ " values ('IMP-ANT-1', 'Anterior 1', 'Frutas', 'frutas', 100, 1),"
+					+ " ('IMP-ANT-2', 'Anterior 2', 'Frutas', 'frutas', 200, 2)");
+			sentencia.execute("insert into producto (id, codigo, nombre, precio, stock)"
+					+ " values (250, 'IMP-ANT-250', 'Anterior 250', 300, 3)");
+		}
+	}
+
+	@Test
+	void losIdsNuevosQuedanSobreLosExistentesConAutoIncrement() throws IOException {
+		// El alineador ya corrió al iniciar el contexto: la tabla id_generador no existía
+		Long siguiente = jdbcTemplate.queryForObject(
+				"select siguiente from id_generador where entidad = 'producto'", Long.class);
+		assertThat(siguiente).isGreaterThan(250L + Producto.BLOQUE_ID);
+
+		ResultadoImportacion resultado = importar(ExportacionService.Formato.NDJSON, """
+				{"codigo":"IMP-ID-1","nombre":"Nuevo 1","precio":10,"stock":1}
+				{"codigo":"IMP-ANT-1","nombre":"Anterior renombrado","precio":110,"stock":5}
+				{"codigo":"IMP-ID-2","nombre":"Nuevo 2","precio":20,"stock":2}
+				""");
+
+		assertThat(resultado.creados()).isEqualTo(2);
+		assertThat(resultado.actualizados()).isEqualTo(1);
+		assertThat(resultado.conError()).isZero();
+		assertThat(productoRepository.findByCodigo("IMP-ID-1").orElseThrow().getId()).isGreaterThan(250L);
+		assertThat(productoRepository.findByCodigo("IMP-ID-2").orElseThrow().getId()).isGreaterThan(250L);
+		assertThat(productoRepository.findByCodigo("IMP-ANT-1").orElseThrow().getId()).isEqualTo(1L);
+
+		// Con el generador atrasado respecto de los ids existentes, se adelanta; nunca se retrocede
+		jdbcTemplate.update("update id_generador set siguiente = 5 where entidad = 'producto'");
+		new AlineadorIdProducto(jdbcTemplate).afterSingletonsInstantiated();
+		Long maximo = jdbcTemplate.queryForObject("select max(id) from producto", Long.class);
+		assertThat(jdbcTemplate.queryForObject("select siguiente from id_generador where entidad = 'producto'", Long.class))
+				.isEqualTo(maximo + Producto.BLOQUE_ID + 1);
+		jdbcTemplate.update("update id_generador set siguiente = ? where entidad = 'producto'", maximo + 10_000);
+		new AlineadorIdProducto(jdbcTemplate).afterSingletonsInstantiated();
+		assertThat(jdbcTemplate.queryForObject("select siguiente from id_generador where entidad = 'producto'", Long.class))
+				.isEqualTo(maximo + 10_000);
+	}
+
+	@Test
+	void unLoteMixtoCreaYActualizaEnVariosLotes() throws IOException {
+		Long idExistente = productoRepository.findByCodigo("IMP-ANT-2").orElseThrow().getId();
+
+		// Tamaño de lote 3: las cinco filas se guardan en dos transacciones
+		ResultadoImportacion resultado = importar(ExportacionService.Formato.CSV, """
+				id,codigo,nombre,descripcion,categoria,precio,stock
+				999,IMP-MIX-1,Mixto 1,,Verduras,1000,10
+				,IMP-ANT-2,"Anterior 2, actualizado",Nueva descripción,Verduras,2500,20
+				,IMP-MIX-2,Mixto 2,,Verduras,1500,15
+				,IMP-MIX-3,Mixto 3,"línea 1
+				línea 2",Verduras,1200,12
+				,IMP-ANT-250,Anterior 250 actualizado,,Verduras,300,0
+				""");
+
+		assertThat(resultado.filas()).isEqualTo(5);
+		assertThat(resultado.creados()).isEqualTo(3);
+		assertThat(resultado.actualizados()).isEqualTo(2);
+		assertThat(resultado.conError()).isZero();
+
+		Producto actualizado = productoRepository.findByCodigo("IMP-ANT-2").orElseThrow();
+		assertThat(actualizado.getId()).isEqualTo(idExistente);
+		assertThat(actualizado.getNombre()).isEqualTo("Anterior 2, actualizado");
+		assertThat(actualizado.getDescripcion()).isEqualTo("Nueva descripción");
+		assertThat(actualizado.getCategoriaNormalizada()).isEqualTo("verduras");
+		assertThat(actualizado.getPrecio()).isEqualTo(2500.0);
+		assertThat(actualizado.getStock()).isEqualTo(20);
+		assertThat(productoRepository.findByCodigo("IMP-ANT-250").orElseThrow().getId()).isEqualTo(250L);
+
+		// La columna id del archivo se ignora
+		Producto creado = productoRepository.findByCodigo("IMP-MIX-1").orElseThrow();
+		assertThat(creado.getId()).isNotEqualTo(999L);
+		assertThat(creado.getStock()).isEqualTo(10);
+		assertThat(productoRepository.findByCodigo("IMP-MIX-3").orElseThrow().getDescripcion()).isEqualTo("línea 1\nlínea 2");
+	}
+
+	@Test
+	void lasFilasConErrorSeInformanYLasDemasSeGuardan() throws IOException {
+		ResultadoImportacion json = importar(ExportacionService.Formato.NDJSON, """
+				{"codigo":"IMP-ERR-1","nombre":"Válido 1","precio":10,"stock":1}
+				{"codigo":"IMP-ERR-2","nombre":
+				{"codigo":"IMP-ERR-3","nombre":"Negativo","precio":-5,"stock":1}
+
+				{"codigo":"IMP-ERR-1","nombre":"Repetido","precio":10,"stock":1}
+				{"codigo":"IMP-ERR-4","nombre":"Válido 2","precio":10,"stock":1}
+				""");
+
+		// La línea en blanco no cuenta como fila, pero sí para la numeración
+		assertThat(json.filas()).isEqualTo(5);
+		assertThat(json.creados()).isEqualTo(2);
+		assertThat(json.conError()).isEqualTo(3);
+		assertThat(json.errores()).extracting(ErrorImportacion::fila).containsExactly(2L, 3L, 5L);
+		assertThat(json.errores()).extracting(ErrorImportacion::codigo).containsExactly(null, "IMP-ERR-3", "IMP-ERR-1");
+		assertThat(json.errores().get(0).error()).startsWith("JSON inválido: ");
+		assertThat(json.errores().get(1).error()).isEqualTo("El precio no puede ser negativo.");
+		assertThat(json.errores().get(2).error()).isEqualTo("Código repetido en el archivo: IMP-ERR-1");
+		assertThat(productoRepository.findByCodigo("IMP-ERR-1").orElseThrow().getNombre()).isEqualTo("Válido 1");
+		assertThat(productoRepository.findByCodigo("IMP-ERR-3")).isEmpty();
+
+		ResultadoImportacion csv = importar(ExportacionService.Formato.CSV, """
+				codigo,nombre,precio,stock
+				IMP-ERR-5,No numérico,100,muchos
+				IMP-ERR-6,Válido 3,100,3
+				""");
+		assertThat(csv.creados()).isEqualTo(1);
+		assertThat(csv.errores()).containsExactly(new ErrorImportacion(1, "IMP-ERR-5", "Precio o stock no numérico."));
+		assertThat(productoRepository.findByCodigo("IMP-ERR-5")).isEmpty();
+	}
+
+	@Test
+	void seCuentanTodosLosErroresPeroSeInformanLosPrimerosMil() throws IOException {
+		StringBuilder archivo = new StringBuilder();
+		for (int i = 1; i <= 1005; i++) {
+			archivo.append("{\"codigo\":\"IMP-TOPE-").append(i).append("\",\"nombre\":\"Tope\",\"precio\":-1,\"stock\":1}\n");
+		}
+		archivo.append("{\"codigo\":\"IMP-TOPE-OK\",\"nombre\":\"Tope\",\"precio\":1,\"stock\":1}\n");
+
+		ResultadoImportacion resultado = importar(ExportacionService.Formato.NDJSON, archivo.toString());
+
+		assertThat(resultado.filas()).isEqualTo(1006);
+		assertThat(resultado.conError()).isEqualTo(1005);
+		assertThat(resultado.errores()).hasSize(1000);
+		assertThat(resultado.errores().get(999).fila()).isEqualTo(1000);
+		assertThat(resultado.creados()).isEqualTo(1);
+	}
+
+	private ResultadoImportacion importar(ExportacionService.Formato formato, String contenido) throws IOException {
+		return importacionService.importar(formato, new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,100 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.ResultadoBusqueda;
+import cl.ecomarket.ms_productos.model.Producto;
+import cl.ecomarket.ms_productos.repository.ProductoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:indice_busqueda;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+class IndiceBusquedaProductosTests {
+
+	@Autowired
+	private IndiceBusquedaProductos indice;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private ProductoRepository productoRepository;
+
+	@Test
+	void laBusquedaPorNombreDevuelveLoMismoQueElLike() {
+		productoService.createProducto(producto("IDX-1", "Manzana verde orgánica", "Fruta de temporada"));
+		productoService.createProducto(producto("IDX-2", "Pera verde", "Sin pesticidas"));
+		productoService.createProducto(producto("IDX-3", "Verdeo fresco", "Cebollín"));
+		productoService.createProducto(producto("IDX-4", "Jugo de manzana", "Verde por dentro"));
+		productoService.createProducto(producto("IDX-5", "Bolsa 50% reciclada", "Verde"));
+		assertThat(indice.isListo()).isTrue();
+
+		for (String texto : List.of("verde", "VERDE", "zana ver", "de", "verde orgánica", "pera manzana", "50%", "%")) {
+			List<Long> like = productoRepository.findByNombreContainingIgnoreCaseAndIdGreaterThanOrderByIdAsc(
+					texto, 0L, Limit.of(100)).stream().map(Producto::getId).toList();
+			List<Long> enIndice = productoService.searchProductosByNombre(texto, null, 100)
+					.productos().stream().map(Producto::getId).toList();
+			assertThat(enIndice).as(texto).isEqualTo(like);
+		}
+
+		// Cursor: la segunda página empieza después del último id de la primera
+		List<Producto> primera = indice.porNombre("verde", 0L, 1);
+		List<Producto> segunda = indice.porNombre("verde", primera.get(0).getId(), 10);
+		assertThat(segunda).extracting(Producto::getNombre).containsExactly("Pera verde", "Verdeo fresco");
+	}
+
+	@Test
+	void sinElIndiceLaBusquedaUsaLosMismosCamposYElMismoOrden() {
+		productoService.createProducto(producto("ALT-1", "Queso mantecoso", "Laminado"));
+		productoService.createProducto(producto("ALT-2", "Mantequilla", "Con sal"));
+		productoService.createProducto(producto("ALT-3", "Pan amasado", "Con mantequilla de campo"));
+		productoService.createProducto(producto("MANT-4", "Aceite", "De oliva"));
+
+		for (String consulta : List.of("mant", "mantequilla con", "alt", "oliva mant")) {
+			List<String> terminos = List.copyOf(IndiceBusquedaProductos.tokenizar(consulta));
+			ResultadoBusqueda enIndice = indice.buscar(consulta, 0, 100);
+			List<Producto> enBaseDeDatos = productoRepository.buscarPorTerminos(terminos, 0, 100);
+			assertThat(enBaseDeDatos).extracting(Producto::getId).as(consulta)
+					.containsExactlyInAnyOrderElementsOf(enIndice.productos().stream().map(Producto::getId).toList());
+			assertThat(productoRepository.contarPorTerminos(terminos)).isEqualTo(enIndice.total());
+		}
+		// El código pesa más que el nombre, y el nombre más que la descripción
+		assertThat(productoRepository.buscarPorTerminos(List.of("mant"), 0, 10)).extracting(Producto::getCodigo)
+				.containsExactly("MANT-4", "ALT-1", "ALT-2", "ALT-3");
+	}
+
+	@Test
+	void ignoraLosEventosQueLleganFueraDeOrden() {
+		Producto v2 = producto("ORD-1", "Palta hass", null);
+		v2.setId(900_001L);
+		v2.setVersion(2L);
+		Producto v1 = v2.copiar();
+		v1.setNombre("Palta negra");
+		v1.setVersion(1L);
+
+		indice.indexar(v2);
+		indice.indexar(v1); // El commit anterior aplica su evento después
+		assertThat(indice.porNombre("palta", 900_000L, 10)).extracting(Producto::getNombre).containsExactly("Palta hass");
+
+		indice.eliminar(v2);
+		indice.indexar(v1);
+		assertThat(indice.porNombre("palta", 900_000L, 10)).isEmpty();
+	}
+
+	private static Producto producto(String codigo, String nombre, String descripcion) {
+		Producto producto = new Producto();
+		producto.setCodigo(codigo);
+		producto.setNombre(nombre);
+		producto.setDescripcion(descripcion);
+		producto.setCategoria("Índice");
+		producto.setPrecio(1000.0);
+		producto.setStock(10);
+		return producto;
+	}
+}
@@ -0,0 +1,111 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.PaginaCampos;
+import cl.ecomarket.ms_productos.dto.PaginaProductos;
+import cl.ecomarket.ms_productos.model.Producto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:paginacion;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"ecomarket.productos.cache.habilitado=false",
+		"ecomarket.productos.pagina.limite-por-defecto=10"
+})
+class PaginacionProductosTests {
+
+	private static final int TOTAL = 23;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Test
+	void elCursorRecorreElListadoSinRepetirNiSaltarProductos() {
+		List<Long> ids = crearProductos("RT", 5000.0);
+		List<Long> pares = pares(ids);
+
+		assertThat(recorrer(5, productoService::listarProductos)).containsSequence(ids);
+		assertThat(recorrer(4, (after, limit) -> productoService.getProductosByCategoria("rt PAR", after, limit)))
+				.containsExactlyElementsOf(pares);
+		assertThat(recorrer(3, (after, limit) -> productoService.searchProductosByNombre("kiwi rt", after, limit)))
+				.containsExactlyElementsOf(pares);
+		assertThat(recorrer(7, (after, limit) -> productoService.getProductosByRangoPrecio(5001.0, 5000.0 + TOTAL, after, limit)))
+				.containsExactlyElementsOf(ids);
+
+		List<Long> vistos = new ArrayList<>();
+		Long after = null;
+		do {
+			PaginaCampos pagina = productoService.listarCampos(Set.of("id", "stock"), null, "RT par", null, null, after, 4);
+			assertThat(pagina.productos()).hasSizeLessThanOrEqualTo(4);
+			pagina.productos().forEach(fila -> vistos.add((Long) fila.get("id")));
+			after = pagina.siguienteCursor();
+		} while (after != null);
+		assertThat(vistos).containsExactlyElementsOf(pares);
+	}
+
+	@Test
+	void sinLimitSeUsaElLimitePorDefecto() {
+		List<Long> ids = crearProductos("DEFECTO", 7000.0);
+		int limite = productoService.limiteDePagina(null);
+		assertThat(limite).isEqualTo(productoService.getLimitePorDefecto()).isEqualTo(10);
+
+		// Sin limit ni after tampoco se lee la tabla completa: la primera página trae el cursor de la siguiente
+		PaginaProductos primera = productoService.getProductosByCategoria("Defecto impar", null, limite);
+		assertThat(primera.productos()).hasSize(10);
+		assertThat(primera.siguienteCursor()).isEqualTo(primera.productos().get(9).getId());
+		assertThat(recorrer(limite, (after, limit) -> productoService.getProductosByCategoria("Defecto impar", after, limit)))
+				.hasSize(TOTAL - pares(ids).size());
+
+		assertThatThrownBy(() -> productoService.limiteDePagina(0)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> productoService.limiteDePagina(501)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	// Los pares son "Kiwi <prefijo> n" en la categoría "<prefijo> par"; los impares, "Pera ..." en "<prefijo> impar"
+	private List<Long> crearProductos(String prefijo, double precioBase) {
+		List<Long> ids = new ArrayList<>();
+		for (int i = 1; i <= TOTAL; i++) {
+			Producto producto = new Producto();
+			producto.setCodigo(prefijo + "-" + i);
+			producto.setNombre((i % 2 == 0 ? "Kiwi " : "Pera ") + prefijo + " " + i);
+			producto.setCategoria(prefijo + (i % 2 == 0 ? " par" : " impar"));
+			producto.setPrecio(precioBase + i);
+			producto.setStock(i);
+			ids.add(productoService.createProducto(producto).getId());
+		}
+		return ids;
+	}
+
+	private static List<Long> pares(List<Long> ids) {
+		List<Long> pares = new ArrayList<>();
+		for (int i = 1; i < ids.size(); i += 2) {
+			pares.add(ids.get(i));
+		}
+		return pares;
+	}
+
+	// Sigue siguienteCursor hasta el final; cada página trae a lo más limit productos en orden de id
+	private static List<Long> recorrer(int limit, BiFunction<Long, Integer, PaginaProductos> leer) {
+		List<Long> vistos = new ArrayList<>();
+		Long after = null;
+		do {
+			PaginaProductos pagina = leer.apply(after, limit);
+			assertThat(pagina.productos()).hasSizeLessThanOrEqualTo(limit);
+			pagina.productos().forEach(producto -> vistos.add(producto.getId()));
+			if (pagina.siguienteCursor() != null) {
+				assertThat(pagina.productos()).hasSize(limit);
+				assertThat(pagina.siguienteCursor()).isEqualTo(pagina.productos().get(limit - 1).getId());
+			}
+			after = pagina.siguienteCursor();
+		} while (after != null);
+		assertThat(vistos).isSorted().doesNotHaveDuplicates();
+		return vistos;
+	}
+}
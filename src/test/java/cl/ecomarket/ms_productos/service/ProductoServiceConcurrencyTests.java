@@ -0,0 +1,63 @@
+package cl.ecomarket.ms_productos.service;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.HILOS;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.ajustarEnParalelo;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.crearProducto;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.descontarConLoteEnParalelo;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.descontarEnParalelo;
+import static cl.ecomarket.ms_productos.service.AjustesStockConcurrentes.stockEsperado;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class ProductoServiceConcurrencyTests {
+
+	private static final Logger log = LoggerFactory.getLogger(ProductoServiceConcurrencyTests.class);
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Test
+	void ajustesConcurrentesNoPierdenActualizaciones() throws Exception {
+		crearProducto(productoService, "HOT-001", 2_000);
+		int ajustesPorHilo = 250;
+
+		long inicio = System.nanoTime();
+		int rechazados = ajustarEnParalelo(productoService, "HOT-001", ajustesPorHilo);
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+
+		assertThat(rechazados).isZero();
+		assertThat(stock("HOT-001")).isEqualTo(stockEsperado(2_000, ajustesPorHilo));
+		log.info("{} ajustes sobre un mismo código en {} s ({} ajustes/s)",
+				HILOS * ajustesPorHilo, String.format("%.2f", segundos), String.format("%.0f", HILOS * ajustesPorHilo / segundos));
+	}
+
+	@Test
+	void elUpdateCondicionalNoDejaStockNegativo() throws Exception {
+		crearProducto(productoService, "HOT-002", 100);
+
+		int exitosos = descontarEnParalelo(productoService, "HOT-002", 20);
+
+		assertThat(exitosos).isEqualTo(100);
+		assertThat(stock("HOT-002")).isZero();
+	}
+
+	@Test
+	void losLotesYLosAjustesIndividualesNoVendenMasQueElStock() throws Exception {
+		crearProducto(productoService, "HOT-003", 100);
+
+		int exitosos = descontarConLoteEnParalelo(productoService, "HOT-003", 40);
+
+		assertThat(exitosos).isEqualTo(100);
+		assertThat(stock("HOT-003")).isZero();
+	}
+
+	private int stock(String codigo) {
+		return productoService.getProductoByCodigo(codigo).orElseThrow().getStock();
+	}
+}
@@ -0,0 +1,117 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.model.Producto;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotCatalogoTests {
+
+	private static final String[] CATEGORIAS = {"Frutas", "Verduras", " FRUTAS ", null};
+
+	@Test
+	void elDeltaYLasCompactacionesLeenLoMismoQueElCatalogoCompleto() {
+		Random random = new Random(42);
+		TreeMap<Long, Producto> catalogo = new TreeMap<>();
+		for (long id = 1; id <= 2_000; id += 2) {
+			catalogo.put(id, producto(id, random));
+		}
+		SnapshotCatalogo snapshot = SnapshotCatalogo.construir(catalogo.values());
+		boolean huboDelta = false;
+		boolean huboCompactacion = false;
+
+		for (int ronda = 0; ronda < 300; ronda++) {
+			List<Producto> actualizados = new ArrayList<>();
+			List<Long> eliminados = new ArrayList<>();
+			for (int c = random.nextInt(4); c >= 0; c--) {
+				long id = 1 + random.nextInt(2_200); // Modifica, agrega o elimina
+				if (random.nextInt(4) == 0) {
+					eliminados.add(id);
+					catalogo.remove(id);
+				} else {
+					Producto producto = producto(id, random);
+					actualizados.add(producto);
+					catalogo.put(id, producto);
+				}
+			}
+			int deltaAntes = snapshot.tamanoDelta();
+			snapshot = snapshot.con(actualizados, eliminados);
+			huboDelta |= snapshot.tamanoDelta() > 0;
+			huboCompactacion |= snapshot.tamanoDelta() < deltaAntes;
+			verificar(snapshot, catalogo, random);
+		}
+		assertThat(huboDelta).isTrue();
+		assertThat(huboCompactacion).isTrue();
+	}
+
+	@Test
+	void unCodigoQueCambiaDeProductoSeEncuentraEnElNuevo() {
+		Producto a = producto(1, "A", "Frutas", 100);
+		Producto b = producto(2, "B", "Frutas", 200);
+		SnapshotCatalogo snapshot = SnapshotCatalogo.construir(List.of(a, b));
+
+		SnapshotCatalogo siguiente = snapshot.con(List.of(producto(2, "A", "Frutas", 200)), Set.of(1L));
+
+		assertThat(siguiente.porCodigo("A").getId()).isEqualTo(2L);
+		assertThat(siguiente.porCodigo("B")).isNull();
+		assertThat(siguiente.porId(1)).isNull();
+		assertThat(siguiente.tamano()).isEqualTo(1);
+		// El snapshot anterior no cambia
+		assertThat(snapshot.porCodigo("A").getId()).isEqualTo(1L);
+	}
+
+	private static void verificar(SnapshotCatalogo snapshot, TreeMap<Long, Producto> catalogo, Random random) {
+		assertThat(snapshot.tamano()).isEqualTo(catalogo.size());
+		long after = random.nextInt(2_200);
+		int limite = 1 + random.nextInt(40);
+		assertThat(codigos(snapshot.listar(after, limite))).isEqualTo(esperados(catalogo, after, limite, p -> true));
+		assertThat(codigos(snapshot.categoria("frutas", after, limite)))
+				.isEqualTo(esperados(catalogo, after, limite, p -> "frutas".equals(p.getCategoriaNormalizada())));
+		assertThat(codigos(snapshot.rangoPrecio(300, 600, after, limite)))
+				.isEqualTo(esperados(catalogo, after, limite, p -> p.getPrecio() >= 300 && p.getPrecio() <= 600));
+		for (int i = 0; i < 5; i++) {
+			long id = 1 + random.nextInt(2_200);
+			Producto esperado = catalogo.get(id);
+			Producto porId = snapshot.porId(id);
+			Producto porCodigo = snapshot.porCodigo("P-" + id);
+			if (esperado == null) {
+				assertThat(porId).isNull();
+				assertThat(porCodigo).isNull();
+			} else {
+				assertThat(porId).isEqualTo(esperado);
+				assertThat(porCodigo).isEqualTo(esperado);
+			}
+		}
+	}
+
+	private static List<String> esperados(TreeMap<Long, Producto> catalogo, long after, int limite, Predicate<Producto> filtro) {
+		return catalogo.tailMap(after, false).values().stream().filter(filtro).limit(limite).map(Producto::getCodigo).toList();
+	}
+
+	private static List<String> codigos(List<Producto> productos) {
+		return productos.stream().map(Producto::getCodigo).toList();
+	}
+
+	private static Producto producto(long id, Random random) {
+		return producto(id, "P-" + id, CATEGORIAS[random.nextInt(CATEGORIAS.length)], random.nextInt(1000));
+	}
+
+	private static Producto producto(long id, String codigo, String categoria, double precio) {
+		Producto producto = new Producto();
+		producto.setId(id);
+		producto.setCodigo(codigo);
+		producto.setNombre("Producto " + codigo);
+		producto.setCategoria(categoria);
+		producto.setPrecio(precio);
+		producto.setStock(10);
+		producto.setVersion(0L);
+		return producto;
+	}
+}
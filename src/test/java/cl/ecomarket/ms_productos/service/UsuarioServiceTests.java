@@ -0,0 +1,71 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.dto.PaginaUsuarios;
+import cl.ecomarket.ms_productos.dto.ResumenUsuario;
+import cl.ecomarket.ms_productos.model.Rol;
+import cl.ecomarket.ms_productos.model.Usuario;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:usuarios_listado;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+class UsuarioServiceTests {
+
+	@Autowired
+	private UsuarioService usuarioService;
+
+	@Test
+	void listaResumenesConLosRolesAgregadosFiltradosYOrdenados() {
+		Usuario ana = usuarioService.createUsuario(usuario("lst-ana", "Ana Listado"));
+		usuarioService.asignarRolAUsuario(ana.getId(), "LOGISTICA");
+		usuarioService.asignarRolAUsuario(ana.getId(), "EMPLEADO_VENTAS");
+		Usuario beto = usuarioService.createUsuario(usuario("lst-beto", "Beto Listado"));
+		usuarioService.asignarRolAUsuario(beto.getId(), "LOGISTICA");
+		usuarioService.desactivarUsuario(beto.getId());
+		usuarioService.createUsuario(usuario("lst-carla", "Carla Listado")); // Sin roles
+
+		PaginaUsuarios logistica = usuarioService.listarUsuarios(null, "logistica", "nombreCompleto,desc", 0, 50);
+		assertThat(logistica.usuarios()).extracting(ResumenUsuario::username)
+				.containsExactly("logistica01", "lst-beto", "lst-ana");
+		assertThat(logistica.usuarios().get(2).roles()).containsExactly("EMPLEADO_VENTAS", "LOGISTICA");
+		assertThat(logistica.total()).isEqualTo(3);
+
+		PaginaUsuarios segunda = usuarioService.listarUsuarios(true, null, "username", 1, 2);
+		assertThat(segunda.total()).isEqualTo(6); // Los 4 del DataInitializer, ana y carla
+		assertThat(segunda.usuarios()).extracting(ResumenUsuario::username).containsExactly("gerente01", "logistica01");
+		ResumenUsuario carla = usuarioService.listarUsuarios(null, null, "id,desc", 0, 1).usuarios().get(0);
+		assertThat(carla.roles()).isEmpty();
+
+		assertThatThrownBy(() -> usuarioService.listarUsuarios(null, null, "password", 0, 50))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void devuelveElUsuarioConRolesYPermisosCargados() {
+		Long id = usuarioService.getUsuarioByUsername("gerente01").orElseThrow().getId();
+
+		// Fuera de la transacción, como al serializar la respuesta sin open-in-view
+		Usuario usuario = usuarioService.getUsuarioById(id).orElseThrow();
+		assertThat(Hibernate.isInitialized(usuario.getRoles())).isTrue();
+		Rol gerente = usuario.getRoles().iterator().next();
+		assertThat(Hibernate.isInitialized(gerente.getPermisos())).isTrue();
+		assertThat(gerente.getPermisos()).isNotEmpty();
+	}
+
+	private static Usuario usuario(String username, String nombreCompleto) {
+		Usuario usuario = new Usuario();
+		usuario.setUsername(username);
+		usuario.setNombreCompleto(nombreCompleto);
+		usuario.setEmail(username + "@ecomarket.cl");
+		usuario.setPassword("clave-" + username);
+		return usuario;
+	}
+}
@@ -0,0 +1,76 @@
+package cl.ecomarket.ms_productos.service;
+
+import cl.ecomarket.ms_productos.event.ProductoModificadoEvent;
+import cl.ecomarket.ms_productos.model.Producto;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VersionCatalogoTests {
+
+	@Test
+	void laUltimaModificacionPasaAlSegundoSiguienteYNoSeInformaAntes() throws InterruptedException {
+		VersionCatalogo version = new VersionCatalogo();
+		VersionCatalogo.Estado inicial = version.getEstado();
+		esperarHasta(inicial.ultimaModificacion());
+		assertThat(version.lastModified(inicial)).isEqualTo(inicial.ultimaModificacion());
+
+		long antes = System.currentTimeMillis();
+		version.alModificarProducto(new ProductoModificadoEvent(ProductoModificadoEvent.Tipo.CREADO, producto(), null));
+		VersionCatalogo.Estado estado = version.getEstado();
+
+		assertThat(estado.contador()).isEqualTo(inicial.contador() + 1);
+		// Todo Last-Modified ya entregado es anterior a la escritura: el nuevo es estrictamente mayor
+		assertThat(estado.ultimaModificacion()).isGreaterThan(inicial.ultimaModificacion());
+		assertThat(estado.ultimaModificacion() % 1000).isZero();
+		assertThat(estado.ultimaModificacion()).isGreaterThan(antes).isLessThanOrEqualTo(antes + 1000);
+		if (System.currentTimeMillis() < estado.ultimaModificacion()) {
+			assertThat(version.lastModified(estado)).isEqualTo(-1);
+		}
+		esperarHasta(estado.ultimaModificacion());
+		assertThat(version.lastModified(estado)).isEqualTo(estado.ultimaModificacion());
+	}
+
+	@Test
+	void elEtagDeUnProductoDependeDeLaFilaYDeLosCampos() {
+		VersionCatalogo version = new VersionCatalogo();
+		VersionCatalogo.Estado estado = version.getEstado();
+		Producto producto = producto();
+
+		String completo = version.etagProducto(estado, producto, null);
+		String codigo = version.etagProducto(estado, producto, Set.of("codigo"));
+		assertThat(completo).isNotEqualTo(codigo);
+		assertThat(version.esDelEstado(completo, estado, null)).isTrue();
+		assertThat(version.esDelEstado(completo, estado, Set.of("codigo"))).isFalse();
+		assertThat(version.esDelEstado(codigo, estado, Set.of("codigo"))).isTrue();
+		assertThat(version.esDeLaFila(completo, producto, null)).isTrue();
+		assertThat(version.esDeLaFila(completo, producto, Set.of("codigo"))).isFalse();
+		assertThat(version.esDeLaFila(codigo, producto, null)).isFalse();
+		assertThat(version.esDeLaFila("W/" + codigo, producto, Set.of("codigo"))).isTrue();
+
+		// Un cambio en el catálogo invalida el estado; uno en el stock de la fila, también la fila
+		version.alModificarProducto(new ProductoModificadoEvent(ProductoModificadoEvent.Tipo.CREADO, producto, null));
+		assertThat(version.esDelEstado(completo, version.getEstado(), null)).isFalse();
+		assertThat(version.esDeLaFila(completo, producto, null)).isTrue();
+		producto.setStock(producto.getStock() - 1);
+		assertThat(version.esDeLaFila(completo, producto, null)).isFalse();
+	}
+
+	private static void esperarHasta(long millis) throws InterruptedException {
+		long espera = millis - System.currentTimeMillis();
+		if (espera > 0) {
+			Thread.sleep(espera + 1);
+		}
+	}
+
+	private static Producto producto() {
+		Producto producto = new Producto();
+		producto.setId(7L);
+		producto.setVersion(3L);
+		producto.setCodigo("VER-001");
+		producto.setStock(10);
+		return producto;
+	}
+}